@@ -0,0 +1,351 @@
+package org.pentaho.di.sdk.plugin.steps.pagedownload;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.MalformedURLException;
+import java.net.ProxySelector;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHost;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.methods.RequestBuilder;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.DnsResolver;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.client.LaxRedirectStrategy;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.impl.conn.SystemDefaultRoutePlanner;
+import org.apache.http.impl.conn.SystemDefaultDnsResolver;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.ssl.SSLContexts;
+
+/**
+ * HTTP/1.1 engine on top of Apache HttpClient, keeping a pool of keep-alive
+ * connections with limits per host and in total. HttpClient has no limit on
+ * the duration of a whole request, so requests running past the total
+ * timeout are aborted by a watchdog thread.
+ *
+ * A request runs on the calling thread, connection setup included, so the
+ * resolver and socket factories add their time to the timing of the request
+ * running on their thread.
+ */
+public class ApacheHttpEngine implements HttpEngine {
+
+	private static final ThreadLocal<RequestTiming> TIMING = new ThreadLocal<RequestTiming>();
+
+	private final CloseableHttpClient client;
+	private final int totalTimeout;
+	private final ScheduledExecutorService watchdog;
+
+	ApacheHttpEngine(int maxPerHost, int maxTotal, int idleTimeoutSeconds, HttpClientPool.Timeouts timeouts,
+			DnsCache dnsCache) {
+		PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager(
+				RegistryBuilder.<ConnectionSocketFactory> create()
+						.register("http", new TimedPlainSocketFactory())
+						.register("https", new TimedSslSocketFactory())
+						.build(),
+				new TimedDnsResolver(dnsCache == null ? SystemDefaultDnsResolver.INSTANCE : dnsCache));
+		connectionManager.setDefaultMaxPerRoute(maxPerHost);
+		connectionManager.setMaxTotal(maxTotal);
+
+		client = HttpClients.custom()
+				.setConnectionManager(connectionManager)
+				.setRedirectStrategy(new LaxRedirectStrategy())
+				// the proxies of the JVM, http.proxyHost and the like
+				.setRoutePlanner(new SystemDefaultRoutePlanner(ProxySelector.getDefault()))
+				// bodies are decoded by the caller, which also counts the bytes on the wire
+				.disableContentCompression()
+				.evictExpiredConnections()
+				.evictIdleConnections(idleTimeoutSeconds, TimeUnit.SECONDS)
+				.setDefaultRequestConfig(RequestConfig.custom()
+						.setConnectTimeout(timeouts.connect)
+						.setSocketTimeout(timeouts.read)
+						.build())
+				.build();
+
+		totalTimeout = timeouts.total;
+		watchdog = totalTimeout <= 0 ? null : Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "PageDownload request watchdog");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+
+	public HttpEngineCall newCall(String method, final String url, Map<String, String> headers) throws IOException {
+		RequestBuilder builder = RequestBuilder.create(method).setUri(toUri(url));
+		for (Map.Entry<String, String> header : headers.entrySet()) {
+			builder.setHeader(header.getKey(), header.getValue());
+		}
+		if ("POST".equals(method)) {
+			builder.setEntity(new ByteArrayEntity(new byte[0], ContentType.APPLICATION_FORM_URLENCODED));
+		}
+
+		final HttpUriRequest request = builder.build();
+		return new HttpEngineCall() {
+
+			public HttpEngineResponse execute() throws IOException {
+				return ApacheHttpEngine.this.execute(request, url);
+			}
+
+			public void abort() {
+				request.abort();
+			}
+		};
+	}
+
+	/**
+	 * Parses a URL the way {@link java.net.URL} would take it. Characters a URI
+	 * does not allow, such as spaces, | or {} in scraped links, are percent
+	 * encoded as UTF-8. Escapes already in the URL are kept.
+	 *
+	 * @throws MalformedURLException
+	 *             if the URL cannot be parsed even then or has no valid host
+	 */
+	static URI toUri(String url) throws MalformedURLException {
+		URI uri;
+		try {
+			uri = new URI(url);
+		} catch (URISyntaxException e) {
+			try {
+				uri = new URI(escape(url));
+			} catch (URISyntaxException again) {
+				MalformedURLException error = new MalformedURLException("Invalid URL " + url + ": " + again.getMessage());
+				error.initCause(again);
+				throw error;
+			}
+		}
+		if (uri.getHost() == null) {
+			throw new MalformedURLException("Invalid host in URL " + url);
+		}
+		return uri;
+	}
+
+	private static String escape(String url) {
+		// brackets are only allowed around an IPv6 address in the authority
+		int schemeEnd = url.indexOf("://");
+		int pathStart = url.length();
+		if (schemeEnd > 0) {
+			for (int i = schemeEnd + 3; i < url.length(); i++) {
+				char c = url.charAt(i);
+				if (c == '/' || c == '?' || c == '#') {
+					pathStart = i;
+					break;
+				}
+			}
+		} else {
+			pathStart = 0;
+		}
+		StringBuilder sb = new StringBuilder(url.length() + 16);
+		boolean fragment = false;
+		for (int i = 0; i < url.length(); i++) {
+			char c = url.charAt(i);
+			boolean allowed = c < 0x80 && (Character.isLetterOrDigit(c) || "-._~:/?@!$&'()*+,;=".indexOf(c) >= 0
+					|| c == '%' && i + 2 < url.length() && isHex(url.charAt(i + 1)) && isHex(url.charAt(i + 2))
+					|| c == '#' && !fragment || (c == '[' || c == ']') && i < pathStart);
+			if (allowed) {
+				fragment |= c == '#';
+				sb.append(c);
+				continue;
+			}
+			int end = Character.isHighSurrogate(c) && i + 1 < url.length() ? i + 2 : i + 1;
+			for (byte b : url.substring(i, end).getBytes(StandardCharsets.UTF_8)) {
+				sb.append('%').append(Character.toUpperCase(Character.forDigit((b >> 4) & 0xf, 16)))
+						.append(Character.toUpperCase(Character.forDigit(b & 0xf, 16)));
+			}
+			i = end - 1;
+		}
+		return sb.toString();
+	}
+
+	private static boolean isHex(char c) {
+		return Character.digit(c, 16) >= 0;
+	}
+
+	private HttpEngineResponse execute(final HttpUriRequest request, final String url) throws IOException {
+		final AtomicBoolean timedOut = new AtomicBoolean();
+		final ScheduledFuture<?> deadline = watchdog == null ? null : watchdog.schedule(new Runnable() {
+			public void run() {
+				timedOut.set(true);
+				request.abort();
+			}
+		}, totalTimeout, TimeUnit.MILLISECONDS);
+
+		final HttpClientContext context = HttpClientContext.create();
+		final RequestTiming timing = new RequestTiming(true);
+		final CloseableHttpResponse response;
+		long start = System.nanoTime();
+		TIMING.set(timing);
+		try {
+			response = client.execute(request, context);
+			timing.setFirstByte(System.nanoTime() - start);
+		} catch (IOException e) {
+			if (deadline != null) {
+				deadline.cancel(false);
+			}
+			if (timedOut.get()) {
+				throw new SocketTimeoutException("Request to " + url + " took longer than " + totalTimeout + " ms");
+			}
+			throw e;
+		} finally {
+			TIMING.remove();
+		}
+
+		return new HttpEngineResponse() {
+
+			public int getStatus() {
+				return response.getStatusLine().getStatusCode();
+			}
+
+			public String getHeader(String name) {
+				Header header = response.getFirstHeader(name);
+				return header == null ? null : header.getValue();
+			}
+
+			public Map<String, List<String>> getHeaders() {
+				Map<String, List<String>> headers = new LinkedHashMap<String, List<String>>();
+				for (Header header : response.getAllHeaders()) {
+					List<String> values = headers.get(header.getName());
+					if (values == null) {
+						values = new ArrayList<String>(1);
+						headers.put(header.getName(), values);
+					}
+					values.add(header.getValue());
+				}
+				return headers;
+			}
+
+			public String getUrl() {
+				List<URI> redirects = context.getRedirectLocations();
+				return redirects == null || redirects.isEmpty() ? url : redirects.get(redirects.size() - 1).toString();
+			}
+
+			public InputStream getBody() throws IOException {
+				HttpEntity entity = response.getEntity();
+				return entity == null ? new ByteArrayInputStream(new byte[0]) : entity.getContent();
+			}
+
+			public RequestTiming getTiming() {
+				return timing;
+			}
+
+			public void close() throws IOException {
+				if (deadline != null) {
+					deadline.cancel(false);
+				}
+				response.close();
+			}
+		};
+	}
+
+	public void close() throws IOException {
+		if (watchdog != null) {
+			watchdog.shutdownNow();
+		}
+		client.close();
+	}
+
+	private static class TimedDnsResolver implements DnsResolver {
+
+		private final DnsResolver resolver;
+
+		TimedDnsResolver(DnsResolver resolver) {
+			this.resolver = resolver;
+		}
+
+		public InetAddress[] resolve(String host) throws UnknownHostException {
+			long start = System.nanoTime();
+			try {
+				return resolver.resolve(host);
+			} finally {
+				RequestTiming timing = TIMING.get();
+				if (timing != null) {
+					timing.addDns(System.nanoTime() - start);
+				}
+			}
+		}
+	}
+
+	private static class TimedPlainSocketFactory extends PlainConnectionSocketFactory {
+
+		public Socket connectSocket(int connectTimeout, Socket socket, HttpHost host, InetSocketAddress remoteAddress,
+				InetSocketAddress localAddress, HttpContext context) throws IOException {
+			long start = System.nanoTime();
+			try {
+				return super.connectSocket(connectTimeout, socket, host, remoteAddress, localAddress, context);
+			} finally {
+				RequestTiming timing = TIMING.get();
+				if (timing != null) {
+					timing.addConnect(System.nanoTime() - start);
+				}
+			}
+		}
+	}
+
+	// The TLS handshake runs within connectSocket, its time is left out of
+	// the connect time
+	private static class TimedSslSocketFactory extends SSLConnectionSocketFactory {
+
+		TimedSslSocketFactory() {
+			super(SSLContexts.createDefault(), getDefaultHostnameVerifier());
+		}
+
+		public Socket connectSocket(int connectTimeout, Socket socket, HttpHost host, InetSocketAddress remoteAddress,
+				InetSocketAddress localAddress, HttpContext context) throws IOException {
+			RequestTiming timing = TIMING.get();
+			long tls = timing == null ? 0 : timing.tlsNanos;
+			long start = System.nanoTime();
+			try {
+				return super.connectSocket(connectTimeout, socket, host, remoteAddress, localAddress, context);
+			} finally {
+				if (timing != null) {
+					timing.addConnect(System.nanoTime() - start - (timing.tlsNanos - tls));
+				}
+			}
+		}
+
+		public Socket createLayeredSocket(Socket socket, String target, int port, HttpContext context)
+				throws IOException {
+			long start = System.nanoTime();
+			try {
+				return super.createLayeredSocket(socket, target, port, context);
+			} finally {
+				RequestTiming timing = TIMING.get();
+				if (timing != null) {
+					timing.addTls(System.nanoTime() - start);
+				}
+			}
+		}
+	}
+
+}
@@ -0,0 +1,132 @@
+package org.pentaho.di.sdk.plugin.steps.pagedownload;
+
+import java.nio.charset.Charset;
+import java.util.Locale;
+
+/**
+ * Works out the character set of a downloaded page, in the order a browser
+ * would: a byte order mark, the charset parameter of the Content-Type header,
+ * then a &lt;meta&gt; declaration near the start of the document.
+ */
+public class CharsetSniffer {
+
+	public static final Charset UTF8 = Charset.forName("UTF-8");
+
+	// HTML requires the meta declaration within the first 1024 bytes
+	private static final int SNIFF_LENGTH = 1024;
+
+	private CharsetSniffer() {
+	}
+
+	/**
+	 * @param contentType
+	 *            the Content-Type response header, may be null
+	 * @param body
+	 *            the raw response body
+	 * @param fallback
+	 *            charset to use when nothing is declared
+	 */
+	public static Charset detect(String contentType, byte[] body, Charset fallback) {
+		Charset charset = fromByteOrderMark(body);
+		if (charset != null) {
+			return charset;
+		}
+		charset = forName(parameter(contentType, "charset"));
+		if (charset != null) {
+			return charset;
+		}
+		if (contentType == null || contentType.toLowerCase(Locale.ROOT).contains("html")) {
+			charset = fromMeta(body);
+			if (charset != null) {
+				return charset;
+			}
+		}
+		return fallback;
+	}
+
+	/**
+	 * @return the number of bytes taken by a byte order mark at the start of
+	 *         the body, 0 if there is none
+	 */
+	public static int byteOrderMarkLength(byte[] body) {
+		Charset charset = fromByteOrderMark(body);
+		if (charset == null) {
+			return 0;
+		}
+		return charset == UTF8 ? 3 : 2;
+	}
+
+	private static Charset fromByteOrderMark(byte[] body) {
+		if (body.length >= 3 && (body[0] & 0xff) == 0xef && (body[1] & 0xff) == 0xbb && (body[2] & 0xff) == 0xbf) {
+			return UTF8;
+		}
+		if (body.length >= 2 && (body[0] & 0xff) == 0xfe && (body[1] & 0xff) == 0xff) {
+			return Charset.forName("UTF-16BE");
+		}
+		if (body.length >= 2 && (body[0] & 0xff) == 0xff && (body[1] & 0xff) == 0xfe) {
+			return Charset.forName("UTF-16LE");
+		}
+		return null;
+	}
+
+	// Looks for <meta charset="..."> or <meta http-equiv="Content-Type"
+	// content="...; charset=...">. The declaration is ASCII in every charset
+	// a page can declare this way, so the bytes are scanned as Latin-1.
+	private static Charset fromMeta(byte[] body) {
+		String head = new String(body, 0, Math.min(body.length, SNIFF_LENGTH), Charset.forName("ISO-8859-1"))
+				.toLowerCase(Locale.ROOT);
+		int meta = head.indexOf("<meta");
+		while (meta >= 0) {
+			int end = head.indexOf('>', meta);
+			if (end < 0) {
+				break;
+			}
+			Charset charset = forName(parameter(head.substring(meta + 5, end), "charset"));
+			if (charset != null) {
+				return charset;
+			}
+			meta = head.indexOf("<meta", end);
+		}
+		return null;
+	}
+
+	// Value of name=value in a header or tag, with optional quotes.
+	private static String parameter(String value, String name) {
+		if (value == null) {
+			return null;
+		}
+		int start = value.toLowerCase(Locale.ROOT).indexOf(name);
+		while (start >= 0) {
+			int i = start + name.length();
+			while (i < value.length() && value.charAt(i) == ' ') {
+				i++;
+			}
+			if (i < value.length() && value.charAt(i) == '=') {
+				i++;
+				while (i < value.length() && (value.charAt(i) == ' ' || value.charAt(i) == '"' || value.charAt(i) == '\'')) {
+					i++;
+				}
+				int end = i;
+				while (end < value.length() && " \"';>/".indexOf(value.charAt(end)) < 0) {
+					end++;
+				}
+				return value.substring(i, end);
+			}
+			start = value.toLowerCase(Locale.ROOT).indexOf(name, i);
+		}
+		return null;
+	}
+
+	private static Charset forName(String name) {
+		if (name == null || name.length() == 0) {
+			return null;
+		}
+		try {
+			return Charset.forName(name);
+		} catch (IllegalArgumentException e) {
+			// unknown or malformed charset name, fall through to the next rule
+			return null;
+		}
+	}
+
+}
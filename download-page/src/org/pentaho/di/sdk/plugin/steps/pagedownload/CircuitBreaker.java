@@ -0,0 +1,107 @@
+package org.pentaho.di.sdk.plugin.steps.pagedownload;
+
+/**
+ * Circuit breaker for one host. It keeps the outcome of the last requests
+ * to the host, and once their error rate reaches the threshold it opens:
+ * further requests fail at once instead of waiting for a host that is down.
+ * After the open time a single trial request is let through, which closes
+ * the breaker again if it succeeds.
+ */
+public class CircuitBreaker {
+
+	// outcomes remembered, and the number needed before the breaker may open
+	private static final int WINDOW = 20;
+	private static final int MINIMUM_REQUESTS = 10;
+
+	private final int errorRatePercent;
+	private final long openNanos;
+
+	private final boolean[] failed = new boolean[WINDOW];
+	private int next;
+	private int count;
+	private int failures;
+
+	private boolean open;
+	private long openUntil;
+	private boolean trialRunning;
+
+	/**
+	 * @param errorRatePercent
+	 *            percentage of failed requests that opens the breaker
+	 * @param openNanos
+	 *            time requests are rejected before a trial request
+	 */
+	public CircuitBreaker(int errorRatePercent, long openNanos) {
+		this.errorRatePercent = errorRatePercent;
+		this.openNanos = openNanos;
+	}
+
+	/**
+	 * @return true if a request may be sent now, in which case its outcome
+	 *         must be passed to {@link #record(boolean, long)}, or
+	 *         {@link #cancelTrial()} called if it has none
+	 */
+	public synchronized boolean allowRequest(long now) {
+		if (!open) {
+			return true;
+		}
+		if (trialRunning || now - openUntil < 0) {
+			return false;
+		}
+		trialRunning = true;
+		return true;
+	}
+
+	public synchronized void record(boolean success, long now) {
+		if (open) {
+			if (!trialRunning) {
+				// a request sent before the breaker opened
+				return;
+			}
+			trialRunning = false;
+			if (success) {
+				open = false;
+				count = 0;
+				failures = 0;
+				next = 0;
+			} else {
+				openUntil = now + openNanos;
+			}
+			return;
+		}
+
+		if (count == WINDOW) {
+			if (failed[next]) {
+				failures--;
+			}
+		} else {
+			count++;
+		}
+		failed[next] = !success;
+		if (!success) {
+			failures++;
+		}
+		next = (next + 1) % WINDOW;
+
+		if (count >= MINIMUM_REQUESTS && failures * 100 >= errorRatePercent * count) {
+			open = true;
+			openUntil = now + openNanos;
+		}
+	}
+
+	/**
+	 * Ends a request let through without an outcome that says anything about
+	 * the host, such as a permanent error or an abort. If it was the trial
+	 * request, the next request is let through as the trial instead.
+	 */
+	public synchronized void cancelTrial() {
+		if (open) {
+			trialRunning = false;
+		}
+	}
+
+	public synchronized boolean isOpen() {
+		return open;
+	}
+
+}
@@ -0,0 +1,17 @@
+package org.pentaho.di.sdk.plugin.steps.pagedownload;
+
+import java.io.IOException;
+
+/**
+ * Thrown instead of sending a request while the circuit breaker of its host
+ * is open.
+ */
+public class CircuitOpenException extends IOException {
+
+	private static final long serialVersionUID = 1L;
+
+	public CircuitOpenException(String url, String host) {
+		super("Not downloading " + url + ", too many recent requests to " + host + " failed");
+	}
+
+}
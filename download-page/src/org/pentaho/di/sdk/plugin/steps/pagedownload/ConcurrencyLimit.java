@@ -0,0 +1,97 @@
+package org.pentaho.di.sdk.plugin.steps.pagedownload;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Number of downloads a step copy keeps in flight, tuned by additive
+ * increase and multiplicative decrease. The limit starts at the minimum and
+ * doubles every round of requests until the first sign of trouble, then grows
+ * by one per round. A request failing through the host's fault, or a
+ * smoothed latency above twice the baseline, cuts it by a tenth, at most once
+ * per round so the requests already in flight do not cut it again.
+ *
+ * The baseline follows the smoothed latency down at once and up only slowly,
+ * so a host that became slower for good does not keep the limit at the
+ * minimum.
+ */
+public class ConcurrencyLimit {
+
+	private static final double BACKOFF = 0.9;
+	private static final double TOLERANCE = 2.0;
+	private static final double SMOOTHING = 0.1;
+	private static final double BASELINE_DRIFT = 0.01;
+
+	private final int min;
+	private final int max;
+
+	private double limit;
+	private boolean slowStart = true;
+	private int samplesSinceDecrease;
+	private double smoothedNanos = -1;
+	private double baselineNanos;
+	private long increases;
+	private long decreases;
+
+	/**
+	 * @param min
+	 *            lowest limit, also the one to start with
+	 * @param max
+	 *            highest limit
+	 */
+	public ConcurrencyLimit(int min, int max) {
+		this.min = Math.max(1, Math.min(min, max));
+		this.max = Math.max(this.min, max);
+		this.limit = this.min;
+	}
+
+	/**
+	 * @return the number of downloads that may be in flight now
+	 */
+	public synchronized int get() {
+		return (int) limit;
+	}
+
+	/**
+	 * Adjusts the limit to the outcome of a request.
+	 *
+	 * @param nanos
+	 *            time the request took
+	 * @param success
+	 *            false if the request failed through the host's fault
+	 */
+	public synchronized void record(long nanos, boolean success) {
+		if (smoothedNanos < 0) {
+			smoothedNanos = nanos;
+			baselineNanos = nanos;
+		} else {
+			smoothedNanos += SMOOTHING * (nanos - smoothedNanos);
+			baselineNanos = Math.min(smoothedNanos, baselineNanos + BASELINE_DRIFT * (smoothedNanos - baselineNanos));
+		}
+		samplesSinceDecrease++;
+
+		int before = (int) limit;
+		if (!success || smoothedNanos > TOLERANCE * baselineNanos) {
+			if (samplesSinceDecrease >= before) {
+				limit = Math.max(min, limit * BACKOFF);
+				slowStart = false;
+				samplesSinceDecrease = 0;
+			}
+		} else {
+			limit = Math.min(max, limit + (slowStart ? 1 : 1 / limit));
+		}
+
+		if ((int) limit > before) {
+			increases++;
+		} else if ((int) limit < before) {
+			decreases++;
+		}
+	}
+
+	public synchronized String toString() {
+		return "Concurrency limit " + (int) limit + " (" + min + " to " + max + "), latency "
+				+ TimeUnit.NANOSECONDS.toMillis((long) Math.max(0, smoothedNanos)) + " ms, baseline "
+				+ TimeUnit.NANOSECONDS.toMillis((long) baselineNanos) + " ms, raised " + increases + " times, lowered "
+				+ decreases + " times";
+	}
+
+}
@@ -0,0 +1,176 @@
+package org.pentaho.di.sdk.plugin.steps.pagedownload;
+
+import java.io.BufferedInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.io.UnsupportedEncodingException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Content codings the step asks servers for and decodes while the body is
+ * read. gzip and deflate are handled by the JDK; brotli is offered only when
+ * the org.brotli decoder is on the plugin's class path.
+ */
+public class ContentDecoder {
+
+	private static final Constructor<?> BROTLI = brotliDecoder();
+
+	/**
+	 * Value of the Accept-Encoding request header.
+	 */
+	public static final String ACCEPT_ENCODING = BROTLI == null ? "gzip, deflate" : "gzip, deflate, br";
+
+	private ContentDecoder() {
+	}
+
+	/**
+	 * Wraps a response body in a stream that undoes its Content-Encoding.
+	 * The decoders hold native memory until the returned stream is closed,
+	 * closing it leaves the body open. An empty body is an empty page, not a
+	 * damaged one.
+	 *
+	 * @param contentEncoding
+	 *            the Content-Encoding response header, may be null
+	 * @throws UnsupportedEncodingException
+	 *             if a coding of the header cannot be undone
+	 */
+	public static InputStream decode(String contentEncoding, InputStream body) throws IOException {
+		if (contentEncoding == null) {
+			return body;
+		}
+		PushbackInputStream peek = new PushbackInputStream(new FilterInputStream(body) {
+			public void close() {
+				// the body is closed with the response
+			}
+		}, 1);
+		int first = peek.read();
+		if (first < 0) {
+			// nothing was compressed, there is not even a gzip header to read
+			return peek;
+		}
+		peek.unread(first);
+		body = peek;
+		String[] codings = contentEncoding.toLowerCase(Locale.ROOT).split(",");
+		try {
+			// codings are listed in the order they were applied
+			for (int i = codings.length - 1; i >= 0; i--) {
+				String coding = codings[i].trim();
+				if (coding.equals("gzip") || coding.equals("x-gzip")) {
+					body = new GZIPInputStream(body, 8192);
+				} else if (coding.equals("deflate")) {
+					body = inflate(body);
+				} else if (coding.equals("br") && BROTLI != null) {
+					body = brotli(body);
+				} else if (!coding.equals("identity") && coding.length() > 0) {
+					throw new UnsupportedEncodingException("Unsupported Content-Encoding: " + contentEncoding);
+				}
+			}
+		} catch (IOException e) {
+			// ends the decoders created so far
+			body.close();
+			throw e;
+		}
+		return body;
+	}
+
+	// "deflate" should be zlib wrapped, but some servers send raw deflate
+	// data. A zlib stream starts with a header whose first two bytes are a
+	// multiple of 31.
+	private static InputStream inflate(InputStream body) throws IOException {
+		BufferedInputStream in = new BufferedInputStream(body, 8192);
+		in.mark(2);
+		int cmf = in.read();
+		int flg = in.read();
+		in.reset();
+		boolean zlib = cmf >= 0 && flg >= 0 && (cmf & 0x0f) == 8 && ((cmf << 8) | flg) % 31 == 0;
+		final Inflater inflater = new Inflater(!zlib);
+		return new InflaterInputStream(in, inflater, 8192) {
+			public void close() throws IOException {
+				try {
+					super.close();
+				} finally {
+					inflater.end();
+				}
+			}
+		};
+	}
+
+	private static InputStream brotli(InputStream body) throws IOException {
+		try {
+			return (InputStream) BROTLI.newInstance(body);
+		} catch (InvocationTargetException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IOException(e.getCause());
+		} catch (Exception e) {
+			throw new IOException(e);
+		}
+	}
+
+	private static Constructor<?> brotliDecoder() {
+		try {
+			return Class.forName("org.brotli.dec.BrotliInputStream").getConstructor(InputStream.class);
+		} catch (Exception e) {
+			return null;
+		} catch (LinkageError e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Counts the bytes read through it, used to measure the body as it came
+	 * over the wire before decoding.
+	 */
+	static class CountingInputStream extends FilterInputStream {
+
+		private long count;
+
+		CountingInputStream(InputStream in) {
+			super(in);
+		}
+
+		public long getCount() {
+			return count;
+		}
+
+		// Counts bytes that reached the reader some other way than this stream
+		void addCount(long n) {
+			count += n;
+		}
+
+		public int read() throws IOException {
+			int b = super.read();
+			if (b >= 0) {
+				count++;
+			}
+			return b;
+		}
+
+		public int read(byte[] b, int off, int len) throws IOException {
+			int n = super.read(b, off, len);
+			if (n > 0) {
+				count += n;
+			}
+			return n;
+		}
+
+		public long skip(long n) throws IOException {
+			long skipped = super.skip(n);
+			count += skipped;
+			return skipped;
+		}
+
+		public boolean markSupported() {
+			return false;
+		}
+	}
+
+}
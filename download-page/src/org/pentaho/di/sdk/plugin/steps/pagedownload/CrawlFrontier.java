@@ -0,0 +1,172 @@
+package org.pentaho.di.sdk.plugin.steps.pagedownload;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.regex.Pattern;
+
+/**
+ * The URLs a crawl has found and not downloaded yet. Links of the lowest
+ * depth come first, in the order they were found, so the pages closest to
+ * the seeds are downloaded before the crawl goes deeper.
+ *
+ * A link is followed if it is on the site of the seed it was reached from,
+ * the seed's host or one below it, or if it matches the allow pattern. The
+ * page limit counts the seeds and every URL queued, so the queue never holds
+ * more than the pages still to come, and never more than MAX_QUEUED links.
+ * A link found while the queue is full is dropped, but may be queued when
+ * found again later. Used by the step thread only.
+ */
+public class CrawlFrontier {
+
+	// links waiting at most, about a hundred bytes of heap each
+	static final int MAX_QUEUED = 250000;
+
+	private final PriorityQueue<Link> queue = new PriorityQueue<Link>(64, new Comparator<Link>() {
+		public int compare(Link a, Link b) {
+			if (a.depth != b.depth) {
+				return a.depth < b.depth ? -1 : 1;
+			}
+			return a.sequence < b.sequence ? -1 : a.sequence > b.sequence ? 1 : 0;
+		}
+	});
+	private final VisitedSet visited;
+	private final int maxDepth;
+	private final long maxPages;
+	private final Pattern allow;
+	private long pages;
+	private long sequence;
+	private long outOfScope;
+	private long overLimit;
+	private long dropped;
+
+	/**
+	 * @param maxDepth
+	 *            links followed from a seed, 0 to only download the seeds
+	 * @param maxPages
+	 *            pages to download, seeds included
+	 * @param allow
+	 *            links followed on any site, null for none
+	 */
+	public CrawlFrontier(int maxDepth, long maxPages, Pattern allow, VisitedSet visited) {
+		this.maxDepth = maxDepth;
+		this.maxPages = maxPages;
+		this.allow = allow;
+		this.visited = visited;
+	}
+
+	/**
+	 * Records the URL of an input row, so links to it are not followed. Seeds
+	 * are always downloaded, but count against the page limit.
+	 */
+	public void seed(String url) {
+		visited.add(url);
+		pages++;
+	}
+
+	/**
+	 * @return whether the links of the page are within the maximum depth
+	 */
+	public boolean followsLinksOf(PageFetch page) {
+		return page.getDepth() < maxDepth;
+	}
+
+	/**
+	 * Queues the links found on a downloaded page that are within the limits
+	 * and have not been seen before.
+	 *
+	 * @param row
+	 *            the input fields passed on with the links, a copy the step
+	 *            does not change or pass on itself
+	 */
+	public void addLinks(PageFetch page, Object[] row, List<String> links) {
+		if (!followsLinksOf(page)) {
+			return;
+		}
+		int depth = page.getDepth() + 1;
+		for (String url : links) {
+			if (pages >= maxPages) {
+				overLimit++;
+				continue;
+			}
+			if (queue.size() >= MAX_QUEUED) {
+				dropped++;
+				continue;
+			}
+			if (!isInSite(url, page.getSite()) && (allow == null || !allow.matcher(url).find())) {
+				outOfScope++;
+				continue;
+			}
+			if (visited.add(url)) {
+				queue.add(new Link(row, url, depth, page.getUrl(), page.getSite(), sequence++));
+				pages++;
+			}
+		}
+	}
+
+	/**
+	 * @return the next link to download, or null if none is queued
+	 */
+	public Link poll() {
+		return queue.poll();
+	}
+
+	public boolean isEmpty() {
+		return queue.isEmpty();
+	}
+
+	/**
+	 * @return the site of a seed URL, its host without a leading "www."
+	 */
+	static String getSite(String url) {
+		String host = HostScheduler.getHost(url);
+		return host.startsWith("www.") ? host.substring(4) : host;
+	}
+
+	static boolean isInSite(String url, String site) {
+		String host = HostScheduler.getHost(url);
+		return host.equals(site) || host.endsWith(site) && host.length() > site.length()
+				&& host.charAt(host.length() - site.length() - 1) == '.';
+	}
+
+	public String toString() {
+		return "Crawl queued " + pages + " pages, " + queue.size() + " left, " + visited + ", " + outOfScope
+				+ " links out of scope, " + overLimit + " over the page limit, " + dropped + " dropped by a full queue";
+	}
+
+	/**
+	 * A link waiting to be downloaded, passed on with the input fields of its
+	 * seed.
+	 */
+	public static class Link {
+
+		private final Object[] row;
+		private final String url;
+		private final int depth;
+		private final String referrer;
+		private final String site;
+		private final long sequence;
+
+		Link(Object[] row, String url, int depth, String referrer, String site, long sequence) {
+			this.row = row;
+			this.url = url;
+			this.depth = depth;
+			this.referrer = referrer;
+			this.site = site;
+			this.sequence = sequence;
+		}
+
+		/**
+		 * @return the download of the link, which keeps the site of the
+		 *         seed for the links found on it. The links of a page share
+		 *         their input fields, so each download gets a copy the step can
+		 *         add its fields to.
+		 */
+		PageFetch toFetch(PageDownloader downloader) {
+			PageFetch fetch = new PageFetch(row.clone(), url, downloader);
+			fetch.crawled(depth, referrer, site);
+			return fetch;
+		}
+	}
+
+}
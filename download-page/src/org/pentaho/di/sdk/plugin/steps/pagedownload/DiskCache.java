@@ -0,0 +1,347 @@
+package org.pentaho.di.sdk.plugin.steps.pagedownload;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Persistent cache of downloaded pages together with their ETag and
+ * Last-Modified validators, so a later run can revalidate a page instead of
+ * downloading it again.
+ *
+ * Every entry is a file named after the hash of its URL. The modification
+ * time of the file is the last time the entry was used, which keeps the LRU
+ * order across runs without holding an index of millions of URLs in memory.
+ * Once the cache grows beyond its size limit the least recently used files
+ * are deleted until it is back at 90% of the limit.
+ *
+ * Entries are written to a temporary file and renamed into place, so step
+ * copies sharing a cache directory never see a half written entry. Strings
+ * are stored as their UTF-8 length followed by the bytes, a URL may be longer
+ * than the 64 KB DataOutput.writeUTF takes.
+ */
+public class DiskCache {
+
+	private static final int VERSION = 3;
+	private static final String SUFFIX = ".entry";
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private static final Map<String, DiskCache> caches = new HashMap<String, DiskCache>();
+
+	private final File directory;
+	private final long maxBytes;
+	private long totalBytes;
+	private int references;
+
+	private DiskCache(File directory, long maxBytes) throws IOException {
+		this.directory = directory;
+		this.maxBytes = maxBytes;
+
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Unable to create cache directory " + directory);
+		}
+		for (File file : entryFiles()) {
+			totalBytes += file.length();
+		}
+	}
+
+	/**
+	 * Opens the cache in the given directory, sharing it with the step copies
+	 * that already use it.
+	 */
+	public static synchronized DiskCache open(File directory, long maxBytes) throws IOException {
+		String key = directory.getCanonicalPath();
+		DiskCache cache = caches.get(key);
+		if (cache == null) {
+			cache = new DiskCache(directory, maxBytes);
+			caches.put(key, cache);
+		}
+		cache.references++;
+		return cache;
+	}
+
+	public static synchronized void close(DiskCache cache) throws IOException {
+		if (--cache.references > 0) {
+			return;
+		}
+		caches.remove(cache.directory.getCanonicalPath());
+	}
+
+	/**
+	 * @return the key a URL is cached under, the URL without its fragment
+	 */
+	public static String key(String url) {
+		int hash = url.indexOf('#');
+		return hash < 0 ? url : url.substring(0, hash);
+	}
+
+	/**
+	 * @return the cached entry for the URL, or null if there is none or it
+	 *         cannot be read, in which case it is deleted
+	 */
+	public Entry get(String url) throws IOException {
+		File file = fileFor(url);
+		long size = file.length();
+		DataInputStream in;
+		try {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		} catch (FileNotFoundException e) {
+			return null;
+		}
+		try {
+			try {
+				if (in.readInt() != VERSION || !url.equals(readString(in, size))) {
+					return null;
+				}
+				String etag = emptyToNull(readString(in, size));
+				String lastModified = emptyToNull(readString(in, size));
+				String contentType = emptyToNull(readString(in, size));
+				int length = in.readInt();
+				if (length < 0 || length > size) {
+					throw new IOException("Body length " + length + " does not fit in " + file);
+				}
+				byte[] body = new byte[length];
+				in.readFully(body);
+				if (in.read() != -1) {
+					throw new IOException("Body length " + length + " does not match " + file);
+				}
+				return new Entry(etag, lastModified, contentType, body);
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			// truncated by a crash while the entry was written, or damaged
+		} catch (RuntimeException e) {
+			// a damaged header
+		} catch (OutOfMemoryError e) {
+			// a body too large for the heap left now
+		}
+		// a miss, and the entry is dropped so the page is cached again
+		synchronized (this) {
+			if (file.delete()) {
+				totalBytes -= size;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Marks an entry as used, moving it to the end of the eviction order.
+	 */
+	public void touch(String url) {
+		fileFor(url).setLastModified(System.currentTimeMillis());
+	}
+
+	public void put(String url, Entry entry) throws IOException {
+		File file = fileFor(url);
+		File parent = file.getParentFile();
+		if (!parent.isDirectory() && !parent.mkdirs() && !parent.isDirectory()) {
+			throw new IOException("Unable to create cache directory " + parent);
+		}
+
+		File temp = new File(parent, UUID.randomUUID() + ".tmp");
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+		try {
+			try {
+				out.writeInt(VERSION);
+				writeString(out, url);
+				writeString(out, nullToEmpty(entry.getEtag()));
+				writeString(out, nullToEmpty(entry.getLastModified()));
+				writeString(out, nullToEmpty(entry.getContentType()));
+				out.writeInt(entry.getBody().length);
+				out.write(entry.getBody());
+			} finally {
+				out.close();
+			}
+		} catch (IOException e) {
+			temp.delete();
+			throw e;
+		}
+
+		long added = temp.length();
+		synchronized (this) {
+			long replaced = file.length();
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			totalBytes += added - replaced;
+			if (totalBytes > maxBytes) {
+				evict();
+			}
+		}
+	}
+
+	// Deletes the least recently used entries until the cache is at 90% of
+	// its limit. Only the modification times are held in memory, the cut-off
+	// is estimated from the average entry size and refined while deleting.
+	private void evict() {
+		File[] files = entryFiles();
+		if (files.length == 0) {
+			totalBytes = 0;
+			return;
+		}
+		long[] used = new long[files.length];
+		long size = 0;
+		for (int i = 0; i < files.length; i++) {
+			used[i] = files[i].lastModified();
+			size += files[i].length();
+		}
+		totalBytes = size;
+
+		long target = maxBytes / 10 * 9;
+		long average = Math.max(1, size / files.length);
+		long[] sorted = used.clone();
+		Arrays.sort(sorted);
+
+		int cut = -1;
+		while (totalBytes > target && cut < files.length - 1) {
+			cut = (int) Math.min(files.length - 1, cut + Math.max(1, (totalBytes - target) / average));
+			long cutoff = sorted[cut];
+			for (int i = 0; i < files.length && totalBytes > target; i++) {
+				if (files[i] != null && used[i] <= cutoff) {
+					long length = files[i].length();
+					if (files[i].delete()) {
+						totalBytes -= length;
+					}
+					files[i] = null;
+				}
+			}
+		}
+	}
+
+	private File[] entryFiles() {
+		File[] buckets = directory.listFiles();
+		if (buckets == null) {
+			return new File[0];
+		}
+		int count = 0;
+		File[][] entries = new File[buckets.length][];
+		for (int i = 0; i < buckets.length; i++) {
+			entries[i] = buckets[i].listFiles();
+			if (entries[i] != null) {
+				count += entries[i].length;
+			}
+		}
+		File[] files = new File[count];
+		int n = 0;
+		for (File[] bucket : entries) {
+			if (bucket != null) {
+				for (File file : bucket) {
+					if (file.getName().endsWith(SUFFIX)) {
+						files[n++] = file;
+					}
+				}
+			}
+		}
+		return Arrays.copyOf(files, n);
+	}
+
+	// Entries are spread over 256 sub directories by the first byte of the hash.
+	File fileFor(String url) {
+		String hash = sha1(url);
+		return new File(new File(directory, hash.substring(0, 2)), hash + SUFFIX);
+	}
+
+	private static String sha1(String value) {
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-1").digest(value.getBytes(UTF8));
+			StringBuilder sb = new StringBuilder(digest.length * 2);
+			for (byte b : digest) {
+				sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+			}
+			return sb.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		byte[] bytes = value.getBytes(UTF8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(DataInputStream in, long size) throws IOException {
+		int length = in.readInt();
+		if (length < 0 || length > size) {
+			throw new IOException("String length " + length + " does not fit in the entry");
+		}
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, UTF8);
+	}
+
+	/**
+	 * @return false if the Cache-Control header of a response forbids storing
+	 *         it
+	 */
+	public static boolean mayStore(String cacheControl) {
+		if (cacheControl == null) {
+			return true;
+		}
+		for (String directive : cacheControl.split(",")) {
+			if ("no-store".equalsIgnoreCase(directive.trim())) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static String nullToEmpty(String value) {
+		return value == null ? "" : value;
+	}
+
+	private static String emptyToNull(String value) {
+		return value.length() == 0 ? null : value;
+	}
+
+	/**
+	 * The raw body of a cached page, its content type and the validators it
+	 * was served with.
+	 */
+	public static class Entry {
+
+		private final String etag;
+		private final String lastModified;
+		private final String contentType;
+		private final byte[] body;
+
+		public Entry(String etag, String lastModified, String contentType, byte[] body) {
+			this.etag = etag;
+			this.lastModified = lastModified;
+			this.contentType = contentType;
+			this.body = body;
+		}
+
+		public String getEtag() {
+			return etag;
+		}
+
+		public String getLastModified() {
+			return lastModified;
+		}
+
+		public String getContentType() {
+			return contentType;
+		}
+
+		public byte[] getBody() {
+			return body;
+		}
+	}
+
+}
@@ -0,0 +1,188 @@
+package org.pentaho.di.sdk.plugin.steps.pagedownload;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Iterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.conn.DnsResolver;
+
+/**
+ * Host name lookups shared by the copies of a download step, kept for a
+ * fixed time whatever the JVM's own DNS cache settings are. Failed lookups
+ * are kept as well, so a dead host in a long tail is only asked for once per
+ * time to live.
+ *
+ * Lookups can be started ahead of time on background threads. A connection
+ * to a host whose lookup is still running waits for it instead of starting
+ * another one.
+ */
+public class DnsCache implements DnsResolver {
+
+	// threads resolving hosts ahead of time
+	private static final int PREFETCH_THREADS = 4;
+
+	// entries kept before expired ones are dropped
+	private static final int PURGE_SIZE = 100000;
+
+	private final long ttlNanos;
+	private final ConcurrentMap<String, Lookup> lookups = new ConcurrentHashMap<String, Lookup>();
+	private final ExecutorService prefetcher;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong prefetched = new AtomicLong();
+
+	/**
+	 * @param ttlSeconds
+	 *            time a lookup is kept, successful or not
+	 */
+	public DnsCache(long ttlSeconds) {
+		this.ttlNanos = TimeUnit.SECONDS.toNanos(ttlSeconds);
+		this.prefetcher = Executors.newFixedThreadPool(PREFETCH_THREADS, new ThreadFactory() {
+
+			private final AtomicInteger count = new AtomicInteger();
+
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "PageDownload DNS prefetch-" + count.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+
+	/**
+	 * Returns the addresses of the host, looking them up only if no lookup
+	 * within the time to live is known.
+	 */
+	public InetAddress[] resolve(String host) throws UnknownHostException {
+		Lookup lookup = lookups.get(host);
+		if (lookup != null && !lookup.isExpired(System.nanoTime())) {
+			hits.incrementAndGet();
+		} else {
+			misses.incrementAndGet();
+			lookup = start(host, lookup);
+			lookup.run();
+		}
+		return lookup.getAddresses(host);
+	}
+
+	/**
+	 * Starts looking up the host in the background unless its addresses are
+	 * already known or being looked up.
+	 */
+	public void prefetch(String host) {
+		if (host == null || host.length() == 0) {
+			return;
+		}
+		Lookup lookup = lookups.get(host);
+		if (lookup != null && !lookup.isExpired(System.nanoTime())) {
+			return;
+		}
+		Lookup started = start(host, lookup);
+		if (started != lookup) {
+			try {
+				prefetcher.execute(started);
+				prefetched.incrementAndGet();
+			} catch (RejectedExecutionException e) {
+				// closed, the host is looked up when it is needed
+			}
+		}
+	}
+
+	// Registers a new lookup in place of the expired one, or returns the one
+	// another thread registered first. The caller runs a new lookup. Another
+	// thread may also have purged the entry, or replaced it by one that has
+	// expired since, the lookup is then registered again.
+	private Lookup start(final String host, Lookup expired) {
+		if (lookups.size() >= PURGE_SIZE) {
+			purge();
+		}
+		Lookup created = new Lookup(host);
+		for (;;) {
+			if (expired == null) {
+				expired = lookups.putIfAbsent(host, created);
+				if (expired == null) {
+					return created;
+				}
+			} else if (lookups.replace(host, expired, created)) {
+				return created;
+			} else {
+				expired = lookups.get(host);
+				if (expired == null) {
+					continue;
+				}
+			}
+			if (!expired.isExpired(System.nanoTime())) {
+				return expired;
+			}
+		}
+	}
+
+	private void purge() {
+		long now = System.nanoTime();
+		for (Iterator<Lookup> it = lookups.values().iterator(); it.hasNext();) {
+			if (it.next().isExpired(now)) {
+				it.remove();
+			}
+		}
+	}
+
+	public void close() {
+		prefetcher.shutdownNow();
+	}
+
+	public String toString() {
+		return "DNS cache: " + lookups.size() + " hosts, " + hits.get() + " hits, " + misses.get() + " misses, "
+				+ prefetched.get() + " prefetched";
+	}
+
+	private class Lookup extends FutureTask<InetAddress[]> {
+
+		private volatile long expiresAt;
+
+		Lookup(final String host) {
+			super(new Callable<InetAddress[]>() {
+				public InetAddress[] call() throws UnknownHostException {
+					return InetAddress.getAllByName(host);
+				}
+			});
+		}
+
+		protected void done() {
+			expiresAt = System.nanoTime() + ttlNanos;
+		}
+
+		// a running lookup never expires, it is waited for
+		boolean isExpired(long now) {
+			long at = expiresAt;
+			return at != 0 && now - at >= 0;
+		}
+
+		InetAddress[] getAddresses(String host) throws UnknownHostException {
+			try {
+				return get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new UnknownHostException("Interrupted while looking up " + host);
+			} catch (ExecutionException e) {
+				// a new exception, the cached one belongs to another thread
+				UnknownHostException unknown = new UnknownHostException(host);
+				unknown.initCause(e.getCause());
+				throw unknown;
+			}
+		}
+	}
+
+}
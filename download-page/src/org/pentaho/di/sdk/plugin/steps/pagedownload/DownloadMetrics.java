@@ -0,0 +1,183 @@
+package org.pentaho.di.sdk.plugin.steps.pagedownload;
+
+import java.lang.management.ManagementFactory;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Throughput, latency and cache figures of one copy of the download step,
+ * recorded by the step and its {@link PageDownloader} and read over JMX. The
+ * latencies of the first hosts seen are kept apart as well, a crawl over
+ * many hosts only adds to the overall figures once the limit is reached.
+ */
+public class DownloadMetrics implements DownloadMetricsMBean {
+
+	// hosts with a histogram of their own
+	private static final int MAX_HOSTS = 1000;
+
+	// hosts listed by getSlowestHosts()
+	private static final int SLOWEST_HOSTS = 20;
+
+	private final AtomicLong rowsWritten = new AtomicLong();
+	private final RateMeter rowRate = new RateMeter();
+	private final AtomicLong bytesReceived = new AtomicLong();
+	private final RateMeter byteRate = new RateMeter();
+	private final AtomicInteger inFlight = new AtomicInteger();
+	private final AtomicLong requests = new AtomicLong();
+	private final AtomicLong failedRequests = new AtomicLong();
+	private final AtomicLong downloads = new AtomicLong();
+	private final AtomicLong cacheHits = new AtomicLong();
+	private final LatencyHistogram latency = new LatencyHistogram();
+	private final ConcurrentMap<String, LatencyHistogram> hostLatency = new ConcurrentHashMap<String, LatencyHistogram>();
+
+	void rowWritten() {
+		rowsWritten.incrementAndGet();
+		rowRate.add(1);
+	}
+
+	void downloadRequested() {
+		downloads.incrementAndGet();
+	}
+
+	void cacheHit() {
+		cacheHits.incrementAndGet();
+	}
+
+	void requestStarted() {
+		inFlight.incrementAndGet();
+	}
+
+	void requestFinished() {
+		inFlight.decrementAndGet();
+	}
+
+	/**
+	 * Records an attempt that reached the server, with its result or null if
+	 * it failed.
+	 */
+	void requestCompleted(String url, long nanos, UrlData urlData) {
+		requests.incrementAndGet();
+		if (urlData == null) {
+			failedRequests.incrementAndGet();
+		} else {
+			bytesReceived.addAndGet(urlData.getReceived());
+			byteRate.add(urlData.getReceived());
+			if (urlData.getStatus() == 304) {
+				cacheHits.incrementAndGet();
+			}
+		}
+
+		long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+		latency.record(millis);
+		String host = HostScheduler.getHost(url);
+		LatencyHistogram histogram = hostLatency.get(host);
+		if (histogram == null && hostLatency.size() < MAX_HOSTS) {
+			LatencyHistogram created = new LatencyHistogram();
+			histogram = hostLatency.putIfAbsent(host, created);
+			if (histogram == null) {
+				histogram = created;
+			}
+		}
+		if (histogram != null) {
+			histogram.record(millis);
+		}
+	}
+
+	public long getRowsWritten() {
+		return rowsWritten.get();
+	}
+
+	public double getRowsPerSecond() {
+		return rowRate.getRate();
+	}
+
+	public long getBytesReceived() {
+		return bytesReceived.get();
+	}
+
+	public double getBytesPerSecond() {
+		return byteRate.getRate();
+	}
+
+	public int getRequestsInFlight() {
+		return inFlight.get();
+	}
+
+	public long getRequests() {
+		return requests.get();
+	}
+
+	public long getFailedRequests() {
+		return failedRequests.get();
+	}
+
+	public long getLatencyP50Millis() {
+		return latency.getPercentile(50);
+	}
+
+	public long getLatencyP95Millis() {
+		return latency.getPercentile(95);
+	}
+
+	public long getLatencyP99Millis() {
+		return latency.getPercentile(99);
+	}
+
+	public String[] getSlowestHosts() {
+		List<Map.Entry<String, Long>> hosts = new ArrayList<Map.Entry<String, Long>>(hostLatency.size());
+		for (Map.Entry<String, LatencyHistogram> host : hostLatency.entrySet()) {
+			hosts.add(new AbstractMap.SimpleEntry<String, Long>(host.getKey(),
+					Long.valueOf(host.getValue().getPercentile(99))));
+		}
+		Collections.sort(hosts, new Comparator<Map.Entry<String, Long>>() {
+			public int compare(Map.Entry<String, Long> a, Map.Entry<String, Long> b) {
+				return b.getValue().compareTo(a.getValue());
+			}
+		});
+		String[] slowest = new String[Math.min(SLOWEST_HOSTS, hosts.size())];
+		for (int i = 0; i < slowest.length; i++) {
+			String host = hosts.get(i).getKey();
+			slowest[i] = host + ": " + hostLatency.get(host);
+		}
+		return slowest;
+	}
+
+	public double getCacheHitRatio() {
+		long total = downloads.get();
+		return total == 0 ? 0 : Math.min(1, cacheHits.get() / (double) total);
+	}
+
+	/**
+	 * Publishes the metrics in the platform MBean server.
+	 *
+	 * @return the name to unregister them with
+	 */
+	ObjectName register(String transformation, String step, int copy) throws JMException {
+		ObjectName name = new ObjectName("org.pentaho.di.sdk.plugin:type=PageDownload,transformation="
+				+ ObjectName.quote(String.valueOf(transformation)) + ",step=" + ObjectName.quote(step) + ",copy=" + copy);
+		ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+		return name;
+	}
+
+	static void unregister(ObjectName name) throws JMException {
+		ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+	}
+
+	public String toString() {
+		return "Latency " + latency + ", " + getFailedRequests() + " failed, cache hit ratio "
+				+ Math.round(getCacheHitRatio() * 100) + "%";
+	}
+
+}
@@ -0,0 +1,44 @@
+package org.pentaho.di.sdk.plugin.steps.pagedownload;
+
+/**
+ * Live figures of one copy of the download step, published over JMX. Rates
+ * are over about the last minute, latencies are of single requests to the
+ * server, retries included.
+ */
+public interface DownloadMetricsMBean {
+
+	long getRowsWritten();
+
+	double getRowsPerSecond();
+
+	/**
+	 * @return body bytes received, before decompression
+	 */
+	long getBytesReceived();
+
+	double getBytesPerSecond();
+
+	int getRequestsInFlight();
+
+	long getRequests();
+
+	long getFailedRequests();
+
+	long getLatencyP50Millis();
+
+	long getLatencyP95Millis();
+
+	long getLatencyP99Millis();
+
+	/**
+	 * @return the latency percentiles of the hosts with the slowest p99
+	 */
+	String[] getSlowestHosts();
+
+	/**
+	 * @return the share of downloads served from the memory cache or
+	 *         revalidated against the disk cache, between 0 and 1
+	 */
+	double getCacheHitRatio();
+
+}
@@ -0,0 +1,54 @@
+package org.pentaho.di.sdk.plugin.steps.pagedownload;
+
+import org.pentaho.di.core.annotations.PartitionerPlugin;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.exception.KettleStepException;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.trans.ModPartitioner;
+import org.pentaho.di.trans.Partitioner;
+
+/**
+ * Partitioning method sending all URLs of a host to the same partition, so
+ * each copy of a partitioned download step owns a disjoint set of hosts. The
+ * copies then keep their own connections, caches and politeness limits, and a
+ * per host rate limit holds for the whole step instead of for each copy.
+ *
+ * The field holding the URL is chosen in the same dialog as for the
+ * remainder of division method. The hash of the host name does not depend
+ * on the JVM, so rows are routed the same way on every slave server.
+ */
+@PartitionerPlugin(
+		id = "PageDownloadHostPartitioner",
+		i18nPackageName = "org.pentaho.di.sdk.plugin.steps.pagedownload",
+		name = "PageDownloadStep.HostPartitioner.Name",
+		description = "PageDownloadStep.HostPartitioner.Description"
+)
+public class HostPartitioner extends ModPartitioner {
+
+	public Partitioner getInstance() {
+		Partitioner partitioner = new HostPartitioner();
+		partitioner.setId(getId());
+		partitioner.setDescription(getDescription());
+		return partitioner;
+	}
+
+	public HostPartitioner clone() {
+		return (HostPartitioner) super.clone();
+	}
+
+	public int getPartition(RowMetaInterface rowMeta, Object[] row) throws KettleException {
+		init(rowMeta);
+
+		if (partitionColumnIndex < 0) {
+			partitionColumnIndex = rowMeta.indexOfValue(getFieldName());
+			if (partitionColumnIndex < 0) {
+				throw new KettleStepException("Unable to find URL field [" + getFieldName() + "] in the row " + rowMeta);
+			}
+		}
+
+		String url = rowMeta.getString(row, partitionColumnIndex);
+		String host = url == null ? "" : HostScheduler.getHost(url);
+		return (host.hashCode() & Integer.MAX_VALUE) % nrPartitions;
+	}
+
+}
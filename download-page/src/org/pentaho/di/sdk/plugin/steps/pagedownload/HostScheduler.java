@@ -0,0 +1,325 @@
+package org.pentaho.di.sdk.plugin.steps.pagedownload;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Politeness scheduler keeping one queue per host. A queued download only
+ * starts when its host is below the concurrency limit and its token bucket
+ * has a permit, so a busy host never holds up the others. Hosts are served
+ * round robin, so work for different hosts is interleaved on the pool.
+ *
+ * Only hosts that can start a download are in the ready queue, hosts waiting
+ * for a permit are in a queue ordered by the time they get it, and hosts at
+ * their concurrency limit are in neither until a download finishes. So the
+ * cost of a dispatch does not grow with the number of hosts seen. A host
+ * without queued or running downloads is forgotten once its bucket is full
+ * again, forgetting it earlier would hand it a fresh burst of permits.
+ */
+public class HostScheduler {
+
+	private final ExecutorService executor;
+	private final ScheduledExecutorService timer;
+	private final double requestsPerSecond;
+	private final int maxConcurrentPerHost;
+
+	private final Map<String, HostQueue> hosts = new HashMap<String, HostQueue>();
+	private final ArrayDeque<HostQueue> ready = new ArrayDeque<HostQueue>();
+	private final PriorityQueue<Wakeup> waiting = new PriorityQueue<Wakeup>(16, new Comparator<Wakeup>() {
+		public int compare(Wakeup a, Wakeup b) {
+			return Long.compare(a.at, b.at);
+		}
+	});
+	private long wakeUpAt = Long.MAX_VALUE;
+
+	/**
+	 * @param executor
+	 *            pool running the downloads
+	 * @param requestsPerSecond
+	 *            permits per host and second, 0 for no rate limit
+	 * @param maxConcurrentPerHost
+	 *            downloads running at the same time per host, 0 for no limit
+	 */
+	HostScheduler(ExecutorService executor, double requestsPerSecond, int maxConcurrentPerHost) {
+		this.executor = executor;
+		this.requestsPerSecond = requestsPerSecond;
+		this.maxConcurrentPerHost = maxConcurrentPerHost;
+		this.timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "PageDownload host scheduler");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+
+	/**
+	 * Queues a download for the host of the given URL.
+	 */
+	public void execute(String url, Runnable task) {
+		synchronized (this) {
+			String host = getHost(url);
+			HostQueue queue = hosts.get(host);
+			if (queue == null) {
+				queue = new HostQueue(host);
+				hosts.put(host, queue);
+			}
+			queue.tasks.add(new QueuedTask(queue, task));
+			if (!queue.ready) {
+				update(queue, System.nanoTime());
+			}
+		}
+		dispatch();
+	}
+
+	/**
+	 * @return a snapshot of the queues of the hosts with queued or running
+	 *         downloads or a recent request, and their statistics
+	 */
+	public synchronized List<HostStatistics> getStatistics() {
+		List<HostStatistics> result = new ArrayList<HostStatistics>(hosts.size());
+		for (HostQueue queue : hosts.values()) {
+			result.add(new HostStatistics(queue));
+		}
+		return result;
+	}
+
+	/**
+	 * Stops dispatching and drops the downloads still queued.
+	 */
+	public void shutdown() {
+		timer.shutdownNow();
+		synchronized (this) {
+			for (HostQueue queue : hosts.values()) {
+				queue.tasks.clear();
+			}
+			ready.clear();
+			waiting.clear();
+		}
+	}
+
+	// Starts every queued download whose host has capacity and a permit, one
+	// per host and round.
+	private synchronized void dispatch() {
+		if (timer.isShutdown()) {
+			return;
+		}
+		long now = System.nanoTime();
+
+		// hosts whose permit is due, or whose bucket is full again
+		while (!waiting.isEmpty() && waiting.peek().at <= now) {
+			Wakeup wakeup = waiting.poll();
+			if (wakeup.queue.wakeup == wakeup) {
+				wakeup.queue.wakeup = null;
+				update(wakeup.queue, now);
+			}
+		}
+
+		HostQueue queue;
+		while ((queue = ready.poll()) != null) {
+			queue.ready = false;
+			if (queue.tasks.isEmpty() || isBusy(queue)) {
+				update(queue, now);
+				continue;
+			}
+			long delay = queue.bucket == null ? 0 : queue.bucket.tryAcquire(now);
+			if (delay > 0) {
+				queue.wakeup = new Wakeup(queue, now + delay, false);
+				waiting.add(queue.wakeup);
+				continue;
+			}
+			QueuedTask task = queue.tasks.poll();
+			queue.active++;
+			queue.dispatched++;
+			long waited = now - task.queuedAt;
+			queue.totalWait += waited;
+			queue.maxWait = Math.max(queue.maxWait, waited);
+			executor.execute(task);
+			update(queue, now);
+		}
+
+		// some host is only waiting for its rate limit, come back when it has a permit
+		Wakeup next = waiting.peek();
+		if (next != null && next.at < wakeUpAt) {
+			wakeUpAt = next.at;
+			timer.schedule(new Runnable() {
+				public void run() {
+					synchronized (HostScheduler.this) {
+						wakeUpAt = Long.MAX_VALUE;
+					}
+					dispatch();
+				}
+			}, Math.max(0, next.at - now), TimeUnit.NANOSECONDS);
+		}
+	}
+
+	// Puts a host that is not in the ready queue where it belongs: in the
+	// ready queue if it can start a download, nowhere while it is at its
+	// limit or waits for a permit, and out of the map once it has nothing to
+	// do and its bucket is full.
+	private void update(HostQueue queue, long now) {
+		if (queue.wakeup != null) {
+			if (!queue.wakeup.retire) {
+				return;
+			}
+			// new work for a host about to be forgotten
+			queue.wakeup = null;
+		}
+		if (!queue.tasks.isEmpty()) {
+			if (!isBusy(queue)) {
+				queue.ready = true;
+				ready.add(queue);
+			}
+			return;
+		}
+		if (queue.active > 0) {
+			return;
+		}
+		long untilFull = queue.bucket == null ? 0 : queue.bucket.untilFull(now);
+		if (untilFull <= 0) {
+			hosts.remove(queue.host);
+		} else {
+			queue.wakeup = new Wakeup(queue, now + untilFull, true);
+			waiting.add(queue.wakeup);
+		}
+	}
+
+	private boolean isBusy(HostQueue queue) {
+		return maxConcurrentPerHost > 0 && queue.active >= maxConcurrentPerHost;
+	}
+
+	private synchronized void finished(HostQueue queue) {
+		queue.active--;
+		if (!queue.ready) {
+			update(queue, System.nanoTime());
+		}
+	}
+
+	static String getHost(String url) {
+		try {
+			return new URL(url).getHost().toLowerCase();
+		} catch (MalformedURLException e) {
+			return "";
+		}
+	}
+
+	private class HostQueue {
+
+		final String host;
+		final ArrayDeque<QueuedTask> tasks = new ArrayDeque<QueuedTask>();
+		final TokenBucket bucket;
+		int active;
+		boolean ready;
+		Wakeup wakeup;
+		long dispatched;
+		long totalWait;
+		long maxWait;
+
+		HostQueue(String host) {
+			this.host = host;
+			this.bucket = requestsPerSecond > 0
+					? new TokenBucket(requestsPerSecond, Math.max(1, Math.ceil(requestsPerSecond)), System.nanoTime())
+					: null;
+		}
+	}
+
+	// Time a host gets its next permit, or is forgotten if it still has
+	// nothing to do. Replaced wakeups stay in the queue and are skipped.
+	private static class Wakeup {
+
+		final HostQueue queue;
+		final long at;
+		final boolean retire;
+
+		Wakeup(HostQueue queue, long at, boolean retire) {
+			this.queue = queue;
+			this.at = at;
+			this.retire = retire;
+		}
+	}
+
+	private class QueuedTask implements Runnable {
+
+		final HostQueue queue;
+		final Runnable task;
+		final long queuedAt = System.nanoTime();
+
+		QueuedTask(HostQueue queue, Runnable task) {
+			this.queue = queue;
+			this.task = task;
+		}
+
+		public void run() {
+			try {
+				task.run();
+			} finally {
+				finished(queue);
+				dispatch();
+			}
+		}
+	}
+
+	/**
+	 * Queue depth and waiting times of one host.
+	 */
+	public static class HostStatistics {
+
+		private final String host;
+		private final int queued;
+		private final int active;
+		private final long dispatched;
+		private final long averageWaitMillis;
+		private final long maxWaitMillis;
+
+		HostStatistics(HostQueue queue) {
+			host = queue.host;
+			queued = queue.tasks.size();
+			active = queue.active;
+			dispatched = queue.dispatched;
+			averageWaitMillis = queue.dispatched == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(queue.totalWait / queue.dispatched);
+			maxWaitMillis = TimeUnit.NANOSECONDS.toMillis(queue.maxWait);
+		}
+
+		public String getHost() {
+			return host;
+		}
+
+		public int getQueued() {
+			return queued;
+		}
+
+		public int getActive() {
+			return active;
+		}
+
+		public long getDispatched() {
+			return dispatched;
+		}
+
+		public long getAverageWaitMillis() {
+			return averageWaitMillis;
+		}
+
+		public long getMaxWaitMillis() {
+			return maxWaitMillis;
+		}
+
+		public String toString() {
+			return host + ": " + queued + " queued, " + active + " active, " + dispatched + " started, wait avg "
+					+ averageWaitMillis + " ms, max " + maxWaitMillis + " ms";
+		}
+	}
+
+}
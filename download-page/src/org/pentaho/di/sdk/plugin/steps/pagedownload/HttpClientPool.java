@@ -0,0 +1,131 @@
+package org.pentaho.di.sdk.plugin.steps.pagedownload;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Keep-alive HTTP engine shared by all copies of a download step within one
+ * running transformation. The first copy to start builds the engine, the last
+ * copy to finish closes it together with its pooled connections.
+ */
+public class HttpClientPool {
+
+	private static final Map<String, HttpClientPool> pools = new HashMap<String, HttpClientPool>();
+
+	private final String key;
+	private final HttpEngine engine;
+	private final DnsCache dnsCache;
+	private final ConcurrentMap<String, Future<UrlData>> downloads = new ConcurrentHashMap<String, Future<UrlData>>();
+	private final ConcurrentMap<String, CircuitBreaker> circuitBreakers = new ConcurrentHashMap<String, CircuitBreaker>();
+	private final Semaphore requestPermits;
+	private int references;
+
+	private HttpClientPool(String key, String engine, int maxPerHost, int maxTotal, int idleTimeoutSeconds,
+			Timeouts timeouts, long dnsTtlSeconds) throws IOException {
+		this.key = key;
+		this.dnsCache = dnsTtlSeconds > 0 ? new DnsCache(dnsTtlSeconds) : null;
+		this.requestPermits = new Semaphore(maxTotal);
+
+		if (PageDownloadStepMeta.ENGINE_HTTP2.equals(engine)) {
+			this.engine = new OkHttpEngine(maxPerHost, maxTotal, idleTimeoutSeconds, timeouts, dnsCache);
+		} else if (PageDownloadStepMeta.ENGINE_NIO.equals(engine)) {
+			this.engine = new NioHttpEngine(maxPerHost, maxTotal, idleTimeoutSeconds, timeouts, dnsCache);
+		} else {
+			this.engine = new ApacheHttpEngine(maxPerHost, maxTotal, idleTimeoutSeconds, timeouts, dnsCache);
+		}
+	}
+
+	/**
+	 * Returns the engine registered under the given key, creating it with the
+	 * given limits if this is the first copy asking for it.
+	 */
+	public static synchronized HttpClientPool acquire(String key, String engine, int maxPerHost, int maxTotal,
+			int idleTimeoutSeconds, Timeouts timeouts, long dnsTtlSeconds) throws IOException {
+		HttpClientPool pool = pools.get(key);
+		if (pool == null) {
+			pool = new HttpClientPool(key, engine, maxPerHost, maxTotal, idleTimeoutSeconds, timeouts, dnsTtlSeconds);
+			pools.put(key, pool);
+		}
+		pool.references++;
+		return pool;
+	}
+
+	/**
+	 * Gives the engine back, closing it once no step copy uses it anymore.
+	 */
+	public static synchronized void release(HttpClientPool pool) throws IOException {
+		if (--pool.references > 0) {
+			return;
+		}
+		pools.remove(pool.key);
+		if (pool.dnsCache != null) {
+			pool.dnsCache.close();
+		}
+		pool.engine.close();
+	}
+
+	public HttpEngine getEngine() {
+		return engine;
+	}
+
+	/**
+	 * @return the host name lookups of the engine, or null if the JVM's
+	 *         own resolver is used
+	 */
+	public DnsCache getDnsCache() {
+		return dnsCache;
+	}
+
+	/**
+	 * @return the downloads currently running through this engine, by URL
+	 */
+	public ConcurrentMap<String, Future<UrlData>> getDownloads() {
+		return downloads;
+	}
+
+	/**
+	 * @return the circuit breakers of the hosts contacted so far, by host
+	 */
+	public ConcurrentMap<String, CircuitBreaker> getCircuitBreakers() {
+		return circuitBreakers;
+	}
+
+	/**
+	 * @return permits capping the requests running at the same time to the
+	 *         connection limit, for downloads that do not wait for a pool
+	 *         thread
+	 */
+	public Semaphore getRequestPermits() {
+		return requestPermits;
+	}
+
+	/**
+	 * Request timeouts in milliseconds, 0 meaning no limit.
+	 */
+	public static class Timeouts {
+
+		final int connect;
+		final int read;
+		final int total;
+
+		/**
+		 * @param connect
+		 *            time to establish a connection
+		 * @param read
+		 *            time to wait for data on an open connection
+		 * @param total
+		 *            time a whole request may take including its body
+		 */
+		public Timeouts(int connect, int read, int total) {
+			this.connect = connect;
+			this.read = read;
+			this.total = total;
+		}
+	}
+
+}
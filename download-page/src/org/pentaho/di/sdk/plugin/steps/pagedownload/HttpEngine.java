@@ -0,0 +1,22 @@
+package org.pentaho.di.sdk.plugin.steps.pagedownload;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Transport used by {@link UrlData} to talk to the web servers. Each
+ * implementation keeps its own connections open between requests and is
+ * shared by all copies of a download step through {@link HttpClientPool}.
+ */
+public interface HttpEngine extends Closeable {
+
+	/**
+	 * Prepares a request without sending it yet.
+	 *
+	 * @throws java.net.MalformedURLException
+	 *             if the URL cannot be requested
+	 */
+	HttpEngineCall newCall(String method, String url, Map<String, String> headers) throws IOException;
+
+}
@@ -0,0 +1,24 @@
+package org.pentaho.di.sdk.plugin.steps.pagedownload;
+
+import java.io.IOException;
+
+/**
+ * A request prepared by an {@link HttpEngine}. It can be aborted from another
+ * thread at any time, which closes its connection and makes a blocked
+ * {@link #execute()} or a read from the response body fail at once.
+ */
+public interface HttpEngineCall {
+
+	/**
+	 * Sends the request and returns as soon as the response headers have
+	 * arrived. The caller reads the body from the returned response and must
+	 * close it.
+	 */
+	HttpEngineResponse execute() throws IOException;
+
+	/**
+	 * Aborts the request. Has no effect once the response is closed.
+	 */
+	void abort();
+
+}
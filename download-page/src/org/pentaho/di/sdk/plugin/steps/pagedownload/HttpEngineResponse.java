@@ -0,0 +1,46 @@
+package org.pentaho.di.sdk.plugin.steps.pagedownload;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Response of an {@link HttpEngine} whose body has not been read yet. Closing
+ * a response whose body was read to the end hands the connection back for
+ * reuse.
+ */
+public interface HttpEngineResponse extends Closeable {
+
+	int getStatus();
+
+	/**
+	 * @return the value of the named response header, or null if absent
+	 */
+	String getHeader(String name);
+
+	/**
+	 * @return all response headers in the order received, by name
+	 */
+	Map<String, List<String>> getHeaders();
+
+	/**
+	 * @return the URL the response came from after following redirects
+	 */
+	String getUrl();
+
+	/**
+	 * @return the response body, never null
+	 */
+	InputStream getBody() throws IOException;
+
+	/**
+	 * @return where the time of the request went until the body is read, the
+	 *         reader adds the time it takes to read the body
+	 */
+	RequestTiming getTiming();
+
+	void close() throws IOException;
+
+}
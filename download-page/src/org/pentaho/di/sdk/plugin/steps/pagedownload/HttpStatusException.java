@@ -0,0 +1,33 @@
+package org.pentaho.di.sdk.plugin.steps.pagedownload;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a server answers with an error status, keeping the status and
+ * the delay the server asked for before the request is tried again.
+ */
+public class HttpStatusException extends IOException {
+
+	private static final long serialVersionUID = 1L;
+
+	private final int status;
+	private final long retryAfterMillis;
+
+	public HttpStatusException(String url, int status, long retryAfterMillis) {
+		super("Server returned HTTP response code: " + status + " for URL: " + url);
+		this.status = status;
+		this.retryAfterMillis = retryAfterMillis;
+	}
+
+	public int getStatus() {
+		return status;
+	}
+
+	/**
+	 * @return the delay from the Retry-After header, 0 if there was none
+	 */
+	public long getRetryAfterMillis() {
+		return retryAfterMillis;
+	}
+
+}
@@ -0,0 +1,91 @@
+package org.pentaho.di.sdk.plugin.steps.pagedownload;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts of latencies in milliseconds, in buckets that grow by an eighth from
+ * 16 ms on, so a percentile is known to within about 12%. Recording is lock
+ * free and the memory used is fixed, whatever the number of values.
+ */
+public class LatencyHistogram {
+
+	// values below this are counted exactly
+	private static final int EXACT = 16;
+	private static final int SUB_BUCKETS = 8;
+	private static final int SUB_BITS = 3;
+
+	// powers of two above EXACT, the last bucket ends past four hours
+	private static final int RANGES = 20;
+
+	private static final int BUCKETS = EXACT + RANGES * SUB_BUCKETS;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+	public void record(long millis) {
+		counts.incrementAndGet(index(Math.max(0, millis)));
+	}
+
+	/**
+	 * @return the number of values recorded
+	 */
+	public long getCount() {
+		long count = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			count += counts.get(i);
+		}
+		return count;
+	}
+
+	/**
+	 * @param percentile
+	 *            between 0 and 100
+	 * @return the upper bound of the bucket holding the percentile, 0 if
+	 *         nothing was recorded
+	 */
+	public long getPercentile(double percentile) {
+		long[] snapshot = new long[BUCKETS];
+		long count = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			snapshot[i] = counts.get(i);
+			count += snapshot[i];
+		}
+		long rank = (long) Math.ceil(count * percentile / 100);
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += snapshot[i];
+			if (seen >= rank && seen > 0) {
+				return upperBound(i);
+			}
+		}
+		return 0;
+	}
+
+	static int index(long millis) {
+		if (millis < EXACT) {
+			return (int) millis;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(millis);
+		int range = exponent - Integer.numberOfTrailingZeros(EXACT);
+		if (range >= RANGES) {
+			return BUCKETS - 1;
+		}
+		int sub = (int) (millis >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+		return EXACT + range * SUB_BUCKETS + sub;
+	}
+
+	static long upperBound(int index) {
+		if (index < EXACT) {
+			return index;
+		}
+		int range = (index - EXACT) / SUB_BUCKETS;
+		int sub = (index - EXACT) % SUB_BUCKETS;
+		int shift = range + Integer.numberOfTrailingZeros(EXACT) - SUB_BITS;
+		return ((long) (SUB_BUCKETS + sub + 1) << shift) - 1;
+	}
+
+	public String toString() {
+		return "p50 " + getPercentile(50) + " ms, p95 " + getPercentile(95) + " ms, p99 " + getPercentile(99)
+				+ " ms of " + getCount() + " requests";
+	}
+
+}
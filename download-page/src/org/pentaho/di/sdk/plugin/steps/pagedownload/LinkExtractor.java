@@ -0,0 +1,160 @@
+package org.pentaho.di.sdk.plugin.steps.pagedownload;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Finds the links of an HTML page for a crawl: the targets of anchors, image
+ * map areas and frames, resolved against the page URL or its base element.
+ * The page is scanned once without building a document, comments, scripts
+ * and style sheets are skipped. Only http and https links are returned,
+ * without their fragment.
+ */
+class LinkExtractor {
+
+	private LinkExtractor() {
+	}
+
+	static List<String> extract(String html, String pageUrl) {
+		List<String> links = new ArrayList<String>();
+		URL base;
+		try {
+			base = new URL(pageUrl);
+		} catch (MalformedURLException e) {
+			return links;
+		}
+
+		int length = html.length();
+		int i = 0;
+		while ((i = html.indexOf('<', i)) >= 0) {
+			i++;
+			if (html.startsWith("!--", i)) {
+				int end = html.indexOf("-->", i + 3);
+				if (end < 0) {
+					break;
+				}
+				i = end + 3;
+				continue;
+			}
+			int nameEnd = i;
+			while (nameEnd < length && Character.isLetterOrDigit(html.charAt(nameEnd))) {
+				nameEnd++;
+			}
+			if (isTag(html, i, nameEnd, "script") || isTag(html, i, nameEnd, "style")) {
+				// their content is not markup, a "<a" in a string is no link
+				int end = indexOfIgnoreCase(html, "</" + html.substring(i, nameEnd), nameEnd);
+				if (end < 0) {
+					break;
+				}
+				i = end + 2;
+				continue;
+			}
+			boolean isBase = isTag(html, i, nameEnd, "base");
+			String attribute = isTag(html, i, nameEnd, "a") || isTag(html, i, nameEnd, "area") || isBase ? "href"
+					: isTag(html, i, nameEnd, "frame") || isTag(html, i, nameEnd, "iframe") ? "src" : null;
+			i = nameEnd;
+			if (attribute == null) {
+				continue;
+			}
+
+			// name=value pairs up to the end of the tag, values quoted or not
+			while (i < length) {
+				char c = html.charAt(i);
+				if (c == '>') {
+					i++;
+					break;
+				}
+				if (Character.isWhitespace(c) || c == '/') {
+					i++;
+					continue;
+				}
+				int nameStart = i;
+				while (i < length && (c = html.charAt(i)) != '=' && c != '>' && !Character.isWhitespace(c)) {
+					i++;
+				}
+				int attributeEnd = i;
+				while (i < length && Character.isWhitespace(html.charAt(i))) {
+					i++;
+				}
+				if (i == length || html.charAt(i) != '=') {
+					continue;
+				}
+				i++;
+				while (i < length && Character.isWhitespace(html.charAt(i))) {
+					i++;
+				}
+				if (i == length) {
+					break;
+				}
+				String value;
+				c = html.charAt(i);
+				if (c == '"' || c == '\'') {
+					int end = html.indexOf(c, i + 1);
+					if (end < 0) {
+						end = length;
+					}
+					value = html.substring(i + 1, end);
+					i = end + 1;
+				} else {
+					int start = i;
+					while (i < length && (c = html.charAt(i)) != '>' && !Character.isWhitespace(c)) {
+						i++;
+					}
+					value = html.substring(start, i);
+				}
+				if (isTag(html, nameStart, attributeEnd, attribute)) {
+					URL url = resolve(base, value);
+					if (url == null) {
+						continue;
+					}
+					if (isBase) {
+						base = url;
+					} else {
+						String link = url.toExternalForm();
+						int fragment = link.indexOf('#');
+						links.add(fragment < 0 ? link : link.substring(0, fragment));
+					}
+				}
+			}
+		}
+		return links;
+	}
+
+	// Resolves a link against the base, null if it is no http or https URL.
+	private static URL resolve(URL base, String value) {
+		value = value.trim();
+		if (value.length() == 0 || value.charAt(0) == '#') {
+			return null;
+		}
+		if (value.indexOf('&') >= 0) {
+			value = value.replace("&amp;", "&").replace("&#38;", "&");
+		}
+		if (value.indexOf(' ') >= 0) {
+			value = value.replace(" ", "%20");
+		}
+		try {
+			URL url = new URL(base, value);
+			String protocol = url.getProtocol();
+			return "http".equals(protocol) || "https".equals(protocol) ? url : null;
+		} catch (MalformedURLException e) {
+			// javascript: and other schemes without a handler
+			return null;
+		}
+	}
+
+	private static boolean isTag(String html, int start, int end, String name) {
+		return end - start == name.length() && html.regionMatches(true, start, name, 0, name.length());
+	}
+
+	private static int indexOfIgnoreCase(String html, String text, int from) {
+		for (int i = from; i <= html.length() - text.length(); i++) {
+			if (html.regionMatches(true, i, text, 0, text.length())) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+}
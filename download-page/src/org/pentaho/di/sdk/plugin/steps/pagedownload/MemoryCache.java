@@ -0,0 +1,187 @@
+package org.pentaho.di.sdk.plugin.steps.pagedownload;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory cache of downloaded pages for URLs that occur many times in one
+ * run. The cache is limited by the approximate number of bytes the pages take
+ * on the heap rather than by their count, and entries expire after a fixed
+ * time to live.
+ *
+ * The cache is split into stripes, each an LRU map with its own lock, so step
+ * copies sharing the cache rarely wait for each other. The byte budget is
+ * shared by the stripes: a page that does not fit makes them drop their least
+ * recently used entries in turn. Only a page larger than the whole budget is
+ * not cached, those are counted.
+ */
+public class MemoryCache {
+
+	private static final int STRIPES = 16;
+
+	// rough heap cost of an entry besides its strings
+	private static final int ENTRY_OVERHEAD = 96;
+
+	private static final Map<String, MemoryCache> caches = new HashMap<String, MemoryCache>();
+
+	private final String key;
+	private final Stripe[] stripes = new Stripe[STRIPES];
+	private final long maxBytes;
+	private final long ttlNanos;
+	private int references;
+
+	// bytes held by all stripes, and the stripe to evict from next
+	private final AtomicLong bytes = new AtomicLong();
+	private final AtomicInteger victim = new AtomicInteger();
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+	private final AtomicLong skipped = new AtomicLong();
+
+	MemoryCache(String key, long maxBytes, long ttlSeconds) {
+		this.key = key;
+		this.maxBytes = Math.max(1, maxBytes);
+		this.ttlNanos = ttlSeconds > 0 ? TimeUnit.SECONDS.toNanos(ttlSeconds) : Long.MAX_VALUE;
+		for (int i = 0; i < STRIPES; i++) {
+			stripes[i] = new Stripe();
+		}
+	}
+
+	/**
+	 * Returns the cache registered under the given key, creating it if this is
+	 * the first step copy asking for it.
+	 */
+	public static synchronized MemoryCache acquire(String key, long maxBytes, long ttlSeconds) {
+		MemoryCache cache = caches.get(key);
+		if (cache == null) {
+			cache = new MemoryCache(key, maxBytes, ttlSeconds);
+			caches.put(key, cache);
+		}
+		cache.references++;
+		return cache;
+	}
+
+	public static synchronized void release(MemoryCache cache) {
+		if (--cache.references <= 0) {
+			caches.remove(cache.key);
+		}
+	}
+
+	/**
+	 * @return the cached page, or null if it is not cached or has expired
+	 */
+	public UrlData get(String url) {
+		UrlData value = stripeFor(url).get(url, System.nanoTime());
+		(value == null ? misses : hits).incrementAndGet();
+		return value;
+	}
+
+	public void put(String url, UrlData value) {
+		long weight = ENTRY_OVERHEAD + 2L * url.length() + 2L * (value.getData() == null ? 0 : value.getData().length())
+				+ (value.getBytes() == null ? 0 : value.getBytes().length);
+		if (weight > maxBytes) {
+			skipped.incrementAndGet();
+			return;
+		}
+		Stripe stripe = stripeFor(url);
+		stripe.put(url, value, weight, System.nanoTime());
+
+		// the stripe of the new page is the last to give up entries, one
+		// stripe lock at a time
+		for (int i = 0; bytes.get() > maxBytes && i < STRIPES; i++) {
+			Stripe next = stripes[victim.getAndIncrement() & (STRIPES - 1)];
+			if (next != stripe) {
+				next.evict();
+			}
+		}
+		if (bytes.get() > maxBytes) {
+			stripe.evict();
+		}
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	public long getEvictions() {
+		return evictions.get();
+	}
+
+	/**
+	 * @return the number of pages not cached because they are larger than the
+	 *         whole cache
+	 */
+	public long getSkipped() {
+		return skipped.get();
+	}
+
+	public String toString() {
+		return "Memory cache: " + hits.get() + " hits, " + misses.get() + " misses, " + evictions.get() + " evictions, "
+				+ skipped.get() + " pages larger than the cache";
+	}
+
+	private Stripe stripeFor(String url) {
+		int h = url.hashCode();
+		return stripes[(h ^ (h >>> 16)) & (STRIPES - 1)];
+	}
+
+	private static class Entry {
+
+		final UrlData value;
+		final long weight;
+		final long expiresAt;
+
+		Entry(UrlData value, long weight, long expiresAt) {
+			this.value = value;
+			this.weight = weight;
+			this.expiresAt = expiresAt;
+		}
+	}
+
+	private class Stripe {
+
+		private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+
+		synchronized UrlData get(String url, long now) {
+			Entry entry = entries.get(url);
+			if (entry == null) {
+				return null;
+			}
+			if (entry.expiresAt != Long.MAX_VALUE && now - entry.expiresAt >= 0) {
+				entries.remove(url);
+				bytes.addAndGet(-entry.weight);
+				return null;
+			}
+			return entry.value;
+		}
+
+		synchronized void put(String url, UrlData value, long weight, long now) {
+			long expiresAt = ttlNanos == Long.MAX_VALUE ? Long.MAX_VALUE : now + ttlNanos;
+			Entry previous = entries.put(url, new Entry(value, weight, expiresAt));
+			bytes.addAndGet(previous == null ? weight : weight - previous.weight);
+		}
+
+		// Drops the least recently used entries of the stripe until the cache
+		// fits its budget or the stripe is empty.
+		synchronized void evict() {
+			Iterator<Entry> it = entries.values().iterator();
+			while (bytes.get() > maxBytes && it.hasNext()) {
+				Entry eldest = it.next();
+				it.remove();
+				bytes.addAndGet(-eldest.weight);
+				evictions.incrementAndGet();
+			}
+		}
+	}
+
+}
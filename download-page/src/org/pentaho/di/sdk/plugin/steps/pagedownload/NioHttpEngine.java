@@ -0,0 +1,695 @@
+package org.pentaho.di.sdk.plugin.steps.pagedownload;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.ProxySelector;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpException;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.methods.RequestBuilder;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.entity.BasicHttpEntity;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.impl.client.LaxRedirectStrategy;
+import org.apache.http.impl.conn.SystemDefaultRoutePlanner;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.ContentDecoder;
+import org.apache.http.nio.IOControl;
+import org.apache.http.nio.client.methods.HttpAsyncMethods;
+import org.apache.http.nio.protocol.AbstractAsyncResponseConsumer;
+import org.apache.http.protocol.HttpContext;
+
+/**
+ * Event driven HTTP/1.1 engine on top of Apache HttpAsyncClient. A few I/O
+ * reactor threads drive every connection through selectors, so the number of
+ * requests in flight is bounded by the connection limits instead of by
+ * threads. The reactor collects a response body as it arrives, in memory up
+ * to the spill threshold and in a temporary file past it, and stops once an
+ * uncompressed body is longer than the size cap. The response is then handed
+ * to a small callback pool, which keeps decoding and caching off the reactor
+ * threads.
+ *
+ * Requests are started with {@link Call#enqueue(Callback)}; the blocking
+ * {@link Call#execute()} is only there to satisfy {@link HttpEngine}.
+ *
+ * Connections are set up on the reactor threads apart from the requests, so
+ * only the wait for the response headers and the time to receive the body
+ * are timed.
+ */
+public class NioHttpEngine implements HttpEngine {
+
+	// how often, in milliseconds, the callback pool is probed for its lag
+	private static final long LAG_PROBE_INTERVAL = 200;
+
+	// largest body that fits in a Java array
+	private static final int MAX_BODY_LENGTH = Integer.MAX_VALUE - 8;
+
+	private final CloseableHttpAsyncClient client;
+	private final PoolingNHttpClientConnectionManager connectionManager;
+	private final ExecutorService callbacks;
+	private final ScheduledExecutorService timer;
+	private final int totalTimeout;
+
+	private final AtomicInteger inFlight = new AtomicInteger();
+	private volatile long lagNanos;
+	private volatile long maxLagNanos;
+
+	NioHttpEngine(int maxPerHost, int maxTotal, final int idleTimeoutSeconds, HttpClientPool.Timeouts timeouts,
+			DnsCache dnsCache) throws IOException {
+		int threads = Runtime.getRuntime().availableProcessors();
+		connectionManager = new PoolingNHttpClientConnectionManager(new DefaultConnectingIOReactor(IOReactorConfig.custom()
+				.setIoThreadCount(threads)
+				.setConnectTimeout(timeouts.connect)
+				.setSoTimeout(timeouts.read)
+				.build()), null, dnsCache);
+		connectionManager.setDefaultMaxPerRoute(maxPerHost);
+		connectionManager.setMaxTotal(maxTotal);
+
+		// the async client neither decompresses bodies nor caps their size,
+		// both are left to the caller like with the other engines
+		client = HttpAsyncClients.custom()
+				.setConnectionManager(connectionManager)
+				.setRedirectStrategy(new LaxRedirectStrategy())
+				// the proxies of the JVM, http.proxyHost and the like
+				.setRoutePlanner(new SystemDefaultRoutePlanner(ProxySelector.getDefault()))
+				.setDefaultRequestConfig(RequestConfig.custom()
+						.setConnectTimeout(timeouts.connect)
+						.setSocketTimeout(timeouts.read)
+						.build())
+				.build();
+		client.start();
+
+		callbacks = Executors.newFixedThreadPool(threads, new NamedThreadFactory("PageDownload nio callback-"));
+		timer = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("PageDownload nio timer-"));
+		totalTimeout = timeouts.total;
+
+		// the async client has no evictor thread of its own
+		timer.scheduleWithFixedDelay(new Runnable() {
+			public void run() {
+				connectionManager.closeExpiredConnections();
+				connectionManager.closeIdleConnections(idleTimeoutSeconds, TimeUnit.SECONDS);
+			}
+		}, idleTimeoutSeconds, idleTimeoutSeconds, TimeUnit.SECONDS);
+
+		// a probe queued behind the responses measures how long they wait
+		// before a callback thread picks them up
+		timer.scheduleWithFixedDelay(new Runnable() {
+			public void run() {
+				final long queuedAt = System.nanoTime();
+				callbacks.execute(new Runnable() {
+					public void run() {
+						long lag = System.nanoTime() - queuedAt;
+						lagNanos = lag;
+						if (lag > maxLagNanos) {
+							maxLagNanos = lag;
+						}
+					}
+				});
+			}
+		}, LAG_PROBE_INTERVAL, LAG_PROBE_INTERVAL, TimeUnit.MILLISECONDS);
+	}
+
+	public Call newCall(String method, String url, Map<String, String> headers) throws IOException {
+		RequestBuilder builder = RequestBuilder.create(method).setUri(ApacheHttpEngine.toUri(url));
+		for (Map.Entry<String, String> header : headers.entrySet()) {
+			builder.setHeader(header.getKey(), header.getValue());
+		}
+		if ("POST".equals(method)) {
+			builder.setEntity(new ByteArrayEntity(new byte[0], ContentType.APPLICATION_FORM_URLENCODED));
+		}
+		return new Call(builder.build(), url);
+	}
+
+	/**
+	 * Runs a task on the engine's timer thread after the given delay.
+	 */
+	void schedule(Runnable task, long delayMillis) {
+		timer.schedule(task, delayMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * @return the number of requests sent and not answered yet
+	 */
+	public int getInFlight() {
+		return inFlight.get();
+	}
+
+	/**
+	 * @return how long the last probe waited for a callback thread, in
+	 *         milliseconds
+	 */
+	public long getEventLoopLagMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(lagNanos);
+	}
+
+	/**
+	 * @return the longest wait of a probe for a callback thread, in
+	 *         milliseconds
+	 */
+	public long getMaxEventLoopLagMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(maxLagNanos);
+	}
+
+	public String toString() {
+		return "Event driven engine: " + getInFlight() + " requests in flight, event loop lag " + getEventLoopLagMillis()
+				+ " ms, max " + getMaxEventLoopLagMillis() + " ms";
+	}
+
+	public void close() throws IOException {
+		timer.shutdownNow();
+		try {
+			client.close();
+		} finally {
+			callbacks.shutdownNow();
+		}
+	}
+
+	/**
+	 * Receives the outcome of a request on one of the engine's callback
+	 * threads.
+	 */
+	public interface Callback {
+
+		/**
+		 * The response with its body as far as it was received; the callback
+		 * must close it.
+		 */
+		void completed(HttpEngineResponse response);
+
+		void failed(IOException e);
+	}
+
+	/**
+	 * Response of this engine, whose body may already be in a spill file.
+	 */
+	public interface Response extends HttpEngineResponse {
+
+		/**
+		 * Hands the spill file an uncompressed body was collected in over to
+		 * the caller, who deletes it from then on; closing the response no
+		 * longer does. The body is then not read from {@link #getBody()}.
+		 *
+		 * @return the file cut to the size cap, or null if the body is in
+		 *         memory or compressed
+		 */
+		SpilledBody takeSpilledBody() throws IOException;
+	}
+
+	/**
+	 * An uncompressed body collected in a spill file while it arrived.
+	 */
+	public static class SpilledBody {
+
+		private final File file;
+		private final long length;
+		private final long received;
+		private final byte[] digest;
+		private final boolean truncated;
+
+		SpilledBody(File file, long length, long received, byte[] digest, boolean truncated) {
+			this.file = file;
+			this.length = length;
+			this.received = received;
+			this.digest = digest;
+			this.truncated = truncated;
+		}
+
+		public File getFile() {
+			return file;
+		}
+
+		/**
+		 * @return bytes in the file
+		 */
+		public long getLength() {
+			return length;
+		}
+
+		/**
+		 * @return bytes received, one more than the file holds when it was cut
+		 */
+		public long getReceived() {
+			return received;
+		}
+
+		/**
+		 * @return the SHA-256 digest of the file
+		 */
+		public byte[] getDigest() {
+			return digest;
+		}
+
+		/**
+		 * @return true if the body was longer than the size cap
+		 */
+		public boolean isTruncated() {
+			return truncated;
+		}
+	}
+
+	/**
+	 * A request that can be sent without blocking the calling thread.
+	 */
+	public class Call implements HttpEngineCall {
+
+		private final HttpUriRequest request;
+		private final String url;
+		private final HttpClientContext context = HttpClientContext.create();
+		private final AtomicBoolean timedOut = new AtomicBoolean();
+		private final RequestTiming timing = new RequestTiming(false);
+		private volatile long startedAt;
+		private volatile long headersAt;
+		private volatile Future<HttpResponse> future;
+		private volatile boolean aborted;
+		private long maxBodySize;
+		private SpillFiles spillFiles;
+
+		Call(HttpUriRequest request, String url) {
+			this.request = request;
+			this.url = url;
+		}
+
+		/**
+		 * Limits the body kept of the response. Must be called before the
+		 * request is sent.
+		 *
+		 * @param maxBodySize
+		 *            bytes kept of an uncompressed body, the download stops
+		 *            one byte past them, 0 to keep the whole body
+		 * @param spillFiles
+		 *            where a body above the spill threshold is collected, null
+		 *            to keep every body in memory
+		 */
+		void limitBody(long maxBodySize, SpillFiles spillFiles) {
+			this.maxBodySize = maxBodySize;
+			this.spillFiles = spillFiles;
+		}
+
+		/**
+		 * Sends the request and returns at once, the callback is called once
+		 * the response has arrived or the request failed.
+		 */
+		public void enqueue(final Callback callback) {
+			final ScheduledFuture<?> deadline = totalTimeout <= 0 ? null : timer.schedule(new Runnable() {
+				public void run() {
+					timedOut.set(true);
+					cancel();
+				}
+			}, totalTimeout, TimeUnit.MILLISECONDS);
+
+			startedAt = System.nanoTime();
+			final BodyConsumer consumer = new BodyConsumer(maxBodySize, spillFiles);
+			inFlight.incrementAndGet();
+			try {
+				future = client.execute(HttpAsyncMethods.create(request), consumer, context, new FutureCallback<HttpResponse>() {
+
+					public void completed(HttpResponse response) {
+						if (consumer.isCapped()) {
+							// the end of the body arrived with the byte past the cap
+							cancelled();
+							return;
+						}
+						done();
+						respond(response);
+					}
+
+					public void failed(final Exception e) {
+						done();
+						consumer.discard();
+						fail(e instanceof IOException ? (IOException) e : new IOException("Download of " + url + " failed", e));
+					}
+
+					public void cancelled() {
+						done();
+						if (consumer.isCapped()) {
+							// the rest of the body is not needed
+							try {
+								respond(consumer.finish());
+							} catch (IOException e) {
+								consumer.discard();
+								fail(e);
+							}
+							return;
+						}
+						consumer.discard();
+						fail(timedOut.get()
+								? new SocketTimeoutException("Request to " + url + " took longer than " + totalTimeout + " ms")
+								: new InterruptedIOException("Download of " + url + " was aborted"));
+					}
+
+					private void done() {
+						inFlight.decrementAndGet();
+						if (deadline != null) {
+							deadline.cancel(false);
+						}
+					}
+
+					private void respond(final HttpResponse response) {
+						timing.setFirstByte(consumer.headersAt - startedAt);
+						timing.addDownload(System.nanoTime() - consumer.headersAt);
+						callbacks.execute(new Runnable() {
+							public void run() {
+								callback.completed(wrap(response, consumer));
+							}
+						});
+					}
+
+					private void fail(final IOException e) {
+						callbacks.execute(new Runnable() {
+							public void run() {
+								callback.failed(e);
+							}
+						});
+					}
+				});
+			} catch (RuntimeException e) {
+				// the client is shut down, nothing was sent
+				inFlight.decrementAndGet();
+				if (deadline != null) {
+					deadline.cancel(false);
+				}
+				callback.failed(new IOException("Download of " + url + " could not be started", e));
+				return;
+			}
+			if (aborted) {
+				// abort() ran before the future was set
+				cancel();
+			}
+		}
+
+		public HttpEngineResponse execute() throws IOException {
+			final CountDownLatch done = new CountDownLatch(1);
+			final HttpEngineResponse[] response = new HttpEngineResponse[1];
+			final IOException[] error = new IOException[1];
+			enqueue(new Callback() {
+				public void completed(HttpEngineResponse r) {
+					response[0] = r;
+					done.countDown();
+				}
+
+				public void failed(IOException e) {
+					error[0] = e;
+					done.countDown();
+				}
+			});
+			try {
+				done.await();
+			} catch (InterruptedException e) {
+				abort();
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while waiting for " + url);
+			}
+			if (error[0] != null) {
+				throw error[0];
+			}
+			return response[0];
+		}
+
+		public void abort() {
+			aborted = true;
+			cancel();
+		}
+
+		private void cancel() {
+			Future<HttpResponse> running = future;
+			if (running != null) {
+				running.cancel(true);
+			}
+		}
+
+		private HttpEngineResponse wrap(final HttpResponse response, final BodyConsumer consumer) {
+			return new Response() {
+
+				public int getStatus() {
+					return response.getStatusLine().getStatusCode();
+				}
+
+				public String getHeader(String name) {
+					Header header = response.getFirstHeader(name);
+					return header == null ? null : header.getValue();
+				}
+
+				public Map<String, List<String>> getHeaders() {
+					Map<String, List<String>> headers = new LinkedHashMap<String, List<String>>();
+					for (Header header : response.getAllHeaders()) {
+						List<String> values = headers.get(header.getName());
+						if (values == null) {
+							values = new ArrayList<String>(1);
+							headers.put(header.getName(), values);
+						}
+						values.add(header.getValue());
+					}
+					return headers;
+				}
+
+				public String getUrl() {
+					List<URI> redirects = context.getRedirectLocations();
+					return redirects == null || redirects.isEmpty() ? url : redirects.get(redirects.size() - 1).toString();
+				}
+
+				public InputStream getBody() throws IOException {
+					HttpEntity entity = response.getEntity();
+					return entity == null ? new ByteArrayInputStream(new byte[0]) : entity.getContent();
+				}
+
+				public RequestTiming getTiming() {
+					return timing;
+				}
+
+				public SpilledBody takeSpilledBody() throws IOException {
+					return consumer.take();
+				}
+
+				public void close() {
+					// the connection is already back in the pool or closed
+					consumer.discard();
+				}
+			};
+		}
+	}
+
+	// Collects a response body on a reactor thread, in memory up to the spill
+	// threshold and in a temporary file past it. An uncompressed body is cut
+	// one byte past the size cap, so the reader still sees that it was longer;
+	// a compressed body is kept whole, its decoded size is not known here.
+	// The file of an uncompressed body is hashed as it is written, so the
+	// reader can keep it as the spilled body instead of copying it.
+	private static class BodyConsumer extends AbstractAsyncResponseConsumer<HttpResponse> {
+
+		private final long maxBodySize;
+		private final SpillFiles spillFiles;
+		private final ByteBuffer chunk = ByteBuffer.allocate(8192);
+		private HttpResponse response;
+		private boolean identity;
+		private long keep;
+		private int memoryLimit;
+		private byte[] buffer;
+		private int length;
+		private long received;
+		private File file;
+		private OutputStream out;
+		private MessageDigest digest;
+		private long hashed;
+		private volatile boolean capped;
+		volatile long headersAt;
+
+		BodyConsumer(long maxBodySize, SpillFiles spillFiles) {
+			this.maxBodySize = maxBodySize;
+			this.spillFiles = spillFiles;
+		}
+
+		protected void onResponseReceived(HttpResponse response) throws HttpException, IOException {
+			headersAt = System.nanoTime();
+			this.response = response;
+		}
+
+		protected void onEntityEnclosed(HttpEntity entity, ContentType contentType) throws IOException {
+			Header encoding = response.getFirstHeader("Content-Encoding");
+			identity = encoding == null || "identity".equalsIgnoreCase(encoding.getValue().trim());
+			keep = identity && maxBodySize > 0 ? maxBodySize + 1 : Long.MAX_VALUE;
+			memoryLimit = spillFiles == null ? MAX_BODY_LENGTH : (int) Math.min(MAX_BODY_LENGTH, spillFiles.getThreshold());
+			// the declared length only sizes the first array up to a point, the
+			// array grows in write() as the body actually arrives
+			long declared = entity.getContentLength();
+			long initial = declared >= 0 ? Math.min(declared, UrlData.MAX_INITIAL_BUFFER) : 8192;
+			buffer = new byte[(int) Math.min(memoryLimit, Math.min(keep, initial))];
+		}
+
+		protected void onContentReceived(ContentDecoder decoder, IOControl ioctrl) throws IOException {
+			int n;
+			while ((n = decoder.read(chunk)) > 0) {
+				int take = (int) Math.min(n, keep - received);
+				write(chunk.array(), take);
+				chunk.clear();
+				received += take;
+				if (received >= keep || file == null && length >= memoryLimit && spillFiles == null) {
+					// the caller drops the rest, closing the connection is cheaper
+					// than receiving it
+					capped = true;
+					cancel();
+					return;
+				}
+			}
+		}
+
+		private void write(byte[] bytes, int n) throws IOException {
+			if (file == null && length + n > memoryLimit && spillFiles != null) {
+				file = spillFiles.newFile();
+				out = new BufferedOutputStream(new FileOutputStream(file));
+				if (identity) {
+					try {
+						digest = MessageDigest.getInstance("SHA-256");
+					} catch (NoSuchAlgorithmException e) {
+						throw new IllegalStateException(e);
+					}
+				}
+				writeFile(buffer, length);
+				buffer = null;
+			}
+			if (file != null) {
+				writeFile(bytes, n);
+				return;
+			}
+			n = Math.min(n, memoryLimit - length);
+			if (length + n > buffer.length) {
+				buffer = Arrays.copyOf(buffer, (int) Math.min(memoryLimit, Math.max(length + n, Math.min(keep, 2L * buffer.length))));
+			}
+			System.arraycopy(bytes, 0, buffer, length, n);
+			length += n;
+		}
+
+		// Writes to the file, hashing the bytes up to the size cap
+		private void writeFile(byte[] bytes, int n) throws IOException {
+			out.write(bytes, 0, n);
+			if (digest != null) {
+				int h = (int) Math.min(n, keep - 1 - hashed);
+				digest.update(bytes, 0, h);
+				hashed += h;
+			}
+		}
+
+		boolean isCapped() {
+			return capped;
+		}
+
+		protected HttpResponse buildResult(HttpContext context) throws IOException {
+			return finish();
+		}
+
+		// The response with the body received so far
+		HttpResponse finish() throws IOException {
+			BasicHttpEntity entity = new BasicHttpEntity();
+			if (file != null) {
+				out.close();
+				entity.setContent(new FileInputStream(file));
+			} else {
+				entity.setContent(new ByteArrayInputStream(buffer == null ? new byte[0] : buffer, 0, length));
+			}
+			response.setEntity(entity);
+			return response;
+		}
+
+		// Gives up the file of an uncompressed body, cutting the byte past the
+		// size cap off it
+		SpilledBody take() throws IOException {
+			if (file == null || digest == null) {
+				return null;
+			}
+			out.close();
+			HttpEntity entity = response.getEntity();
+			if (entity != null && entity.isStreaming()) {
+				entity.getContent().close();
+			}
+			long length = Math.min(received, keep - 1);
+			if (length < received) {
+				RandomAccessFile cut = new RandomAccessFile(file, "rw");
+				try {
+					cut.setLength(length);
+				} finally {
+					cut.close();
+				}
+			}
+			File taken = file;
+			file = null;
+			return new SpilledBody(taken, length, received, digest.digest(), length < received);
+		}
+
+		protected void releaseResources() {
+			// the body is kept until the response is closed
+		}
+
+		// Drops the body, deleting the file it was collected in
+		void discard() {
+			buffer = null;
+			if (file != null) {
+				try {
+					if (out != null) {
+						out.close();
+					}
+					HttpEntity entity = response.getEntity();
+					if (entity != null && entity.isStreaming()) {
+						entity.getContent().close();
+					}
+				} catch (IOException e) {
+					// the file is deleted anyway
+				}
+				file.delete();
+			}
+		}
+	}
+
+	private static class NamedThreadFactory implements ThreadFactory {
+
+		private final String prefix;
+		private final AtomicInteger count = new AtomicInteger();
+
+		NamedThreadFactory(String prefix) {
+			this.prefix = prefix;
+		}
+
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, prefix + count.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		}
+	}
+
+}
@@ -0,0 +1,294 @@
+package org.pentaho.di.sdk.plugin.steps.pagedownload;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.MalformedURLException;
+import java.net.Proxy;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.Dns;
+import okhttp3.EventListener;
+import okhttp3.Handshake;
+import okhttp3.Headers;
+import okhttp3.HttpUrl;
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+
+/**
+ * HTTP/2 engine on top of OkHttp. Concurrent requests to one origin are
+ * multiplexed over a single connection; servers that do not negotiate HTTP/2
+ * are spoken to over HTTP/1.1 instead.
+ *
+ * The phases of a request are timed by an event listener, which finds the
+ * timing to fill in as a tag of the request.
+ *
+ * Calls run on OkHttp's dispatcher, which bounds the requests in flight in
+ * total and per host. Its connection pool only bounds the idle connections.
+ */
+public class OkHttpEngine implements HttpEngine {
+
+	private static final MediaType FORM = MediaType.parse("application/x-www-form-urlencoded");
+
+	private final OkHttpClient client;
+
+	OkHttpEngine(int maxPerHost, int maxTotal, int idleTimeoutSeconds, HttpClientPool.Timeouts timeouts,
+			final DnsCache dnsCache) {
+		Dispatcher dispatcher = new Dispatcher();
+		dispatcher.setMaxRequests(maxTotal);
+		dispatcher.setMaxRequestsPerHost(maxPerHost);
+		OkHttpClient.Builder builder = new OkHttpClient.Builder();
+		if (dnsCache != null) {
+			builder.dns(new Dns() {
+				public List<InetAddress> lookup(String host) throws UnknownHostException {
+					return Arrays.asList(dnsCache.resolve(host));
+				}
+			});
+		}
+		client = builder
+				.protocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1))
+				.dispatcher(dispatcher)
+				.addInterceptor(new Interceptor() {
+					public Response intercept(Chain chain) throws IOException {
+						try {
+							return chain.proceed(chain.request());
+						} catch (RuntimeException e) {
+							// the dispatcher only reports I/O errors, anything else
+							// would leave the caller waiting
+							throw new IOException("Download of " + chain.request().url() + " failed", e);
+						}
+					}
+				})
+				.connectionPool(new ConnectionPool(maxTotal, idleTimeoutSeconds, TimeUnit.SECONDS))
+				.connectTimeout(timeouts.connect, TimeUnit.MILLISECONDS)
+				.readTimeout(timeouts.read, TimeUnit.MILLISECONDS)
+				.writeTimeout(timeouts.read, TimeUnit.MILLISECONDS)
+				.callTimeout(timeouts.total, TimeUnit.MILLISECONDS)
+				.eventListenerFactory(new EventListener.Factory() {
+					public EventListener create(Call call) {
+						RequestTiming timing = call.request().tag(RequestTiming.class);
+						return timing == null ? EventListener.NONE : new TimingListener(timing);
+					}
+				})
+				.build();
+	}
+
+	public HttpEngineCall newCall(String method, String url, Map<String, String> headers) throws IOException {
+		// OkHttp encodes what a URL may not contain itself
+		HttpUrl httpUrl = HttpUrl.parse(url);
+		if (httpUrl == null) {
+			throw new MalformedURLException("Invalid URL " + url);
+		}
+		Request.Builder builder = new Request.Builder().url(httpUrl);
+		// an explicit Accept-Encoding turns off OkHttp's own gzip handling, the
+		// body is then decoded by the caller
+		for (Map.Entry<String, String> header : headers.entrySet()) {
+			builder.header(header.getKey(), header.getValue());
+		}
+		builder.method(method, "POST".equals(method) ? RequestBody.create(FORM, new byte[0]) : null);
+		final RequestTiming timing = new RequestTiming(true);
+		builder.tag(RequestTiming.class, timing);
+
+		final Call call = client.newCall(builder.build());
+		return new HttpEngineCall() {
+
+			public HttpEngineResponse execute() throws IOException {
+				Slot slot = new Slot();
+				call.enqueue(slot);
+				return wrap(slot.await(call), timing, slot);
+			}
+
+			public void abort() {
+				call.cancel();
+			}
+		};
+	}
+
+	private static HttpEngineResponse wrap(final Response response, final RequestTiming timing, final Slot slot) {
+		return new HttpEngineResponse() {
+
+			public int getStatus() {
+				return response.code();
+			}
+
+			public String getHeader(String name) {
+				return response.header(name);
+			}
+
+			public Map<String, List<String>> getHeaders() {
+				Headers received = response.headers();
+				Map<String, List<String>> headers = new LinkedHashMap<String, List<String>>();
+				for (int i = 0; i < received.size(); i++) {
+					List<String> values = headers.get(received.name(i));
+					if (values == null) {
+						values = new ArrayList<String>(1);
+						headers.put(received.name(i), values);
+					}
+					values.add(received.value(i));
+				}
+				return headers;
+			}
+
+			public String getUrl() {
+				return response.request().url().toString();
+			}
+
+			public InputStream getBody() {
+				return response.body().byteStream();
+			}
+
+			public RequestTiming getTiming() {
+				return timing;
+			}
+
+			public void close() {
+				try {
+					response.close();
+				} finally {
+					slot.release();
+				}
+			}
+		};
+	}
+
+	public void close() {
+		client.dispatcher().executorService().shutdown();
+		client.connectionPool().evictAll();
+	}
+
+	// Hands the response of an enqueued call to the thread waiting for it.
+	// The dispatcher's thread then waits until the response is closed, so the
+	// call keeps its place among the requests in flight while its body is
+	// read.
+	private static class Slot implements Callback {
+
+		private final CountDownLatch arrived = new CountDownLatch(1);
+		private final CountDownLatch closed = new CountDownLatch(1);
+		private Response response;
+		private IOException error;
+		private boolean abandoned;
+
+		public void onResponse(Call call, Response response) {
+			synchronized (this) {
+				if (abandoned) {
+					response.close();
+					return;
+				}
+				this.response = response;
+			}
+			arrived.countDown();
+			try {
+				closed.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		public void onFailure(Call call, IOException e) {
+			error = e;
+			arrived.countDown();
+		}
+
+		Response await(Call call) throws IOException {
+			try {
+				arrived.await();
+			} catch (InterruptedException e) {
+				call.cancel();
+				synchronized (this) {
+					abandoned = true;
+					if (response != null) {
+						response.close();
+						closed.countDown();
+					}
+				}
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while waiting for " + call.request().url());
+			}
+			if (error != null) {
+				throw error;
+			}
+			return response;
+		}
+
+		void release() {
+			closed.countDown();
+		}
+	}
+
+	// The events of a call come on the thread executing it. The TLS handshake
+	// runs between connectStart and connectEnd, its time is left out of the
+	// connect time.
+	private static class TimingListener extends EventListener {
+
+		private final RequestTiming timing;
+		private long callStart;
+		private long dnsStart;
+		private long connectStart;
+		private long connectTls;
+		private long tlsStart;
+
+		TimingListener(RequestTiming timing) {
+			this.timing = timing;
+		}
+
+		public void callStart(Call call) {
+			callStart = System.nanoTime();
+		}
+
+		public void dnsStart(Call call, String domainName) {
+			dnsStart = System.nanoTime();
+		}
+
+		public void dnsEnd(Call call, String domainName, List<InetAddress> addresses) {
+			timing.addDns(System.nanoTime() - dnsStart);
+		}
+
+		public void connectStart(Call call, InetSocketAddress address, Proxy proxy) {
+			connectStart = System.nanoTime();
+			connectTls = timing.tlsNanos;
+		}
+
+		public void secureConnectStart(Call call) {
+			tlsStart = System.nanoTime();
+		}
+
+		public void secureConnectEnd(Call call, Handshake handshake) {
+			timing.addTls(System.nanoTime() - tlsStart);
+		}
+
+		public void connectEnd(Call call, InetSocketAddress address, Proxy proxy, Protocol protocol) {
+			connected();
+		}
+
+		public void connectFailed(Call call, InetSocketAddress address, Proxy proxy, Protocol protocol, IOException e) {
+			connected();
+		}
+
+		private void connected() {
+			timing.addConnect(System.nanoTime() - connectStart - (timing.tlsNanos - connectTls));
+		}
+
+		public void responseHeadersEnd(Call call, Response response) {
+			timing.setFirstByte(System.nanoTime() - callStart);
+		}
+	}
+
+}
@@ -22,21 +22,37 @@
 
 package org.pentaho.di.sdk.plugin.steps.pagedownload;
 
-import java.io.BufferedReader;
-import java.io.DataOutputStream;
+import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
-import java.net.MalformedURLException;
-import java.net.URL;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
+import javax.management.JMException;
+
+import org.pentaho.di.core.Const;
 import org.pentaho.di.core.exception.KettleException;
 import org.pentaho.di.core.exception.KettleStepException;
 import org.pentaho.di.core.row.RowDataUtil;
 import org.pentaho.di.core.row.RowMetaInterface;
 import org.pentaho.di.i18n.BaseMessages;
 import org.pentaho.di.trans.Trans;
+import org.pentaho.di.trans.TransAdapter;
 import org.pentaho.di.trans.TransMeta;
 import org.pentaho.di.trans.step.BaseStep;
 import org.pentaho.di.trans.step.StepDataInterface;
@@ -67,7 +83,15 @@ public class PageDownloadStep extends BaseStep implements StepInterface {
 
 	private static Class<?> PKG = PageDownloadStepMeta.class;
 
-	private boolean isUrlInputField = false;
+	// how often, in milliseconds, the step thread checks for a stop while it
+	// waits for downloads
+	private static final long STOP_CHECK_INTERVAL = 100;
+
+	// numbers of the running transformations, Trans compares by identity and
+	// finished ones are dropped once they are collected
+	private static final Map<Trans, Long> transIds = new WeakHashMap<Trans, Long>();
+	private static long lastTransId;
+
 	private int urlFieldIdx = 0;
 	private PageDownloadStepMeta meta = null;
 	private PageDownloadStepData data = null;
@@ -119,7 +143,180 @@ public class PageDownloadStep extends BaseStep implements StepInterface {
 		PageDownloadStepMeta meta = (PageDownloadStepMeta) smi;
 		PageDownloadStepData data = (PageDownloadStepData) sdi;
 
-		return super.init(meta, data);
+		if (!super.init(meta, data)) {
+			return false;
+		}
+
+		data.maxInFlight = Math.max(1, Const.toInt(environmentSubstitute(meta.getMaxInFlight()), 1));
+		data.preserveOrder = meta.getPreserveOrder();
+
+		double hostRequestsPerSecond = Const.toDouble(environmentSubstitute(meta.getHostRequestsPerSecond()), 0);
+		int maxConcurrentPerHost = Const.toInt(environmentSubstitute(meta.getMaxConcurrentPerHost()), 0);
+		boolean politeness = hostRequestsPerSecond > 0 || maxConcurrentPerHost > 0;
+		boolean async = PageDownloadStepMeta.ENGINE_NIO.equals(meta.getEngine());
+
+		// the event driven engine starts a download without waiting for it, so
+		// only its connection limit can hold the downloads per host back
+		int maxPerHost = Math.max(1, Const.toInt(environmentSubstitute(meta.getMaxConnectionsPerHost()), 20));
+		if (async && maxConcurrentPerHost > 0) {
+			maxPerHost = Math.min(maxPerHost, maxConcurrentPerHost);
+			maxConcurrentPerHost = 0;
+		}
+
+		// all copies of this step in the running transformation reuse the same
+		// connections, so repeated requests to a host skip the TCP/TLS handshake,
+		// unless the copies are partitioned by host
+		try {
+			data.httpClientPool = HttpClientPool.acquire(
+					getSharedKey(),
+					meta.getEngine(),
+					maxPerHost,
+					Math.max(1, Const.toInt(environmentSubstitute(meta.getMaxConnections()), 200)),
+					Math.max(1, Const.toInt(environmentSubstitute(meta.getIdleConnectionTimeout()), 30)),
+					new HttpClientPool.Timeouts(
+							toMillis(environmentSubstitute(meta.getConnectTimeout())),
+							toMillis(environmentSubstitute(meta.getReadTimeout())),
+							toMillis(environmentSubstitute(meta.getTotalTimeout()))),
+					Math.max(0, Const.toLong(environmentSubstitute(meta.getDnsCacheTtl()), 0)));
+			data.dnsCache = data.httpClientPool.getDnsCache();
+		} catch (IOException e) {
+			logError("Unable to start the HTTP engine", e);
+			return false;
+		}
+
+		String cacheDirectory = environmentSubstitute(meta.getCacheDirectory());
+		if (!Const.isEmpty(cacheDirectory)) {
+			try {
+				data.diskCache = DiskCache.open(new File(cacheDirectory),
+						Const.toLong(environmentSubstitute(meta.getCacheMaxSize()), 1024) * 1024 * 1024);
+			} catch (IOException e) {
+				logError("Unable to open response cache in " + cacheDirectory, e);
+				return false;
+			}
+		}
+
+		long memoryCacheSize = Const.toLong(environmentSubstitute(meta.getMemoryCacheSize()), 0);
+		if (memoryCacheSize > 0) {
+			data.memoryCache = MemoryCache.acquire(getSharedKey(),
+					memoryCacheSize * 1024 * 1024, Const.toLong(environmentSubstitute(meta.getMemoryCacheTtl()), 0));
+		}
+
+		if (meta.getCanonicalizeUrls()) {
+			Pattern strip = null;
+			String stripParameters = environmentSubstitute(meta.getStripParameters());
+			if (!Const.isEmpty(stripParameters)) {
+				try {
+					strip = Pattern.compile(stripParameters);
+				} catch (PatternSyntaxException e) {
+					logError("Invalid pattern of the query parameters to remove " + stripParameters, e);
+					return false;
+				}
+			}
+			data.canonicalizer = new UrlCanonicalizer(strip, meta.getSortParameters());
+		}
+
+		String journalFile = environmentSubstitute(meta.getJournalFile());
+		if (!Const.isEmpty(journalFile)) {
+			try {
+				data.journal = ResumeJournal.open(new File(journalFile));
+			} catch (IOException e) {
+				logError("Unable to open the journal " + journalFile, e);
+				return false;
+			}
+			data.journalReuse = PageDownloadStepMeta.JOURNAL_REUSE.equals(meta.getJournalMode());
+		}
+
+		long spillThreshold = Const.toLong(environmentSubstitute(meta.getSpillThreshold()), 0);
+		if (spillThreshold > 0) {
+			String spillDirectory = environmentSubstitute(meta.getSpillDirectory());
+			final SpillFiles spillFiles = new SpillFiles(Const.isEmpty(spillDirectory) ? null : new File(spillDirectory),
+					spillThreshold * 1024 * 1024);
+			// later steps read the files after this step is done, so they are
+			// only deleted once the whole transformation has finished. The
+			// journal refers to them for a restarted run reusing them, so they
+			// are kept then.
+			if (!data.journalReuse) {
+				getTrans().addTransListener(new TransAdapter() {
+					public void transFinished(Trans trans) {
+						spillFiles.delete();
+					}
+				});
+			}
+			data.spillFiles = spillFiles;
+		}
+
+		data.downloader = new PageDownloader(data.httpClientPool, meta.getMethod(), data.diskCache, data.memoryCache, data.spillFiles,
+				meta.getBinaryContent());
+		data.downloader.setRetries(Math.max(0, Const.toInt(environmentSubstitute(meta.getMaxRetries()), 0)),
+				Math.max(0, Const.toLong(environmentSubstitute(meta.getRetryBackoff()), 500)));
+		data.downloader.setMaxBodySize(Math.max(0, Const.toLong(environmentSubstitute(meta.getMaxBodySize()), 0)) * 1024);
+		int minInFlight = Const.toInt(environmentSubstitute(meta.getMinInFlight()), 0);
+		if (minInFlight > 0 && data.maxInFlight > 1) {
+			data.concurrencyLimit = new ConcurrencyLimit(minInFlight, data.maxInFlight);
+			data.loggedLimit = data.concurrencyLimit.get();
+			data.downloader.setConcurrencyLimit(data.concurrencyLimit);
+		}
+		data.downloader.setCircuitBreaker(Math.max(0, Const.toInt(environmentSubstitute(meta.getBreakerErrorRate()), 0)),
+				Math.max(1, Const.toLong(environmentSubstitute(meta.getBreakerOpenTime()), 30)));
+
+		if (meta.getCrawl()) {
+			Pattern allow = null;
+			String allowPattern = environmentSubstitute(meta.getCrawlAllowPattern());
+			if (!Const.isEmpty(allowPattern)) {
+				try {
+					allow = Pattern.compile(allowPattern);
+				} catch (PatternSyntaxException e) {
+					logError("Invalid pattern of the links to follow " + allowPattern, e);
+					return false;
+				}
+			}
+			// the visited URLs take about 1.2 bytes per page of direct memory,
+			// so a crawl always has a page limit
+			long defaultMaxPages = Long.parseLong(PageDownloadStepMeta.DEFAULT_CRAWL_MAX_PAGES);
+			long maxPages = Const.toLong(environmentSubstitute(meta.getCrawlMaxPages()), defaultMaxPages);
+			if (maxPages <= 0) {
+				maxPages = defaultMaxPages;
+			}
+			data.frontier = new CrawlFrontier(Math.max(0, Const.toInt(environmentSubstitute(meta.getCrawlMaxDepth()), 2)),
+					maxPages, allow, new VisitedSet(maxPages, 0.01));
+		}
+
+		// live figures of this copy for JMX consoles, the step runs without
+		// them if they cannot be published
+		try {
+			data.metricsName = data.downloader.getMetrics().register(getTransMeta().getName(), getStepname(), getCopy());
+		} catch (JMException e) {
+			logBasic("Unable to publish the step metrics over JMX: " + e.getMessage());
+		}
+
+		// with more than one request in flight, or when hosts are rate limited,
+		// the downloads run on a bounded pool and the step thread itself only
+		// reads and writes rows. The event driven engine needs no pool, a
+		// single thread only starts the downloads the host queues release.
+		if (async) {
+			if (politeness) {
+				data.executor = Executors.newSingleThreadExecutor(new FetchThreadFactory());
+			}
+		} else if (data.maxInFlight > 1 || politeness) {
+			if (meta.getVirtualThreads()) {
+				// a virtual thread per download, the requests of all copies
+				// together are held to the connection limit
+				data.executor = VirtualThreads.newExecutor(getStepname() + "." + getCopy() + " fetch-");
+				if (data.executor != null) {
+					data.downloader.setRequestPermits(data.httpClientPool.getRequestPermits());
+				} else {
+					logBasic("Virtual threads are not available on this JVM, using a pool of " + data.maxInFlight + " threads");
+				}
+			}
+			if (data.executor == null) {
+				data.executor = Executors.newFixedThreadPool(data.maxInFlight, new FetchThreadFactory());
+			}
+		}
+		if (politeness) {
+			data.hostScheduler = new HostScheduler(data.executor, hostRequestsPerSecond, maxConcurrentPerHost);
+		}
+
+		return true;
 	}
 
 	/**
@@ -157,54 +354,318 @@ public class PageDownloadStep extends BaseStep implements StepInterface {
 		this.data = (PageDownloadStepData) sdi;
 
 		// get incoming row, getRow() potentially blocks waiting for more rows,
-		// returns null if no more rows expected
-		Object[] r = getRow();
+		// returns null if no more rows expected. A row read ahead while
+		// downloads were running comes first. The links of a crawl follow once
+		// all seed rows are read.
+		Object[] r;
+		if (data.readAhead != null) {
+			r = data.readAhead;
+			data.readAhead = null;
+		} else {
+			r = data.inputDone ? null : getRow();
+		}
 
-		// if no more rows are expected, indicate step is finished and
-		// processRow() should not be called again
+		PageFetch fetch;
 		if (r == null) {
-			logBasic("Number of incoming rows 0");
-			setOutputDone();
-			return false;
+			if (isRowLevel()) {
+				logRowlevel("Number of incoming rows 0");
+			}
+			CrawlFrontier.Link link = data.frontier == null ? null : data.frontier.poll();
+			if (link == null && data.frontier != null && data.pending > 0) {
+				// the pages still being downloaded may add links
+				PageFetch done = takeFetch();
+				if (done == null) {
+					return false;
+				}
+				putFetch(done);
+				return true;
+			}
+
+			// if no more rows are expected, emit whatever is still being
+			// downloaded, indicate step is finished and processRow() should not
+			// be called again
+			if (link == null) {
+				while (data.pending > 0) {
+					PageFetch done = takeFetch();
+					if (done == null) {
+						return false;
+					}
+					putFetch(done);
+				}
+				setOutputDone();
+				return false;
+			}
+			fetch = link.toFetch(data.downloader);
+			data.crawled++;
 		} else {
-			logBasic("Number of incoming rows " + r.length);
+			if (isRowLevel()) {
+				logRowlevel("Number of incoming rows " + r.length);
+			}
+
+			if (first) {
+				first = false;
+				setup();
+				initFieldIndexes();
+			}
+
+			fetch = new PageFetch(r, getUrl(r), data.downloader);
+			if (data.frontier != null) {
+				fetch.crawled(0, null, CrawlFrontier.getSite(fetch.getUrl()));
+				data.frontier.seed(fetch.getUrl());
+			}
 		}
 
-		if (first) {
-			first = false;
-			setup();
-			initFieldIndexes();
+		// a URL completed before a restart is left out, or passed on with the
+		// body it was spilled to. One without a body is downloaded again.
+		ResumeJournal.Entry entry = data.journal == null ? null : data.journal.get(fetch.getUrl());
+		if (entry != null) {
+			if (!data.journalReuse) {
+				data.resumed++;
+				return true;
+			}
+			UrlData recorded = entry.toResult(fetch.getUrl());
+			if (recorded != null) {
+				data.resumed++;
+				fetch.resume(recorded);
+			}
 		}
 
-		Object[] outputRow;
-		String pageContent = "";
+		if (data.executor == null && !data.downloader.isAsync()) {
+			readAhead();
+			fetch.call();
+			if (isStopped()) {
+				// the download was aborted, there is nothing to pass on
+				return false;
+			}
+			putFetch(fetch);
+		} else {
+			// dispatch the download and only wait once the in-flight window is full
+			BlockingQueue<Future<PageFetch>> completed = data.preserveOrder ? null : data.completed;
+			RunnableFuture<PageFetch> task = data.downloader.isAsync() ? new AsyncFetchTask(fetch, completed)
+					: new FetchTask(fetch, completed);
+			if (data.preserveOrder) {
+				data.inFlight.add(task);
+			}
+			if (fetch.isResumed()) {
+				// nothing to download, it only has to wait for its turn
+				task.run();
+			} else if (data.hostScheduler != null) {
+				data.hostScheduler.execute(fetch.getUrl(), task);
+			} else if (data.executor != null) {
+				data.executor.execute(task);
+			} else {
+				task.run();
+			}
+			data.pending++;
+
+			// a lowered limit is reached by emitting rows until enough
+			// downloads are done
+			while (data.pending >= getInFlightLimit()) {
+				readAhead();
+				PageFetch done = takeFetch();
+				if (done == null) {
+					return false;
+				}
+				putFetch(done);
+			}
+		}
+
+		// log progress if it is time to to so, crawled links count as lines
+		if (checkFeedback(getLinesRead() + data.crawled)) {
+			logBasic("Linenr " + (getLinesRead() + data.crawled)); // Some basic logging
+			if (data.frontier != null) {
+				logDetailed(data.frontier.toString());
+			}
+			logHostStatistics(data.hostScheduler);
+			logTransferStatistics(data.downloader);
+			logEngineStatistics(data.httpClientPool);
+			if (data.memoryCache != null) {
+				logDetailed(data.memoryCache.toString());
+			}
+		}
+
+		// indicate that processRow() should be called again
+		return true;
+	}
+
+	private String getUrl(Object[] r) {
+		String url = meta.getGetUrlFromPreviousFields() ? environmentSubstitute(r[urlFieldIdx].toString())
+				: environmentSubstitute(meta.getUrlField());
+		return data.canonicalizer == null ? url : data.canonicalizer.canonicalize(url);
+	}
+
+	// Waits for the next finished download, the oldest one when the input order
+	// is preserved, otherwise whichever completes first. Returns null if the
+	// step is stopped while waiting, as queued downloads are then dropped and
+	// never complete.
+	private PageFetch takeFetch() throws KettleException {
 		try {
-			if (!meta.getGetUrlFromPreviousFields()) {
-				pageContent = new UrlData(environmentSubstitute(meta.getUrlField())).getData();
-				outputRow = RowDataUtil.addValueData(r, data.outputRowMeta.size() - 2,
-						environmentSubstitute(meta.getUrlField()));
+			PageFetch fetch = null;
+			if (data.preserveOrder) {
+				while (fetch == null) {
+					try {
+						fetch = data.inFlight.getFirst().get(STOP_CHECK_INTERVAL, TimeUnit.MILLISECONDS);
+					} catch (TimeoutException e) {
+						if (isStopped()) {
+							return null;
+						}
+					}
+				}
+				data.inFlight.removeFirst();
 			} else {
-				pageContent = new UrlData(environmentSubstitute(r[urlFieldIdx].toString())).getData();
-				outputRow = RowDataUtil.addValueData(r, data.outputRowMeta.size() - 2,
-						environmentSubstitute(r[urlFieldIdx].toString()));
+				Future<PageFetch> future = null;
+				while (future == null) {
+					future = data.completed.poll(STOP_CHECK_INTERVAL, TimeUnit.MILLISECONDS);
+					if (future == null && isStopped()) {
+						return null;
+					}
+				}
+				fetch = future.get();
 			}
-		}catch (Exception e) {
-			e.printStackTrace();
+			data.pending--;
+			return fetch;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new KettleException("Interrupted while waiting for page download", e);
+		} catch (ExecutionException e) {
+			throw new KettleException("Page download failed", e.getCause());
+		}
+	}
+
+	private void putFetch(PageFetch fetch) throws KettleStepException {
+		if (fetch.getError() != null) {
+			logError("Unable to download " + fetch.getUrl(), fetch.getError());
+		}
+
+		int index = data.inputRowMeta.size();
+		UrlData result = fetch.getResult();
+		boolean spilled = result != null && result.getFile() != null;
+
+		// the links of a page kept as text are queued with a copy of its input
+		// fields, taken before the row is passed on and changed downstream.
+		// Spilled and binary bodies are not read again for links.
+		Object[] seedRow = null;
+		if (data.frontier != null && data.frontier.followsLinksOf(fetch) && result != null && result.getData() != null
+				&& isHtml(result.getContentType())) {
+			seedRow = Arrays.copyOf(fetch.getRow(), data.inputRowMeta.size());
 		}
-		
 
-		outputRow = RowDataUtil.addValueData(r, data.outputRowMeta.size() - 1, pageContent);
+		Object[] outputRow = RowDataUtil.addValueData(fetch.getRow(), index++, fetch.getUrl());
+		Object content = meta.getBinaryContent() ? fetch.getBytes() : fetch.getData();
+		outputRow = RowDataUtil.addValueData(outputRow, index++, spilled ? null : content);
+		if (meta.hasSpillFields(this)) {
+			outputRow = RowDataUtil.addValueData(outputRow, index++, spilled ? result.getFile().getPath() : null);
+			outputRow = RowDataUtil.addValueData(outputRow, index++, spilled ? Long.valueOf(result.getLength()) : null);
+			outputRow = RowDataUtil.addValueData(outputRow, index++, spilled ? result.getHash() : null);
+		}
+		if (meta.hasTruncatedField(this)) {
+			outputRow = RowDataUtil.addValueData(outputRow, index++, result == null ? null : Boolean.valueOf(result.isTruncated()));
+		}
+		if (meta.getResponseFields()) {
+			// a failed download only has a status if the server answered
+			Long status = null;
+			if (result != null) {
+				status = Long.valueOf(result.getStatus());
+			} else if (fetch.getError() instanceof HttpStatusException) {
+				status = Long.valueOf(((HttpStatusException) fetch.getError()).getStatus());
+			}
+			outputRow = RowDataUtil.addValueData(outputRow, index++, status);
+			outputRow = RowDataUtil.addValueData(outputRow, index++, result == null ? null : result.getFinalUrl());
+			outputRow = RowDataUtil.addValueData(outputRow, index++, result == null ? null : result.getContentType());
+			outputRow = RowDataUtil.addValueData(outputRow, index++, result == null ? null : Long.valueOf(result.getReceived()));
+			outputRow = RowDataUtil.addValueData(outputRow, index++, result == null ? null : result.getSource());
+		}
+		if (meta.getTimingFields()) {
+			RequestTiming timing = result == null ? null : result.getTiming();
+			outputRow = RowDataUtil.addValueData(outputRow, index++, timing == null ? null : timing.getDnsMillis());
+			outputRow = RowDataUtil.addValueData(outputRow, index++, timing == null ? null : timing.getConnectMillis());
+			outputRow = RowDataUtil.addValueData(outputRow, index++, timing == null ? null : timing.getTlsMillis());
+			outputRow = RowDataUtil.addValueData(outputRow, index++, timing == null ? null : timing.getFirstByteMillis());
+			outputRow = RowDataUtil.addValueData(outputRow, index++, timing == null ? null : timing.getDownloadMillis());
+		}
+		if (meta.getCrawl()) {
+			outputRow = RowDataUtil.addValueData(outputRow, index++, Long.valueOf(fetch.getDepth()));
+			outputRow = RowDataUtil.addValueData(outputRow, index++, fetch.getReferrer());
+		}
 
 		// put the row to the output row stream
 		putRow(data.outputRowMeta, outputRow);
+		data.downloader.getMetrics().rowWritten();
 
-		// log progress if it is time to to so
-		if (checkFeedback(getLinesRead())) {
-			logBasic("Linenr " + getLinesRead()); // Some basic logging
+		if (seedRow != null) {
+			String base = result.getFinalUrl() != null ? result.getFinalUrl() : fetch.getUrl();
+			List<String> links = LinkExtractor.extract(result.getData(), base);
+			if (data.canonicalizer != null) {
+				for (int i = 0; i < links.size(); i++) {
+					links.set(i, data.canonicalizer.canonicalize(links.get(i)));
+				}
+			}
+			data.frontier.addLinks(fetch, seedRow, links);
 		}
 
-		// indicate that processRow() should be called again
-		return true;
+		// only recorded once passed on, a restart after a crash downloads the
+		// URLs in between again
+		if (data.journal != null && result != null && !fetch.isResumed()) {
+			try {
+				data.journal.record(fetch.getUrl(), result);
+			} catch (IOException e) {
+				throw new KettleStepException("Unable to write to the journal", e);
+			}
+		}
+	}
+
+	// Reads the next row before the step thread waits for a download, so the
+	// host of its URL is looked up in the meantime.
+	private void readAhead() throws KettleException {
+		if (data.dnsCache == null || data.readAhead != null || data.inputDone) {
+			return;
+		}
+		Object[] r = getRow();
+		if (r == null) {
+			data.inputDone = true;
+			return;
+		}
+		data.readAhead = r;
+		data.dnsCache.prefetch(HostScheduler.getHost(getUrl(r)));
+	}
+
+	private static boolean isHtml(String contentType) {
+		return contentType == null || contentType.toLowerCase().contains("html");
+	}
+
+	private int getInFlightLimit() {
+		if (data.concurrencyLimit == null) {
+			return data.maxInFlight;
+		}
+		int limit = data.concurrencyLimit.get();
+		if (limit != data.loggedLimit && isDetailed()) {
+			logDetailed("Downloads in flight " + (limit > data.loggedLimit ? "raised" : "lowered") + " from "
+					+ data.loggedLimit + " to " + limit + ". " + data.concurrencyLimit);
+		}
+		data.loggedLimit = limit;
+		return limit;
+	}
+
+	private void logHostStatistics(HostScheduler scheduler) {
+		if (scheduler != null && isDetailed()) {
+			for (HostScheduler.HostStatistics host : scheduler.getStatistics()) {
+				logDetailed(host.toString());
+			}
+		}
+	}
+
+	private void logTransferStatistics(PageDownloader downloader) {
+		if (downloader != null && isDetailed()) {
+			for (TransferStatistics.HostTransfer host : downloader.getTransferStatistics().getStatistics()) {
+				logDetailed(host.toString());
+			}
+		}
+	}
+
+	private void logEngineStatistics(HttpClientPool pool) {
+		if (pool != null && pool.getEngine() instanceof NioHttpEngine) {
+			logDetailed(pool.getEngine().toString());
+		}
 	}
 
 	private void setup() {
@@ -216,13 +677,13 @@ public class PageDownloadStep extends BaseStep implements StepInterface {
 		try {
 			meta.getFields(data.outputRowMeta, getStepname(), null, null, this, null, null);
 		} catch (KettleStepException e) {
-			e.printStackTrace();
+			logError("Unable to determine the output fields", e);
 		}
 
 	}
 
 	private void initFieldIndexes() throws KettleStepException {
-		if (isUrlInputField) {
+		if (meta.getGetUrlFromPreviousFields()) {
 			Integer idx = getFieldIdx(data.inputRowMeta, environmentSubstitute(meta.getPrevURLField()));
 			if (idx != null) {
 				urlFieldIdx = idx.intValue();
@@ -232,6 +693,35 @@ public class PageDownloadStep extends BaseStep implements StepInterface {
 		}
 	}
 
+	/**
+	 * Called by PDI from another thread when the transformation is stopped.
+	 * Aborting the running requests closes their sockets, so the step does
+	 * not wait for slow servers before it can stop. Queued downloads are
+	 * dropped.
+	 * 
+	 * @param smi
+	 *            step meta interface implementation, containing the step
+	 *            settings
+	 * @param sdi
+	 *            step data interface implementation, used to store runtime
+	 *            information
+	 */
+	public void stopRunning(StepMetaInterface smi, StepDataInterface sdi) throws KettleException {
+		PageDownloadStepData data = (PageDownloadStepData) sdi;
+
+		if (data.hostScheduler != null) {
+			data.hostScheduler.shutdown();
+		}
+		if (data.executor != null) {
+			data.executor.shutdownNow();
+		}
+		if (data.downloader != null) {
+			data.downloader.abort();
+		}
+
+		super.stopRunning(smi, sdi);
+	}
+
 	/**
 	 * This method is called by PDI once the step is done processing.
 	 * 
@@ -258,9 +748,128 @@ public class PageDownloadStep extends BaseStep implements StepInterface {
 		PageDownloadStepMeta meta = (PageDownloadStepMeta) smi;
 		PageDownloadStepData data = (PageDownloadStepData) sdi;
 
+		// nothing is downloaded anymore, downloads still running are aborted
+		if (data.downloader != null) {
+			data.downloader.abort();
+		}
+
+		if (data.hostScheduler != null) {
+			logHostStatistics(data.hostScheduler);
+			data.hostScheduler.shutdown();
+			data.hostScheduler = null;
+		}
+
+		if (data.executor != null) {
+			data.executor.shutdownNow();
+			data.executor = null;
+		}
+
+		if (data.httpClientPool != null) {
+			logEngineStatistics(data.httpClientPool);
+			if (data.dnsCache != null) {
+				logDetailed(data.dnsCache.toString());
+				data.dnsCache = null;
+			}
+			try {
+				HttpClientPool.release(data.httpClientPool);
+			} catch (IOException e) {
+				logError("Unable to close HTTP connections", e);
+			}
+			data.httpClientPool = null;
+		}
+
+		logTransferStatistics(data.downloader);
+
+		if (data.downloader != null && data.downloader.getMetrics().getRequests() > 0) {
+			logBasic(data.downloader.getMetrics().toString());
+		}
+		if (data.metricsName != null) {
+			try {
+				DownloadMetrics.unregister(data.metricsName);
+			} catch (JMException e) {
+				logError("Unable to remove the step metrics from JMX", e);
+			}
+			data.metricsName = null;
+		}
+
+		if (data.downloader != null && data.downloader.getRetries() > 0) {
+			logBasic("Retried " + data.downloader.getRetries() + " failed download attempts");
+		}
+		if (data.downloader != null && data.downloader.getRejected() > 0) {
+			logBasic("Skipped " + data.downloader.getRejected() + " downloads from hosts with too many failures");
+		}
+
+		if (data.concurrencyLimit != null) {
+			logBasic(data.concurrencyLimit.toString());
+		}
+
+		if (data.frontier != null) {
+			logBasic(data.frontier.toString());
+			data.frontier = null;
+		}
+
+		if (data.downloader != null && data.downloader.getCoalesced() > 0) {
+			logBasic("Coalesced " + data.downloader.getCoalesced() + " downloads of URLs already being downloaded");
+		}
+
+		if (data.memoryCache != null) {
+			logBasic(data.memoryCache.toString());
+			MemoryCache.release(data.memoryCache);
+			data.memoryCache = null;
+		}
+
+		if (data.journal != null) {
+			logBasic(data.journal.toString() + ", " + data.resumed + " rows resumed");
+			try {
+				ResumeJournal.close(data.journal);
+			} catch (IOException e) {
+				logError("Unable to close the journal", e);
+			}
+			data.journal = null;
+		}
+
+		if (data.diskCache != null) {
+			try {
+				DiskCache.close(data.diskCache);
+			} catch (IOException e) {
+				logError("Unable to close response cache", e);
+			}
+			data.diskCache = null;
+		}
+
 		super.dispose(meta, data);
 	}
 
+	// Key of the engine and memory cache shared by the copies of this step.
+	// When the rows are partitioned by host no two copies talk to the same
+	// host, so each copy keeps its own.
+	private String getSharedKey() {
+		String key = getTransId(getTrans()) + "/" + getStepname();
+		StepMeta stepMeta = getStepMeta();
+		if (stepMeta.isPartitioned() && stepMeta.getStepPartitioningMeta().getPartitioner() instanceof HostPartitioner) {
+			key += "/" + getCopy();
+		}
+		return key;
+	}
+
+	// Number of a running transformation, unique as long as it is referenced.
+	// Identity hash codes are not unique, two transformations running the
+	// step could share engines and caches set up differently.
+	private static synchronized long getTransId(Trans trans) {
+		Long id = transIds.get(trans);
+		if (id == null) {
+			id = ++lastTransId;
+			transIds.put(trans, id);
+		}
+		return id;
+	}
+
+	// Seconds as set in the dialog, empty or 0 for no limit
+	private static int toMillis(String seconds) {
+		double value = Const.toDouble(seconds, 0);
+		return value <= 0 ? 0 : (int) Math.min(Integer.MAX_VALUE, Math.round(value * 1000));
+	}
+
 	// This method get field ID
 	private static Integer getFieldIdx(RowMetaInterface rowMeta, String fieldName) {
 		if (fieldName == null) {
@@ -276,4 +885,59 @@ public class PageDownloadStep extends BaseStep implements StepInterface {
 		return null;
 	}
 
+	// Download that hands itself to the completion queue once it is done, so
+	// rows can be emitted in completion order.
+	private static class FetchTask extends FutureTask<PageFetch> {
+
+		private final BlockingQueue<Future<PageFetch>> completed;
+
+		FetchTask(PageFetch fetch, BlockingQueue<Future<PageFetch>> completed) {
+			super(fetch);
+			this.completed = completed;
+		}
+
+		protected void done() {
+			if (completed != null) {
+				completed.add(this);
+			}
+		}
+	}
+
+	// Download run by the event driven engine. Starting it returns at once,
+	// the future completes on a callback thread of the engine.
+	private static class AsyncFetchTask extends CompletableFuture<PageFetch> implements RunnableFuture<PageFetch> {
+
+		private final PageFetch fetch;
+		private final BlockingQueue<Future<PageFetch>> completed;
+
+		AsyncFetchTask(PageFetch fetch, BlockingQueue<Future<PageFetch>> completed) {
+			this.fetch = fetch;
+			this.completed = completed;
+		}
+
+		public void run() {
+			fetch.start().thenAccept(new Consumer<PageFetch>() {
+				public void accept(PageFetch done) {
+					complete(done);
+					if (completed != null) {
+						completed.add(AsyncFetchTask.this);
+					}
+				}
+			});
+		}
+	}
+
+	// Names the download threads after the step copy so they can be told apart
+	// in thread dumps.
+	private class FetchThreadFactory implements ThreadFactory {
+
+		private final AtomicInteger count = new AtomicInteger();
+
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, getStepname() + "." + getCopy() + " fetch-" + count.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		}
+	}
+
 }
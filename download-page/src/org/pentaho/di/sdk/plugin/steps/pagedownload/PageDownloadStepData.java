@@ -22,6 +22,14 @@
 
 package org.pentaho.di.sdk.plugin.steps.pagedownload;
 
+import java.util.LinkedList;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import javax.management.ObjectName;
+
 import org.pentaho.di.core.row.RowMetaInterface;
 import org.pentaho.di.trans.step.BaseStepData;
 import org.pentaho.di.trans.step.StepDataInterface;
@@ -50,6 +58,67 @@ public class PageDownloadStepData extends BaseStepData implements StepDataInterf
 
 	public RowMetaInterface outputRowMeta;
 	public RowMetaInterface inputRowMeta;
+
+	// number of downloads allowed to run at the same time, 1 means inline
+	public int maxInFlight;
+	public boolean preserveOrder;
+
+	// keep-alive connections, shared with the other copies of this step
+	public HttpClientPool httpClientPool;
+
+	// persistent response cache, null if disabled
+	public DiskCache diskCache;
+
+	// in-memory cache for repeated URLs, shared with the other copies, null if disabled
+	public MemoryCache memoryCache;
+
+	// temporary files for bodies above the spill threshold, null if disabled
+	public SpillFiles spillFiles;
+
+	// URLs completed by earlier runs, which are looked up, and by this one,
+	// which are only written out; null if disabled. Whether the spilled
+	// bodies it records are passed on instead of leaving the rows out, and
+	// the rows resumed from it
+	public ResumeJournal journal;
+	public boolean journalReuse;
+	public long resumed;
+
+	// brings the URLs to one form before anything is looked up or
+	// downloaded, null to take them as they are
+	public UrlCanonicalizer canonicalizer;
+
+	// links found by the crawl and not downloaded yet, null if not crawling,
+	// and the number of links taken from it
+	public CrawlFrontier frontier;
+	public long crawled;
+
+	// host name lookups of the engine, null if the JVM's resolver is used
+	public DnsCache dnsCache;
+
+	// downloads pages through the engine and caches above
+	public PageDownloader downloader;
+
+	// name the downloader's metrics are published under, null if they are not
+	public ObjectName metricsName;
+
+	// per host queues and rate limits in front of the worker pool, if enabled
+	public HostScheduler hostScheduler;
+
+	// tunes the number of downloads in flight between a minimum and
+	// maxInFlight, null to keep it at maxInFlight
+	public ConcurrencyLimit concurrencyLimit;
+	public int loggedLimit;
+
+	// worker pool and the downloads that have been dispatched but not emitted
+	public ExecutorService executor;
+	public LinkedList<Future<PageFetch>> inFlight = new LinkedList<Future<PageFetch>>();
+	public BlockingQueue<Future<PageFetch>> completed = new LinkedBlockingQueue<Future<PageFetch>>();
+	public int pending;
+
+	// next input row, read while waiting for downloads so its host can be
+	// looked up in the meantime, and whether the input is exhausted
+	public Object[] readAhead;
+	public boolean inputDone;
 	
     public PageDownloadStepData()
 	{
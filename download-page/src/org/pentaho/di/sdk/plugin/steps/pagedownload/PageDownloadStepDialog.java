@@ -39,6 +39,7 @@ import org.eclipse.swt.layout.FormData;
 import org.eclipse.swt.layout.FormLayout;
 import org.eclipse.swt.widgets.Button;
 import org.eclipse.swt.widgets.Combo;
+import org.eclipse.swt.widgets.Control;
 import org.eclipse.swt.widgets.Display;
 import org.eclipse.swt.widgets.Event;
 import org.eclipse.swt.widgets.Label;
@@ -96,6 +97,64 @@ public class PageDownloadStepDialog extends BaseStepDialog implements StepDialog
 	
 	private LabelComboVar lcvPreviousColumns;
 	
+	private LabelTextVar maxInFlight;
+	private LabelTextVar minInFlight;
+	
+	private Button bPreserveOrder;
+	
+	private Button bVirtualThreads;
+	
+	private LabelTextVar maxConnectionsPerHost;
+	
+	private LabelTextVar maxConnections;
+	
+	private LabelTextVar idleConnectionTimeout;
+	private LabelTextVar dnsCacheTtl;
+	
+	private Combo wEngine;
+
+	private Combo wMethod;
+	
+	private LabelTextVar hostRequestsPerSecond;
+	
+	private LabelTextVar maxConcurrentPerHost;
+	
+	private LabelTextVar cacheDirectory;
+	
+	private LabelTextVar cacheMaxSize;
+	
+	private LabelTextVar memoryCacheSize;
+	
+	private LabelTextVar memoryCacheTtl;
+
+	private LabelTextVar spillThreshold;
+	private LabelTextVar spillDirectory;
+	private LabelTextVar maxBodySize;
+
+	private Button bBinaryContent;
+	private Button bResponseFields;
+	private Button bTimingFields;
+
+	private LabelTextVar connectTimeout;
+	private LabelTextVar readTimeout;
+	private LabelTextVar totalTimeout;
+	private LabelTextVar maxRetries;
+	private LabelTextVar retryBackoff;
+	private LabelTextVar breakerErrorRate;
+	private LabelTextVar breakerOpenTime;
+
+	private LabelTextVar journalFile;
+	private Combo wJournalMode;
+
+	private Button bCrawl;
+	private LabelTextVar crawlMaxDepth;
+	private LabelTextVar crawlMaxPages;
+	private LabelTextVar crawlAllowPattern;
+
+	private Button bCanonicalizeUrls;
+	private LabelTextVar stripParameters;
+	private Button bSortParameters;
+	
 	private String[] fieldNames;
 
 	/**
@@ -168,6 +227,13 @@ public class PageDownloadStepDialog extends BaseStepDialog implements StepDialog
 			}
 		};
 		
+		// The SelectionListener used on check boxes that only need to flag a change
+		SelectionAdapter lsChanged = new SelectionAdapter() {
+			public void widgetSelected(SelectionEvent e) {
+				meta.setChanged();
+			}
+		};
+		
 		// ------------------------------------------------------- //
 		// SWT code for building the actual settings dialog        //
 		// ------------------------------------------------------- //
@@ -271,13 +337,283 @@ public class PageDownloadStepDialog extends BaseStepDialog implements StepDialog
 		lcvPreviousColumns.setEnabled(meta.getGetUrlFromPreviousFields());
 		urlFieldName.setEnabled(!meta.getGetUrlFromPreviousFields());
 		
+		// Number of concurrent downloads
+		maxInFlight = addTextVar("PageDownloadStep.MaxInFlight", lcvPreviousColumns, lsMod);
+		minInFlight = addTextVar("PageDownloadStep.MinInFlight", maxInFlight, lsMod);
+		
+		// Checkbox for keeping the input order
+		Label lPreserveOrder = new Label(shell, SWT.RIGHT);
+		lPreserveOrder.setText(BaseMessages.getString(PKG, "PageDownloadStep.PreserveOrder.Label")); 
+		props.setLook(lPreserveOrder);
+		FormData fdlPreserveOrder = new FormData();
+		fdlPreserveOrder.left = new FormAttachment(0, 0);
+		fdlPreserveOrder.right = new FormAttachment(middle, -margin);
+		fdlPreserveOrder.top = new FormAttachment(maxInFlight, margin);
+		lPreserveOrder.setLayoutData(fdlPreserveOrder);
+		
+		bPreserveOrder = new Button(shell, SWT.CHECK | SWT.LEFT);
+		bPreserveOrder.setToolTipText(BaseMessages.getString(PKG, "PageDownloadStep.PreserveOrder.Tooltip"));
+		props.setLook(bPreserveOrder);
+		FormData fdbPreserveOrder = new FormData();
+		fdbPreserveOrder.left = new FormAttachment(middle, 0);
+		fdbPreserveOrder.right = new FormAttachment(100, 0);
+		fdbPreserveOrder.top = new FormAttachment(maxInFlight, margin);
+		bPreserveOrder.setLayoutData(fdbPreserveOrder);
+		bPreserveOrder.addSelectionListener(lsChanged);
+		
+		// Checkbox for running the downloads on virtual threads
+		Label lVirtualThreads = new Label(shell, SWT.RIGHT);
+		lVirtualThreads.setText(BaseMessages.getString(PKG, "PageDownloadStep.VirtualThreads.Label")); 
+		props.setLook(lVirtualThreads);
+		FormData fdlVirtualThreads = new FormData();
+		fdlVirtualThreads.left = new FormAttachment(0, 0);
+		fdlVirtualThreads.right = new FormAttachment(middle, -margin);
+		fdlVirtualThreads.top = new FormAttachment(bPreserveOrder, margin);
+		lVirtualThreads.setLayoutData(fdlVirtualThreads);
+		
+		bVirtualThreads = new Button(shell, SWT.CHECK | SWT.LEFT);
+		bVirtualThreads.setToolTipText(BaseMessages.getString(PKG, "PageDownloadStep.VirtualThreads.Tooltip"));
+		props.setLook(bVirtualThreads);
+		FormData fdbVirtualThreads = new FormData();
+		fdbVirtualThreads.left = new FormAttachment(middle, 0);
+		fdbVirtualThreads.right = new FormAttachment(100, 0);
+		fdbVirtualThreads.top = new FormAttachment(bPreserveOrder, margin);
+		bVirtualThreads.setLayoutData(fdbVirtualThreads);
+		bVirtualThreads.addSelectionListener(lsChanged);
+		
+		// Connection pool limits
+		maxConnectionsPerHost = addTextVar("PageDownloadStep.MaxConnectionsPerHost", bVirtualThreads, lsMod);
+		maxConnections = addTextVar("PageDownloadStep.MaxConnections", maxConnectionsPerHost, lsMod);
+		idleConnectionTimeout = addTextVar("PageDownloadStep.IdleConnectionTimeout", maxConnections, lsMod);
+		dnsCacheTtl = addTextVar("PageDownloadStep.DnsCacheTtl", idleConnectionTimeout, lsMod);
+		
+		// Transport
+		Label lEngine = new Label(shell, SWT.RIGHT);
+		lEngine.setText(BaseMessages.getString(PKG, "PageDownloadStep.Engine.Label")); 
+		props.setLook(lEngine);
+		FormData fdlEngine = new FormData();
+		fdlEngine.left = new FormAttachment(0, 0);
+		fdlEngine.right = new FormAttachment(middle, -margin);
+		fdlEngine.top = new FormAttachment(idleConnectionTimeout, margin);
+		lEngine.setLayoutData(fdlEngine);
+		
+		wEngine = new Combo(shell, SWT.SINGLE | SWT.READ_ONLY | SWT.BORDER);
+		wEngine.setToolTipText(BaseMessages.getString(PKG, "PageDownloadStep.Engine.Tooltip"));
+		for (String engine : PageDownloadStepMeta.ENGINES) {
+			wEngine.add(BaseMessages.getString(PKG, "PageDownloadStep.Engine." + engine));
+		}
+		props.setLook(wEngine);
+		FormData fdEngine = new FormData();
+		fdEngine.left = new FormAttachment(middle, 0);
+		fdEngine.right = new FormAttachment(100, 0);
+		fdEngine.top = new FormAttachment(idleConnectionTimeout, margin);
+		wEngine.setLayoutData(fdEngine);
+		wEngine.addModifyListener(lsMod);
+		
+		// Politeness limits per host
+		// HTTP method
+		Label lMethod = new Label(shell, SWT.RIGHT);
+		lMethod.setText(BaseMessages.getString(PKG, "PageDownloadStep.Method.Label")); 
+		props.setLook(lMethod);
+		FormData fdlMethod = new FormData();
+		fdlMethod.left = new FormAttachment(0, 0);
+		fdlMethod.right = new FormAttachment(middle, -margin);
+		fdlMethod.top = new FormAttachment(wEngine, margin);
+		lMethod.setLayoutData(fdlMethod);
+
+		wMethod = new Combo(shell, SWT.SINGLE | SWT.READ_ONLY | SWT.BORDER);
+		wMethod.setToolTipText(BaseMessages.getString(PKG, "PageDownloadStep.Method.Tooltip"));
+		wMethod.setItems(PageDownloadStepMeta.METHODS);
+		props.setLook(wMethod);
+		FormData fdMethod = new FormData();
+		fdMethod.left = new FormAttachment(middle, 0);
+		fdMethod.right = new FormAttachment(100, 0);
+		fdMethod.top = new FormAttachment(wEngine, margin);
+		wMethod.setLayoutData(fdMethod);
+		wMethod.addModifyListener(lsMod);
+
+		hostRequestsPerSecond = addTextVar("PageDownloadStep.HostRequestsPerSecond", wMethod, lsMod);
+		maxConcurrentPerHost = addTextVar("PageDownloadStep.MaxConcurrentPerHost", hostRequestsPerSecond, lsMod);
+		
+		// Persistent response cache
+		cacheDirectory = addTextVar("PageDownloadStep.CacheDirectory", maxConcurrentPerHost, lsMod);
+		cacheMaxSize = addTextVar("PageDownloadStep.CacheMaxSize", cacheDirectory, lsMod);
+		
+		// In-memory cache for repeated URLs
+		memoryCacheSize = addTextVar("PageDownloadStep.MemoryCacheSize", cacheMaxSize, lsMod);
+		memoryCacheTtl = addTextVar("PageDownloadStep.MemoryCacheTtl", memoryCacheSize, lsMod);
+
+		// Large bodies written to temporary files
+		spillThreshold = addTextVar("PageDownloadStep.SpillThreshold", memoryCacheTtl, lsMod);
+		spillDirectory = addTextVar("PageDownloadStep.SpillDirectory", spillThreshold, lsMod);
+		maxBodySize = addTextVar("PageDownloadStep.MaxBodySize", spillDirectory, lsMod);
+
+		// Checkbox for passing the content on as raw bytes
+		Label lBinaryContent = new Label(shell, SWT.RIGHT);
+		lBinaryContent.setText(BaseMessages.getString(PKG, "PageDownloadStep.BinaryContent.Label")); 
+		props.setLook(lBinaryContent);
+		FormData fdlBinaryContent = new FormData();
+		fdlBinaryContent.left = new FormAttachment(0, 0);
+		fdlBinaryContent.right = new FormAttachment(middle, -margin);
+		fdlBinaryContent.top = new FormAttachment(maxBodySize, margin);
+		lBinaryContent.setLayoutData(fdlBinaryContent);
+
+		bBinaryContent = new Button(shell, SWT.CHECK | SWT.LEFT);
+		bBinaryContent.setToolTipText(BaseMessages.getString(PKG, "PageDownloadStep.BinaryContent.Tooltip"));
+		props.setLook(bBinaryContent);
+		FormData fdbBinaryContent = new FormData();
+		fdbBinaryContent.left = new FormAttachment(middle, 0);
+		fdbBinaryContent.right = new FormAttachment(100, 0);
+		fdbBinaryContent.top = new FormAttachment(maxBodySize, margin);
+		bBinaryContent.setLayoutData(fdbBinaryContent);
+		bBinaryContent.addSelectionListener(lsChanged);
+
+		// Checkbox for adding the status, final URL, content type and size
+		Label lResponseFields = new Label(shell, SWT.RIGHT);
+		lResponseFields.setText(BaseMessages.getString(PKG, "PageDownloadStep.ResponseFields.Label")); 
+		props.setLook(lResponseFields);
+		FormData fdlResponseFields = new FormData();
+		fdlResponseFields.left = new FormAttachment(0, 0);
+		fdlResponseFields.right = new FormAttachment(middle, -margin);
+		fdlResponseFields.top = new FormAttachment(bBinaryContent, margin);
+		lResponseFields.setLayoutData(fdlResponseFields);
+
+		bResponseFields = new Button(shell, SWT.CHECK | SWT.LEFT);
+		bResponseFields.setToolTipText(BaseMessages.getString(PKG, "PageDownloadStep.ResponseFields.Tooltip"));
+		props.setLook(bResponseFields);
+		FormData fdbResponseFields = new FormData();
+		fdbResponseFields.left = new FormAttachment(middle, 0);
+		fdbResponseFields.right = new FormAttachment(100, 0);
+		fdbResponseFields.top = new FormAttachment(bBinaryContent, margin);
+		bResponseFields.setLayoutData(fdbResponseFields);
+		bResponseFields.addSelectionListener(lsChanged);
+
+		// Checkbox for adding the time spent in each phase of a request
+		Label lTimingFields = new Label(shell, SWT.RIGHT);
+		lTimingFields.setText(BaseMessages.getString(PKG, "PageDownloadStep.TimingFields.Label")); 
+		props.setLook(lTimingFields);
+		FormData fdlTimingFields = new FormData();
+		fdlTimingFields.left = new FormAttachment(0, 0);
+		fdlTimingFields.right = new FormAttachment(middle, -margin);
+		fdlTimingFields.top = new FormAttachment(bResponseFields, margin);
+		lTimingFields.setLayoutData(fdlTimingFields);
+
+		bTimingFields = new Button(shell, SWT.CHECK | SWT.LEFT);
+		bTimingFields.setToolTipText(BaseMessages.getString(PKG, "PageDownloadStep.TimingFields.Tooltip"));
+		props.setLook(bTimingFields);
+		FormData fdbTimingFields = new FormData();
+		fdbTimingFields.left = new FormAttachment(middle, 0);
+		fdbTimingFields.right = new FormAttachment(100, 0);
+		fdbTimingFields.top = new FormAttachment(bResponseFields, margin);
+		bTimingFields.setLayoutData(fdbTimingFields);
+		bTimingFields.addSelectionListener(lsChanged);
+
+		// Timeouts, retries and circuit breaker
+		connectTimeout = addTextVar("PageDownloadStep.ConnectTimeout", bTimingFields, lsMod);
+		readTimeout = addTextVar("PageDownloadStep.ReadTimeout", connectTimeout, lsMod);
+		totalTimeout = addTextVar("PageDownloadStep.TotalTimeout", readTimeout, lsMod);
+		maxRetries = addTextVar("PageDownloadStep.MaxRetries", totalTimeout, lsMod);
+		retryBackoff = addTextVar("PageDownloadStep.RetryBackoff", maxRetries, lsMod);
+		breakerErrorRate = addTextVar("PageDownloadStep.BreakerErrorRate", retryBackoff, lsMod);
+		breakerOpenTime = addTextVar("PageDownloadStep.BreakerOpenTime", breakerErrorRate, lsMod);
+
+		// Journal of completed URLs for restarts
+		journalFile = addTextVar("PageDownloadStep.JournalFile", breakerOpenTime, lsMod);
+
+		Label lJournalMode = new Label(shell, SWT.RIGHT);
+		lJournalMode.setText(BaseMessages.getString(PKG, "PageDownloadStep.JournalMode.Label")); 
+		props.setLook(lJournalMode);
+		FormData fdlJournalMode = new FormData();
+		fdlJournalMode.left = new FormAttachment(0, 0);
+		fdlJournalMode.right = new FormAttachment(middle, -margin);
+		fdlJournalMode.top = new FormAttachment(journalFile, margin);
+		lJournalMode.setLayoutData(fdlJournalMode);
+
+		wJournalMode = new Combo(shell, SWT.SINGLE | SWT.READ_ONLY | SWT.BORDER);
+		wJournalMode.setToolTipText(BaseMessages.getString(PKG, "PageDownloadStep.JournalMode.Tooltip"));
+		for (String mode : PageDownloadStepMeta.JOURNAL_MODES) {
+			wJournalMode.add(BaseMessages.getString(PKG, "PageDownloadStep.JournalMode." + mode));
+		}
+		props.setLook(wJournalMode);
+		FormData fdJournalMode = new FormData();
+		fdJournalMode.left = new FormAttachment(middle, 0);
+		fdJournalMode.right = new FormAttachment(100, 0);
+		fdJournalMode.top = new FormAttachment(journalFile, margin);
+		wJournalMode.setLayoutData(fdJournalMode);
+		wJournalMode.addModifyListener(lsMod);
+
+		// Checkbox for following the links of the pages, and its limits
+		Label lCrawl = new Label(shell, SWT.RIGHT);
+		lCrawl.setText(BaseMessages.getString(PKG, "PageDownloadStep.Crawl.Label")); 
+		props.setLook(lCrawl);
+		FormData fdlCrawl = new FormData();
+		fdlCrawl.left = new FormAttachment(0, 0);
+		fdlCrawl.right = new FormAttachment(middle, -margin);
+		fdlCrawl.top = new FormAttachment(wJournalMode, margin);
+		lCrawl.setLayoutData(fdlCrawl);
+
+		bCrawl = new Button(shell, SWT.CHECK | SWT.LEFT);
+		bCrawl.setToolTipText(BaseMessages.getString(PKG, "PageDownloadStep.Crawl.Tooltip"));
+		props.setLook(bCrawl);
+		FormData fdbCrawl = new FormData();
+		fdbCrawl.left = new FormAttachment(middle, 0);
+		fdbCrawl.right = new FormAttachment(100, 0);
+		fdbCrawl.top = new FormAttachment(wJournalMode, margin);
+		bCrawl.setLayoutData(fdbCrawl);
+		bCrawl.addSelectionListener(lsChanged);
+
+		crawlMaxDepth = addTextVar("PageDownloadStep.CrawlMaxDepth", bCrawl, lsMod);
+		crawlMaxPages = addTextVar("PageDownloadStep.CrawlMaxPages", crawlMaxDepth, lsMod);
+		crawlAllowPattern = addTextVar("PageDownloadStep.CrawlAllowPattern", crawlMaxPages, lsMod);
+
+		// Checkbox for bringing the URLs to one form, and its rules
+		Label lCanonicalizeUrls = new Label(shell, SWT.RIGHT);
+		lCanonicalizeUrls.setText(BaseMessages.getString(PKG, "PageDownloadStep.CanonicalizeUrls.Label")); 
+		props.setLook(lCanonicalizeUrls);
+		FormData fdlCanonicalizeUrls = new FormData();
+		fdlCanonicalizeUrls.left = new FormAttachment(0, 0);
+		fdlCanonicalizeUrls.right = new FormAttachment(middle, -margin);
+		fdlCanonicalizeUrls.top = new FormAttachment(crawlAllowPattern, margin);
+		lCanonicalizeUrls.setLayoutData(fdlCanonicalizeUrls);
+
+		bCanonicalizeUrls = new Button(shell, SWT.CHECK | SWT.LEFT);
+		bCanonicalizeUrls.setToolTipText(BaseMessages.getString(PKG, "PageDownloadStep.CanonicalizeUrls.Tooltip"));
+		props.setLook(bCanonicalizeUrls);
+		FormData fdbCanonicalizeUrls = new FormData();
+		fdbCanonicalizeUrls.left = new FormAttachment(middle, 0);
+		fdbCanonicalizeUrls.right = new FormAttachment(100, 0);
+		fdbCanonicalizeUrls.top = new FormAttachment(crawlAllowPattern, margin);
+		bCanonicalizeUrls.setLayoutData(fdbCanonicalizeUrls);
+		bCanonicalizeUrls.addSelectionListener(lsChanged);
+
+		stripParameters = addTextVar("PageDownloadStep.StripParameters", bCanonicalizeUrls, lsMod);
+
+		Label lSortParameters = new Label(shell, SWT.RIGHT);
+		lSortParameters.setText(BaseMessages.getString(PKG, "PageDownloadStep.SortParameters.Label")); 
+		props.setLook(lSortParameters);
+		FormData fdlSortParameters = new FormData();
+		fdlSortParameters.left = new FormAttachment(0, 0);
+		fdlSortParameters.right = new FormAttachment(middle, -margin);
+		fdlSortParameters.top = new FormAttachment(stripParameters, margin);
+		lSortParameters.setLayoutData(fdlSortParameters);
+
+		bSortParameters = new Button(shell, SWT.CHECK | SWT.LEFT);
+		bSortParameters.setToolTipText(BaseMessages.getString(PKG, "PageDownloadStep.SortParameters.Tooltip"));
+		props.setLook(bSortParameters);
+		FormData fdbSortParameters = new FormData();
+		fdbSortParameters.left = new FormAttachment(middle, 0);
+		fdbSortParameters.right = new FormAttachment(100, 0);
+		fdbSortParameters.top = new FormAttachment(stripParameters, margin);
+		bSortParameters.setLayoutData(fdbSortParameters);
+		bSortParameters.addSelectionListener(lsChanged);
+		
 		// OK and cancel buttons
 		wOK = new Button(shell, SWT.PUSH);
 		wOK.setText(BaseMessages.getString(PKG, "System.Button.OK")); 
 		wCancel = new Button(shell, SWT.PUSH);
 		wCancel.setText(BaseMessages.getString(PKG, "System.Button.Cancel")); 
 
-		BaseStepDialog.positionBottomButtons(shell, new Button[] { wOK, wCancel }, margin, lcvPreviousColumns);
+		BaseStepDialog.positionBottomButtons(shell, new Button[] { wOK, wCancel }, margin, bSortParameters);
 
 		// Add listeners for cancel and OK
 		lsCancel = new Listener() {
@@ -339,6 +675,62 @@ public class PageDownloadStepDialog extends BaseStepDialog implements StepDialog
 		if(meta.getGetUrlFromPreviousFields()) {
 			lcvPreviousColumns.setText(meta.getPrevURLField());
 		}
+		maxInFlight.setText(meta.getMaxInFlight());
+		minInFlight.setText(meta.getMinInFlight());
+		bPreserveOrder.setSelection(meta.getPreserveOrder());
+		bVirtualThreads.setSelection(meta.getVirtualThreads());
+		maxConnectionsPerHost.setText(meta.getMaxConnectionsPerHost());
+		maxConnections.setText(meta.getMaxConnections());
+		idleConnectionTimeout.setText(meta.getIdleConnectionTimeout());
+		dnsCacheTtl.setText(meta.getDnsCacheTtl());
+		wEngine.select(Math.max(0, Arrays.asList(PageDownloadStepMeta.ENGINES).indexOf(meta.getEngine())));
+		wMethod.select(Math.max(0, Arrays.asList(PageDownloadStepMeta.METHODS).indexOf(meta.getMethod())));
+		hostRequestsPerSecond.setText(meta.getHostRequestsPerSecond());
+		maxConcurrentPerHost.setText(meta.getMaxConcurrentPerHost());
+		cacheDirectory.setText(meta.getCacheDirectory());
+		cacheMaxSize.setText(meta.getCacheMaxSize());
+		memoryCacheSize.setText(meta.getMemoryCacheSize());
+		memoryCacheTtl.setText(meta.getMemoryCacheTtl());
+		spillThreshold.setText(meta.getSpillThreshold());
+		spillDirectory.setText(meta.getSpillDirectory());
+		maxBodySize.setText(meta.getMaxBodySize());
+		bBinaryContent.setSelection(meta.getBinaryContent());
+		bResponseFields.setSelection(meta.getResponseFields());
+		bTimingFields.setSelection(meta.getTimingFields());
+		connectTimeout.setText(meta.getConnectTimeout());
+		readTimeout.setText(meta.getReadTimeout());
+		totalTimeout.setText(meta.getTotalTimeout());
+		maxRetries.setText(meta.getMaxRetries());
+		retryBackoff.setText(meta.getRetryBackoff());
+		breakerErrorRate.setText(meta.getBreakerErrorRate());
+		breakerOpenTime.setText(meta.getBreakerOpenTime());
+		journalFile.setText(meta.getJournalFile());
+		wJournalMode.select(Math.max(0, Arrays.asList(PageDownloadStepMeta.JOURNAL_MODES).indexOf(meta.getJournalMode())));
+		bCrawl.setSelection(meta.getCrawl());
+		crawlMaxDepth.setText(meta.getCrawlMaxDepth());
+		crawlMaxPages.setText(meta.getCrawlMaxPages());
+		crawlAllowPattern.setText(meta.getCrawlAllowPattern());
+		bCanonicalizeUrls.setSelection(meta.getCanonicalizeUrls());
+		stripParameters.setText(meta.getStripParameters());
+		bSortParameters.setSelection(meta.getSortParameters());
+	}
+
+	/**
+	 * Adds a variable-enabled text setting below the given control. The label and
+	 * tooltip are read from the messages {key}.Label and {key}.Tooltip.
+	 */
+	private LabelTextVar addTextVar(String key, Control above, ModifyListener lsMod) {
+		LabelTextVar textVar = new LabelTextVar(transMeta, shell,
+				BaseMessages.getString( PKG, key + ".Label" ),
+				BaseMessages.getString( PKG, key + ".Tooltip" ) );
+		textVar.addModifyListener(lsMod);
+		props.setLook(textVar);
+		FormData fdTextVar = new FormData();
+		fdTextVar.left = new FormAttachment(0, 0);
+		fdTextVar.right = new FormAttachment(100, 0);
+		fdTextVar.top = new FormAttachment(above, Const.MARGIN);
+		textVar.setLayoutData(fdTextVar);
+		return textVar;
 	}
 
 	private void getPreviousFields( LabelComboVar combo ) {
@@ -392,6 +784,44 @@ public class PageDownloadStepDialog extends BaseStepDialog implements StepDialog
 		meta.setOutputField(outputFieldName.getText());
 		meta.setUrlField(urlFieldName.getText());
 		meta.setPrevURLField(lcvPreviousColumns.isEnabled() ? lcvPreviousColumns.getText() : "");
+		meta.setMaxInFlight(maxInFlight.getText());
+		meta.setMinInFlight(minInFlight.getText());
+		meta.setPreserveOrder(bPreserveOrder.getSelection());
+		meta.setVirtualThreads(bVirtualThreads.getSelection());
+		meta.setMaxConnectionsPerHost(maxConnectionsPerHost.getText());
+		meta.setMaxConnections(maxConnections.getText());
+		meta.setIdleConnectionTimeout(idleConnectionTimeout.getText());
+		meta.setDnsCacheTtl(dnsCacheTtl.getText());
+		meta.setEngine(PageDownloadStepMeta.ENGINES[Math.max(0, wEngine.getSelectionIndex())]);
+		meta.setMethod(PageDownloadStepMeta.METHODS[Math.max(0, wMethod.getSelectionIndex())]);
+		meta.setHostRequestsPerSecond(hostRequestsPerSecond.getText());
+		meta.setMaxConcurrentPerHost(maxConcurrentPerHost.getText());
+		meta.setCacheDirectory(cacheDirectory.getText());
+		meta.setCacheMaxSize(cacheMaxSize.getText());
+		meta.setMemoryCacheSize(memoryCacheSize.getText());
+		meta.setMemoryCacheTtl(memoryCacheTtl.getText());
+		meta.setSpillThreshold(spillThreshold.getText());
+		meta.setSpillDirectory(spillDirectory.getText());
+		meta.setMaxBodySize(maxBodySize.getText());
+		meta.setBinaryContent(bBinaryContent.getSelection());
+		meta.setResponseFields(bResponseFields.getSelection());
+		meta.setTimingFields(bTimingFields.getSelection());
+		meta.setConnectTimeout(connectTimeout.getText());
+		meta.setReadTimeout(readTimeout.getText());
+		meta.setTotalTimeout(totalTimeout.getText());
+		meta.setMaxRetries(maxRetries.getText());
+		meta.setRetryBackoff(retryBackoff.getText());
+		meta.setBreakerErrorRate(breakerErrorRate.getText());
+		meta.setBreakerOpenTime(breakerOpenTime.getText());
+		meta.setJournalFile(journalFile.getText());
+		meta.setJournalMode(PageDownloadStepMeta.JOURNAL_MODES[Math.max(0, wJournalMode.getSelectionIndex())]);
+		meta.setCrawl(bCrawl.getSelection());
+		meta.setCrawlMaxDepth(crawlMaxDepth.getText());
+		meta.setCrawlMaxPages(crawlMaxPages.getText());
+		meta.setCrawlAllowPattern(crawlAllowPattern.getText());
+		meta.setCanonicalizeUrls(bCanonicalizeUrls.getSelection());
+		meta.setStripParameters(stripParameters.getText());
+		meta.setSortParameters(bSortParameters.getSelection());
 		// close the SWT dialog window
 		dispose();
 	}
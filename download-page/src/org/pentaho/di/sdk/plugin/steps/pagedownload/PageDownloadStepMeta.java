@@ -27,6 +27,7 @@ import java.util.List;
 import org.eclipse.swt.widgets.Shell;
 import org.pentaho.di.core.CheckResult;
 import org.pentaho.di.core.CheckResultInterface;
+import org.pentaho.di.core.Const;
 import org.pentaho.di.core.annotations.Step;
 import org.pentaho.di.core.database.DatabaseMeta;
 import org.pentaho.di.core.exception.KettleException;
@@ -86,6 +87,82 @@ public class PageDownloadStepMeta extends BaseStepMeta implements StepMetaInterf
 	 *	{the package of the class specified}/messages/messages_{locale}.properties   
 	 */
 	private static Class<?> PKG = PageDownloadStepMeta.class; // for i18n purposes
+
+	/**
+	 * Codes of the transports the step can download with, as stored in the
+	 * step settings.
+	 */
+	public static final String ENGINE_HTTP1 = "http1";
+	public static final String ENGINE_HTTP2 = "http2";
+	public static final String ENGINE_NIO = "nio";
+	public static final String[] ENGINES = { ENGINE_HTTP1, ENGINE_HTTP2, ENGINE_NIO };
+
+	/**
+	 * HTTP methods the step can send. HEAD only reports the status and
+	 * headers of each URL and never downloads a body.
+	 */
+	public static final String METHOD_GET = "GET";
+	public static final String METHOD_POST = "POST";
+	public static final String METHOD_HEAD = "HEAD";
+	public static final String[] METHODS = { METHOD_GET, METHOD_POST, METHOD_HEAD };
+
+	/**
+	 * What a restarted run does with a URL found in the journal: leave its row
+	 * out, or pass on the spilled body recorded with it. A URL recorded
+	 * without a spilled body is downloaded again when reusing.
+	 */
+	public static final String JOURNAL_SKIP = "skip";
+	public static final String JOURNAL_REUSE = "reuse";
+	public static final String[] JOURNAL_MODES = { JOURNAL_SKIP, JOURNAL_REUSE };
+
+	/**
+	 * Suffixes of the fields referencing a body written to a temporary file.
+	 */
+	public static final String SPILL_FILE_SUFFIX = "_file";
+	public static final String SPILL_LENGTH_SUFFIX = "_length";
+	public static final String SPILL_HASH_SUFFIX = "_sha256";
+
+	/**
+	 * Suffix of the flag telling that only the start of the body was kept.
+	 */
+	public static final String TRUNCATED_SUFFIX = "_truncated";
+
+	/**
+	 * Suffixes of the fields describing the response.
+	 */
+	public static final String STATUS_SUFFIX = "_status";
+	public static final String FINAL_URL_SUFFIX = "_final_url";
+	public static final String CONTENT_TYPE_SUFFIX = "_content_type";
+	public static final String BYTES_SUFFIX = "_bytes";
+	public static final String SOURCE_SUFFIX = "_source";
+
+	/**
+	 * Suffixes of the fields with the time in milliseconds spent in each phase
+	 * of the request.
+	 */
+	public static final String DNS_TIME_SUFFIX = "_dns_ms";
+	public static final String CONNECT_TIME_SUFFIX = "_connect_ms";
+	public static final String TLS_TIME_SUFFIX = "_tls_ms";
+	public static final String FIRST_BYTE_TIME_SUFFIX = "_ttfb_ms";
+	public static final String DOWNLOAD_TIME_SUFFIX = "_download_ms";
+
+	/**
+	 * Suffixes of the fields telling how a crawl reached the URL.
+	 */
+	public static final String DEPTH_SUFFIX = "_depth";
+	public static final String REFERRER_SUFFIX = "_referrer";
+
+	/**
+	 * Pages a crawl downloads when no limit is set, about 1.2 MB of visited
+	 * URLs.
+	 */
+	public static final String DEFAULT_CRAWL_MAX_PAGES = "1000000";
+
+	/**
+	 * Query parameters removed from the URLs by default, the common tracking
+	 * parameters.
+	 */
+	public static final String DEFAULT_STRIP_PARAMETERS = "utm_\\w+|gclid|fbclid|msclkid|mc_cid|mc_eid";
 	
 	/**
 	 * Stores the name of the field added to the row-stream. 
@@ -95,6 +172,144 @@ public class PageDownloadStepMeta extends BaseStepMeta implements StepMetaInterf
 	private boolean getUrlFromPreviousFields = false;
 	private String prevURLField = "";
 
+	/**
+	 * Number of downloads the step may have running at the same time, the
+	 * lower bound when that number is tuned to the observed latency (empty to
+	 * keep it fixed), and whether rows leave the step in input order or as
+	 * their downloads finish.
+	 */
+	private String maxInFlight = "1";
+	private String minInFlight = "";
+	private boolean preserveOrder = true;
+
+	/**
+	 * Run each download on its own virtual thread instead of a pool thread,
+	 * on JVMs that have them.
+	 */
+	private boolean virtualThreads = false;
+
+	/**
+	 * Limits of the keep-alive connection pool shared by the step copies, and
+	 * the number of seconds an unused connection is kept open.
+	 */
+	private String maxConnectionsPerHost = "20";
+	private String maxConnections = "200";
+	private String idleConnectionTimeout = "30";
+
+	/**
+	 * Seconds host name lookups are kept by the step, successful or not,
+	 * regardless of the JVM's DNS cache settings; empty to use the JVM's
+	 * resolver.
+	 */
+	private String dnsCacheTtl = "60";
+
+	/**
+	 * Transport used for the downloads, one of the ENGINE_ codes.
+	 */
+	private String engine = ENGINE_HTTP1;
+
+	/**
+	 * HTTP method of the requests, one of the METHOD_ codes.
+	 */
+	private String method = METHOD_GET;
+
+	/**
+	 * Politeness limits applied to every host, empty or 0 for no limit.
+	 */
+	private String hostRequestsPerSecond = "";
+	private String maxConcurrentPerHost = "";
+
+	/**
+	 * Directory of the persistent response cache, empty to disable it, and its
+	 * size limit in megabytes.
+	 */
+	private String cacheDirectory = "";
+	private String cacheMaxSize = "1024";
+
+	/**
+	 * Heap budget in megabytes of the in-memory cache for repeated URLs, empty
+	 * to disable it, and the seconds a cached page stays valid.
+	 */
+	private String memoryCacheSize = "";
+	private String memoryCacheTtl = "";
+
+	/**
+	 * Size in megabytes above which a response body is written to a temporary
+	 * file instead of the row, empty to always keep it in the row, and the
+	 * directory the files are created in.
+	 */
+	private String spillThreshold = "";
+	private String spillDirectory = "";
+
+	/**
+	 * Kilobytes of a body kept for the row, the rest is not downloaded and
+	 * the row is flagged as truncated; empty to keep the whole body.
+	 */
+	private String maxBodySize = "";
+
+	/**
+	 * Pass the body on as raw bytes in a binary field instead of decoding it
+	 * to a string.
+	 */
+	private boolean binaryContent = false;
+
+	/**
+	 * Add the status, final URL, content type and size of each response, and
+	 * the time spent in each phase of its request.
+	 */
+	private boolean responseFields = false;
+	private boolean timingFields = false;
+
+	/**
+	 * Seconds to wait for a connection, for data on an open connection and for
+	 * a whole request including its body, empty for no limit.
+	 */
+	private String connectTimeout = "10";
+	private String readTimeout = "30";
+	private String totalTimeout = "";
+
+	/**
+	 * Retries of a failed download and the base delay in milliseconds of the
+	 * exponential backoff between them.
+	 */
+	private String maxRetries = "2";
+	private String retryBackoff = "500";
+
+	/**
+	 * Percentage of failed requests among the recent requests to a host above
+	 * which further requests to it fail at once, empty to disable, and the
+	 * seconds the host is skipped before it is tried again.
+	 */
+	private String breakerErrorRate = "";
+	private String breakerOpenTime = "30";
+
+	/**
+	 * File recording the URLs completed so far, empty for none, and what a
+	 * restarted run does with a URL found in it, one of the JOURNAL_ codes.
+	 */
+	private String journalFile = "";
+	private String journalMode = JOURNAL_SKIP;
+
+	/**
+	 * Follow the links of the downloaded pages, from the URLs of the input
+	 * rows as seeds, up to a number of links from the seed and a number of
+	 * pages, which also sizes the set of visited URLs. Links leaving the site
+	 * of their seed are only followed if they match the allow pattern.
+	 */
+	private boolean crawl = false;
+	private String crawlMaxDepth = "2";
+	private String crawlMaxPages = DEFAULT_CRAWL_MAX_PAGES;
+	private String crawlAllowPattern = "";
+
+	/**
+	 * Bring every URL to one form before it is downloaded, removing the query
+	 * parameters whose name matches the strip pattern and sorting the others
+	 * by name if asked to.
+	 */
+	private boolean canonicalizeUrls = false;
+	private String stripParameters = DEFAULT_STRIP_PARAMETERS;
+	private boolean sortParameters = false;
+
 	/**
 	 * Constructor should call super() to make sure the base class has a chance to initialize properly.
 	 */
@@ -144,6 +359,44 @@ public class PageDownloadStepMeta extends BaseStepMeta implements StepMetaInterf
 	 */
 	public void setDefault() {
 		outputField = "page_content";
+		maxInFlight = "1";
+		minInFlight = "";
+		preserveOrder = true;
+		virtualThreads = false;
+		maxConnectionsPerHost = "20";
+		maxConnections = "200";
+		idleConnectionTimeout = "30";
+		dnsCacheTtl = "60";
+		engine = ENGINE_HTTP1;
+		method = METHOD_GET;
+		hostRequestsPerSecond = "";
+		maxConcurrentPerHost = "";
+		cacheDirectory = "";
+		cacheMaxSize = "1024";
+		memoryCacheSize = "";
+		memoryCacheTtl = "";
+		spillThreshold = "";
+		spillDirectory = "";
+		maxBodySize = "";
+		binaryContent = false;
+		responseFields = false;
+		timingFields = false;
+		connectTimeout = "10";
+		readTimeout = "30";
+		totalTimeout = "";
+		maxRetries = "2";
+		retryBackoff = "500";
+		breakerErrorRate = "";
+		breakerOpenTime = "30";
+		journalFile = "";
+		journalMode = JOURNAL_SKIP;
+		crawl = false;
+		crawlMaxDepth = "2";
+		crawlMaxPages = DEFAULT_CRAWL_MAX_PAGES;
+		crawlAllowPattern = "";
+		canonicalizeUrls = true;
+		stripParameters = DEFAULT_STRIP_PARAMETERS;
+		sortParameters = false;
 	}
 	
 	/**
@@ -185,6 +438,332 @@ public class PageDownloadStepMeta extends BaseStepMeta implements StepMetaInterf
 	public String getPrevURLField() {
 		return this.prevURLField;
 	}
+
+	public String getMaxInFlight() {
+		return maxInFlight;
+	}
+
+	public void setMaxInFlight(String maxInFlight) {
+		this.maxInFlight = maxInFlight;
+	}
+
+	public String getMinInFlight() {
+		return minInFlight;
+	}
+
+	public void setMinInFlight(String minInFlight) {
+		this.minInFlight = minInFlight;
+	}
+
+	public boolean getPreserveOrder() {
+		return preserveOrder;
+	}
+
+	public void setPreserveOrder(boolean preserveOrder) {
+		this.preserveOrder = preserveOrder;
+	}
+
+	public boolean getVirtualThreads() {
+		return virtualThreads;
+	}
+
+	public void setVirtualThreads(boolean virtualThreads) {
+		this.virtualThreads = virtualThreads;
+	}
+
+	public String getMaxConnectionsPerHost() {
+		return maxConnectionsPerHost;
+	}
+
+	public void setMaxConnectionsPerHost(String maxConnectionsPerHost) {
+		this.maxConnectionsPerHost = maxConnectionsPerHost;
+	}
+
+	public String getMaxConnections() {
+		return maxConnections;
+	}
+
+	public void setMaxConnections(String maxConnections) {
+		this.maxConnections = maxConnections;
+	}
+
+	public String getIdleConnectionTimeout() {
+		return idleConnectionTimeout;
+	}
+
+	public void setIdleConnectionTimeout(String idleConnectionTimeout) {
+		this.idleConnectionTimeout = idleConnectionTimeout;
+	}
+
+	public String getDnsCacheTtl() {
+		return dnsCacheTtl;
+	}
+
+	public void setDnsCacheTtl(String dnsCacheTtl) {
+		this.dnsCacheTtl = dnsCacheTtl;
+	}
+
+	public String getEngine() {
+		return engine;
+	}
+
+	public void setEngine(String engine) {
+		this.engine = engine;
+	}
+
+	public String getMethod() {
+		return method;
+	}
+
+	public void setMethod(String method) {
+		this.method = method;
+	}
+
+	public String getHostRequestsPerSecond() {
+		return hostRequestsPerSecond;
+	}
+
+	public void setHostRequestsPerSecond(String hostRequestsPerSecond) {
+		this.hostRequestsPerSecond = hostRequestsPerSecond;
+	}
+
+	public String getMaxConcurrentPerHost() {
+		return maxConcurrentPerHost;
+	}
+
+	public void setMaxConcurrentPerHost(String maxConcurrentPerHost) {
+		this.maxConcurrentPerHost = maxConcurrentPerHost;
+	}
+
+	public String getCacheDirectory() {
+		return cacheDirectory;
+	}
+
+	public void setCacheDirectory(String cacheDirectory) {
+		this.cacheDirectory = cacheDirectory;
+	}
+
+	public String getCacheMaxSize() {
+		return cacheMaxSize;
+	}
+
+	public void setCacheMaxSize(String cacheMaxSize) {
+		this.cacheMaxSize = cacheMaxSize;
+	}
+
+	public String getMemoryCacheSize() {
+		return memoryCacheSize;
+	}
+
+	public void setMemoryCacheSize(String memoryCacheSize) {
+		this.memoryCacheSize = memoryCacheSize;
+	}
+
+	public String getMemoryCacheTtl() {
+		return memoryCacheTtl;
+	}
+
+	public void setMemoryCacheTtl(String memoryCacheTtl) {
+		this.memoryCacheTtl = memoryCacheTtl;
+	}
+
+	public String getSpillThreshold() {
+		return spillThreshold;
+	}
+
+	public void setSpillThreshold(String spillThreshold) {
+		this.spillThreshold = spillThreshold;
+	}
+
+	/**
+	 * @param space
+	 *            resolves the variables in the threshold, as the step does
+	 *            when it starts
+	 * @return true if the fields referencing spilled bodies are added, only
+	 *         when bodies are spilled at all
+	 */
+	public boolean hasSpillFields(VariableSpace space) {
+		return Const.toLong(substitute(space, spillThreshold), 0) > 0;
+	}
+
+	public String getSpillDirectory() {
+		return spillDirectory;
+	}
+
+	public void setSpillDirectory(String spillDirectory) {
+		this.spillDirectory = spillDirectory;
+	}
+
+	public String getMaxBodySize() {
+		return maxBodySize;
+	}
+
+	public void setMaxBodySize(String maxBodySize) {
+		this.maxBodySize = maxBodySize;
+	}
+
+	/**
+	 * @param space
+	 *            resolves the variables in the size cap, as the step does when
+	 *            it starts
+	 * @return true if the flag of truncated bodies is added, only when bodies
+	 *         are capped at all
+	 */
+	public boolean hasTruncatedField(VariableSpace space) {
+		return Const.toLong(substitute(space, maxBodySize), 0) > 0;
+	}
+
+	public boolean getBinaryContent() {
+		return binaryContent;
+	}
+
+	public void setBinaryContent(boolean binaryContent) {
+		this.binaryContent = binaryContent;
+	}
+
+	public boolean getResponseFields() {
+		return responseFields;
+	}
+
+	public void setResponseFields(boolean responseFields) {
+		this.responseFields = responseFields;
+	}
+
+	public boolean getTimingFields() {
+		return timingFields;
+	}
+
+	public void setTimingFields(boolean timingFields) {
+		this.timingFields = timingFields;
+	}
+
+	public String getConnectTimeout() {
+		return connectTimeout;
+	}
+
+	public void setConnectTimeout(String connectTimeout) {
+		this.connectTimeout = connectTimeout;
+	}
+
+	public String getReadTimeout() {
+		return readTimeout;
+	}
+
+	public void setReadTimeout(String readTimeout) {
+		this.readTimeout = readTimeout;
+	}
+
+	public String getTotalTimeout() {
+		return totalTimeout;
+	}
+
+	public void setTotalTimeout(String totalTimeout) {
+		this.totalTimeout = totalTimeout;
+	}
+
+	public String getMaxRetries() {
+		return maxRetries;
+	}
+
+	public void setMaxRetries(String maxRetries) {
+		this.maxRetries = maxRetries;
+	}
+
+	public String getRetryBackoff() {
+		return retryBackoff;
+	}
+
+	public void setRetryBackoff(String retryBackoff) {
+		this.retryBackoff = retryBackoff;
+	}
+
+	public String getBreakerErrorRate() {
+		return breakerErrorRate;
+	}
+
+	public void setBreakerErrorRate(String breakerErrorRate) {
+		this.breakerErrorRate = breakerErrorRate;
+	}
+
+	public String getBreakerOpenTime() {
+		return breakerOpenTime;
+	}
+
+	public void setBreakerOpenTime(String breakerOpenTime) {
+		this.breakerOpenTime = breakerOpenTime;
+	}
+
+	public String getJournalFile() {
+		return journalFile;
+	}
+
+	public void setJournalFile(String journalFile) {
+		this.journalFile = journalFile;
+	}
+
+	public String getJournalMode() {
+		return journalMode;
+	}
+
+	public void setJournalMode(String journalMode) {
+		this.journalMode = journalMode;
+	}
+
+	public boolean getCrawl() {
+		return crawl;
+	}
+
+	public void setCrawl(boolean crawl) {
+		this.crawl = crawl;
+	}
+
+	public String getCrawlMaxDepth() {
+		return crawlMaxDepth;
+	}
+
+	public void setCrawlMaxDepth(String crawlMaxDepth) {
+		this.crawlMaxDepth = crawlMaxDepth;
+	}
+
+	public String getCrawlMaxPages() {
+		return crawlMaxPages;
+	}
+
+	public void setCrawlMaxPages(String crawlMaxPages) {
+		this.crawlMaxPages = crawlMaxPages;
+	}
+
+	public String getCrawlAllowPattern() {
+		return crawlAllowPattern;
+	}
+
+	public void setCrawlAllowPattern(String crawlAllowPattern) {
+		this.crawlAllowPattern = crawlAllowPattern;
+	}
+
+	public boolean getCanonicalizeUrls() {
+		return canonicalizeUrls;
+	}
+
+	public void setCanonicalizeUrls(boolean canonicalizeUrls) {
+		this.canonicalizeUrls = canonicalizeUrls;
+	}
+
+	public String getStripParameters() {
+		return stripParameters;
+	}
+
+	public void setStripParameters(String stripParameters) {
+		this.stripParameters = stripParameters;
+	}
+
+	public boolean getSortParameters() {
+		return sortParameters;
+	}
+
+	public void setSortParameters(boolean sortParameters) {
+		this.sortParameters = sortParameters;
+	}
 	
 	/**
 	 * This method is used when a step is duplicated in Spoon. It needs to return a deep copy of this
@@ -216,6 +795,44 @@ public class PageDownloadStepMeta extends BaseStepMeta implements StepMetaInterf
 		sb.append(XMLHandler.addTagValue("pageURL", urlField) + "\n");
 		sb.append(XMLHandler.addTagValue("getUrlFromPreviousFields", getUrlFromPreviousFields) + "\n");
 		sb.append(XMLHandler.addTagValue("prevURLField", prevURLField) + "\n");
+		sb.append(XMLHandler.addTagValue("maxInFlight", maxInFlight) + "\n");
+		sb.append(XMLHandler.addTagValue("minInFlight", minInFlight) + "\n");
+		sb.append(XMLHandler.addTagValue("preserveOrder", preserveOrder) + "\n");
+		sb.append(XMLHandler.addTagValue("virtualThreads", virtualThreads) + "\n");
+		sb.append(XMLHandler.addTagValue("maxConnectionsPerHost", maxConnectionsPerHost) + "\n");
+		sb.append(XMLHandler.addTagValue("maxConnections", maxConnections) + "\n");
+		sb.append(XMLHandler.addTagValue("idleConnectionTimeout", idleConnectionTimeout) + "\n");
+		sb.append(XMLHandler.addTagValue("dnsCacheTtl", dnsCacheTtl) + "\n");
+		sb.append(XMLHandler.addTagValue("engine", engine) + "\n");
+		sb.append(XMLHandler.addTagValue("method", method) + "\n");
+		sb.append(XMLHandler.addTagValue("hostRequestsPerSecond", hostRequestsPerSecond) + "\n");
+		sb.append(XMLHandler.addTagValue("maxConcurrentPerHost", maxConcurrentPerHost) + "\n");
+		sb.append(XMLHandler.addTagValue("cacheDirectory", cacheDirectory) + "\n");
+		sb.append(XMLHandler.addTagValue("cacheMaxSize", cacheMaxSize) + "\n");
+		sb.append(XMLHandler.addTagValue("memoryCacheSize", memoryCacheSize) + "\n");
+		sb.append(XMLHandler.addTagValue("memoryCacheTtl", memoryCacheTtl) + "\n");
+		sb.append(XMLHandler.addTagValue("spillThreshold", spillThreshold) + "\n");
+		sb.append(XMLHandler.addTagValue("spillDirectory", spillDirectory) + "\n");
+		sb.append(XMLHandler.addTagValue("maxBodySize", maxBodySize) + "\n");
+		sb.append(XMLHandler.addTagValue("binaryContent", binaryContent) + "\n");
+		sb.append(XMLHandler.addTagValue("responseFields", responseFields) + "\n");
+		sb.append(XMLHandler.addTagValue("timingFields", timingFields) + "\n");
+		sb.append(XMLHandler.addTagValue("connectTimeout", connectTimeout) + "\n");
+		sb.append(XMLHandler.addTagValue("readTimeout", readTimeout) + "\n");
+		sb.append(XMLHandler.addTagValue("totalTimeout", totalTimeout) + "\n");
+		sb.append(XMLHandler.addTagValue("maxRetries", maxRetries) + "\n");
+		sb.append(XMLHandler.addTagValue("retryBackoff", retryBackoff) + "\n");
+		sb.append(XMLHandler.addTagValue("breakerErrorRate", breakerErrorRate) + "\n");
+		sb.append(XMLHandler.addTagValue("breakerOpenTime", breakerOpenTime) + "\n");
+		sb.append(XMLHandler.addTagValue("journalFile", journalFile) + "\n");
+		sb.append(XMLHandler.addTagValue("journalMode", journalMode) + "\n");
+		sb.append(XMLHandler.addTagValue("crawl", crawl) + "\n");
+		sb.append(XMLHandler.addTagValue("crawlMaxDepth", crawlMaxDepth) + "\n");
+		sb.append(XMLHandler.addTagValue("crawlMaxPages", crawlMaxPages) + "\n");
+		sb.append(XMLHandler.addTagValue("crawlAllowPattern", crawlAllowPattern) + "\n");
+		sb.append(XMLHandler.addTagValue("canonicalizeUrls", canonicalizeUrls) + "\n");
+		sb.append(XMLHandler.addTagValue("stripParameters", stripParameters) + "\n");
+		sb.append(XMLHandler.addTagValue("sortParameters", sortParameters) + "\n");
 		return sb.toString();
 	}
 
@@ -241,6 +858,46 @@ public class PageDownloadStepMeta extends BaseStepMeta implements StepMetaInterf
 			} else {
 				setGetUrlFromPreviousFields(false);
 			}
+
+			// settings added after the first release are optional in older transformations
+			setMaxInFlight(Const.NVL(XMLHandler.getTagValue(stepnode, "maxInFlight"), "1"));
+			setMinInFlight(Const.NVL(XMLHandler.getTagValue(stepnode, "minInFlight"), ""));
+			setPreserveOrder(!"N".equals(XMLHandler.getTagValue(stepnode, "preserveOrder")));
+			setVirtualThreads("Y".equals(XMLHandler.getTagValue(stepnode, "virtualThreads")));
+			setMaxConnectionsPerHost(Const.NVL(XMLHandler.getTagValue(stepnode, "maxConnectionsPerHost"), "20"));
+			setMaxConnections(Const.NVL(XMLHandler.getTagValue(stepnode, "maxConnections"), "200"));
+			setIdleConnectionTimeout(Const.NVL(XMLHandler.getTagValue(stepnode, "idleConnectionTimeout"), "30"));
+			setDnsCacheTtl(Const.NVL(XMLHandler.getTagValue(stepnode, "dnsCacheTtl"), "60"));
+			setEngine(Const.NVL(XMLHandler.getTagValue(stepnode, "engine"), ENGINE_HTTP1));
+			setMethod(Const.NVL(XMLHandler.getTagValue(stepnode, "method"), METHOD_GET));
+			setHostRequestsPerSecond(Const.NVL(XMLHandler.getTagValue(stepnode, "hostRequestsPerSecond"), ""));
+			setMaxConcurrentPerHost(Const.NVL(XMLHandler.getTagValue(stepnode, "maxConcurrentPerHost"), ""));
+			setCacheDirectory(Const.NVL(XMLHandler.getTagValue(stepnode, "cacheDirectory"), ""));
+			setCacheMaxSize(Const.NVL(XMLHandler.getTagValue(stepnode, "cacheMaxSize"), "1024"));
+			setMemoryCacheSize(Const.NVL(XMLHandler.getTagValue(stepnode, "memoryCacheSize"), ""));
+			setMemoryCacheTtl(Const.NVL(XMLHandler.getTagValue(stepnode, "memoryCacheTtl"), ""));
+			setSpillThreshold(Const.NVL(XMLHandler.getTagValue(stepnode, "spillThreshold"), ""));
+			setSpillDirectory(Const.NVL(XMLHandler.getTagValue(stepnode, "spillDirectory"), ""));
+			setMaxBodySize(Const.NVL(XMLHandler.getTagValue(stepnode, "maxBodySize"), ""));
+			setBinaryContent("Y".equals(XMLHandler.getTagValue(stepnode, "binaryContent")));
+			setResponseFields("Y".equals(XMLHandler.getTagValue(stepnode, "responseFields")));
+			setTimingFields("Y".equals(XMLHandler.getTagValue(stepnode, "timingFields")));
+			setConnectTimeout(Const.NVL(XMLHandler.getTagValue(stepnode, "connectTimeout"), "10"));
+			setReadTimeout(Const.NVL(XMLHandler.getTagValue(stepnode, "readTimeout"), "30"));
+			setTotalTimeout(Const.NVL(XMLHandler.getTagValue(stepnode, "totalTimeout"), ""));
+			setMaxRetries(Const.NVL(XMLHandler.getTagValue(stepnode, "maxRetries"), "2"));
+			setRetryBackoff(Const.NVL(XMLHandler.getTagValue(stepnode, "retryBackoff"), "500"));
+			setBreakerErrorRate(Const.NVL(XMLHandler.getTagValue(stepnode, "breakerErrorRate"), ""));
+			setBreakerOpenTime(Const.NVL(XMLHandler.getTagValue(stepnode, "breakerOpenTime"), "30"));
+			setJournalFile(Const.NVL(XMLHandler.getTagValue(stepnode, "journalFile"), ""));
+			setJournalMode(Const.NVL(XMLHandler.getTagValue(stepnode, "journalMode"), JOURNAL_SKIP));
+			setCrawl("Y".equals(XMLHandler.getTagValue(stepnode, "crawl")));
+			setCrawlMaxDepth(Const.NVL(XMLHandler.getTagValue(stepnode, "crawlMaxDepth"), "2"));
+			setCrawlMaxPages(Const.NVL(XMLHandler.getTagValue(stepnode, "crawlMaxPages"), DEFAULT_CRAWL_MAX_PAGES));
+			setCrawlAllowPattern(Const.NVL(XMLHandler.getTagValue(stepnode, "crawlAllowPattern"), ""));
+			setCanonicalizeUrls("Y".equals(XMLHandler.getTagValue(stepnode, "canonicalizeUrls")));
+			setStripParameters(Const.NVL(XMLHandler.getTagValue(stepnode, "stripParameters"), DEFAULT_STRIP_PARAMETERS));
+			setSortParameters("Y".equals(XMLHandler.getTagValue(stepnode, "sortParameters")));
 			
 		} catch (Exception e) {
 			throw new KettleXMLException("Demo plugin unable to read step info from XML node", e);
@@ -260,6 +917,44 @@ public class PageDownloadStepMeta extends BaseStepMeta implements StepMetaInterf
 	{
 		try{
 			rep.saveStepAttribute(id_transformation, id_step, "outputfield", outputField); //$NON-NLS-1$
+			rep.saveStepAttribute(id_transformation, id_step, "maxInFlight", maxInFlight); //$NON-NLS-1$
+			rep.saveStepAttribute(id_transformation, id_step, "minInFlight", minInFlight); //$NON-NLS-1$
+			rep.saveStepAttribute(id_transformation, id_step, "preserveOrder", preserveOrder); //$NON-NLS-1$
+			rep.saveStepAttribute(id_transformation, id_step, "virtualThreads", virtualThreads); //$NON-NLS-1$
+			rep.saveStepAttribute(id_transformation, id_step, "maxConnectionsPerHost", maxConnectionsPerHost); //$NON-NLS-1$
+			rep.saveStepAttribute(id_transformation, id_step, "maxConnections", maxConnections); //$NON-NLS-1$
+			rep.saveStepAttribute(id_transformation, id_step, "idleConnectionTimeout", idleConnectionTimeout); //$NON-NLS-1$
+			rep.saveStepAttribute(id_transformation, id_step, "dnsCacheTtl", dnsCacheTtl); //$NON-NLS-1$
+			rep.saveStepAttribute(id_transformation, id_step, "engine", engine); //$NON-NLS-1$
+			rep.saveStepAttribute(id_transformation, id_step, "method", method); //$NON-NLS-1$
+			rep.saveStepAttribute(id_transformation, id_step, "hostRequestsPerSecond", hostRequestsPerSecond); //$NON-NLS-1$
+			rep.saveStepAttribute(id_transformation, id_step, "maxConcurrentPerHost", maxConcurrentPerHost); //$NON-NLS-1$
+			rep.saveStepAttribute(id_transformation, id_step, "cacheDirectory", cacheDirectory); //$NON-NLS-1$
+			rep.saveStepAttribute(id_transformation, id_step, "cacheMaxSize", cacheMaxSize); //$NON-NLS-1$
+			rep.saveStepAttribute(id_transformation, id_step, "memoryCacheSize", memoryCacheSize); //$NON-NLS-1$
+			rep.saveStepAttribute(id_transformation, id_step, "memoryCacheTtl", memoryCacheTtl); //$NON-NLS-1$
+			rep.saveStepAttribute(id_transformation, id_step, "spillThreshold", spillThreshold); //$NON-NLS-1$
+			rep.saveStepAttribute(id_transformation, id_step, "spillDirectory", spillDirectory); //$NON-NLS-1$
+			rep.saveStepAttribute(id_transformation, id_step, "maxBodySize", maxBodySize); //$NON-NLS-1$
+			rep.saveStepAttribute(id_transformation, id_step, "binaryContent", binaryContent); //$NON-NLS-1$
+			rep.saveStepAttribute(id_transformation, id_step, "responseFields", responseFields); //$NON-NLS-1$
+			rep.saveStepAttribute(id_transformation, id_step, "timingFields", timingFields); //$NON-NLS-1$
+			rep.saveStepAttribute(id_transformation, id_step, "connectTimeout", connectTimeout); //$NON-NLS-1$
+			rep.saveStepAttribute(id_transformation, id_step, "readTimeout", readTimeout); //$NON-NLS-1$
+			rep.saveStepAttribute(id_transformation, id_step, "totalTimeout", totalTimeout); //$NON-NLS-1$
+			rep.saveStepAttribute(id_transformation, id_step, "maxRetries", maxRetries); //$NON-NLS-1$
+			rep.saveStepAttribute(id_transformation, id_step, "retryBackoff", retryBackoff); //$NON-NLS-1$
+			rep.saveStepAttribute(id_transformation, id_step, "breakerErrorRate", breakerErrorRate); //$NON-NLS-1$
+			rep.saveStepAttribute(id_transformation, id_step, "breakerOpenTime", breakerOpenTime); //$NON-NLS-1$
+			rep.saveStepAttribute(id_transformation, id_step, "journalFile", journalFile); //$NON-NLS-1$
+			rep.saveStepAttribute(id_transformation, id_step, "journalMode", journalMode); //$NON-NLS-1$
+			rep.saveStepAttribute(id_transformation, id_step, "crawl", crawl); //$NON-NLS-1$
+			rep.saveStepAttribute(id_transformation, id_step, "crawlMaxDepth", crawlMaxDepth); //$NON-NLS-1$
+			rep.saveStepAttribute(id_transformation, id_step, "crawlMaxPages", crawlMaxPages); //$NON-NLS-1$
+			rep.saveStepAttribute(id_transformation, id_step, "crawlAllowPattern", crawlAllowPattern); //$NON-NLS-1$
+			rep.saveStepAttribute(id_transformation, id_step, "canonicalizeUrls", canonicalizeUrls); //$NON-NLS-1$
+			rep.saveStepAttribute(id_transformation, id_step, "stripParameters", stripParameters); //$NON-NLS-1$
+			rep.saveStepAttribute(id_transformation, id_step, "sortParameters", sortParameters); //$NON-NLS-1$
 		}
 		catch(Exception e){
 			throw new KettleException("Unable to save step into repository: "+id_step, e); 
@@ -279,6 +974,44 @@ public class PageDownloadStepMeta extends BaseStepMeta implements StepMetaInterf
 	public void readRep(Repository rep, IMetaStore metaStore, ObjectId id_step, List<DatabaseMeta> databases) throws KettleException  {
 		try{
 			outputField  = rep.getStepAttributeString(id_step, "outputfield"); //$NON-NLS-1$
+			maxInFlight  = Const.NVL(rep.getStepAttributeString(id_step, "maxInFlight"), "1"); //$NON-NLS-1$
+			minInFlight = Const.NVL(rep.getStepAttributeString(id_step, "minInFlight"), ""); //$NON-NLS-1$
+			preserveOrder = !"N".equals(rep.getStepAttributeString(id_step, "preserveOrder")); //$NON-NLS-1$
+			virtualThreads = "Y".equals(rep.getStepAttributeString(id_step, "virtualThreads")); //$NON-NLS-1$
+			maxConnectionsPerHost = Const.NVL(rep.getStepAttributeString(id_step, "maxConnectionsPerHost"), "20"); //$NON-NLS-1$
+			maxConnections = Const.NVL(rep.getStepAttributeString(id_step, "maxConnections"), "200"); //$NON-NLS-1$
+			idleConnectionTimeout = Const.NVL(rep.getStepAttributeString(id_step, "idleConnectionTimeout"), "30"); //$NON-NLS-1$
+			dnsCacheTtl = Const.NVL(rep.getStepAttributeString(id_step, "dnsCacheTtl"), "60"); //$NON-NLS-1$
+			engine = Const.NVL(rep.getStepAttributeString(id_step, "engine"), ENGINE_HTTP1); //$NON-NLS-1$
+			method = Const.NVL(rep.getStepAttributeString(id_step, "method"), METHOD_GET); //$NON-NLS-1$
+			hostRequestsPerSecond = Const.NVL(rep.getStepAttributeString(id_step, "hostRequestsPerSecond"), ""); //$NON-NLS-1$
+			maxConcurrentPerHost = Const.NVL(rep.getStepAttributeString(id_step, "maxConcurrentPerHost"), ""); //$NON-NLS-1$
+			cacheDirectory = Const.NVL(rep.getStepAttributeString(id_step, "cacheDirectory"), ""); //$NON-NLS-1$
+			cacheMaxSize = Const.NVL(rep.getStepAttributeString(id_step, "cacheMaxSize"), "1024"); //$NON-NLS-1$
+			memoryCacheSize = Const.NVL(rep.getStepAttributeString(id_step, "memoryCacheSize"), ""); //$NON-NLS-1$
+			memoryCacheTtl = Const.NVL(rep.getStepAttributeString(id_step, "memoryCacheTtl"), ""); //$NON-NLS-1$
+			spillThreshold = Const.NVL(rep.getStepAttributeString(id_step, "spillThreshold"), ""); //$NON-NLS-1$
+			spillDirectory = Const.NVL(rep.getStepAttributeString(id_step, "spillDirectory"), ""); //$NON-NLS-1$
+			maxBodySize = Const.NVL(rep.getStepAttributeString(id_step, "maxBodySize"), ""); //$NON-NLS-1$
+			binaryContent = "Y".equals(rep.getStepAttributeString(id_step, "binaryContent")); //$NON-NLS-1$
+			responseFields = "Y".equals(rep.getStepAttributeString(id_step, "responseFields")); //$NON-NLS-1$
+			timingFields = "Y".equals(rep.getStepAttributeString(id_step, "timingFields")); //$NON-NLS-1$
+			connectTimeout = Const.NVL(rep.getStepAttributeString(id_step, "connectTimeout"), "10"); //$NON-NLS-1$
+			readTimeout = Const.NVL(rep.getStepAttributeString(id_step, "readTimeout"), "30"); //$NON-NLS-1$
+			totalTimeout = Const.NVL(rep.getStepAttributeString(id_step, "totalTimeout"), ""); //$NON-NLS-1$
+			maxRetries = Const.NVL(rep.getStepAttributeString(id_step, "maxRetries"), "2"); //$NON-NLS-1$
+			retryBackoff = Const.NVL(rep.getStepAttributeString(id_step, "retryBackoff"), "500"); //$NON-NLS-1$
+			breakerErrorRate = Const.NVL(rep.getStepAttributeString(id_step, "breakerErrorRate"), ""); //$NON-NLS-1$
+			breakerOpenTime = Const.NVL(rep.getStepAttributeString(id_step, "breakerOpenTime"), "30"); //$NON-NLS-1$
+			journalFile = Const.NVL(rep.getStepAttributeString(id_step, "journalFile"), ""); //$NON-NLS-1$
+			journalMode = Const.NVL(rep.getStepAttributeString(id_step, "journalMode"), JOURNAL_SKIP); //$NON-NLS-1$
+			crawl = "Y".equals(rep.getStepAttributeString(id_step, "crawl")); //$NON-NLS-1$
+			crawlMaxDepth = Const.NVL(rep.getStepAttributeString(id_step, "crawlMaxDepth"), "2"); //$NON-NLS-1$
+			crawlMaxPages = Const.NVL(rep.getStepAttributeString(id_step, "crawlMaxPages"), DEFAULT_CRAWL_MAX_PAGES); //$NON-NLS-1$
+			crawlAllowPattern = Const.NVL(rep.getStepAttributeString(id_step, "crawlAllowPattern"), ""); //$NON-NLS-1$
+			canonicalizeUrls = "Y".equals(rep.getStepAttributeString(id_step, "canonicalizeUrls")); //$NON-NLS-1$
+			stripParameters = Const.NVL(rep.getStepAttributeString(id_step, "stripParameters"), DEFAULT_STRIP_PARAMETERS); //$NON-NLS-1$
+			sortParameters = "Y".equals(rep.getStepAttributeString(id_step, "sortParameters")); //$NON-NLS-1$
 		}
 		catch(Exception e){
 			throw new KettleException("Unable to load step from repository", e);
@@ -317,19 +1050,65 @@ public class PageDownloadStepMeta extends BaseStepMeta implements StepMetaInterf
 		inputRowMeta.addValueMeta(v1);
 		
 		// a value meta object contains the meta data for a field
-		ValueMetaInterface v = new ValueMeta(outputField, ValueMeta.TYPE_STRING);
+		ValueMetaInterface v = new ValueMeta(outputField, binaryContent ? ValueMeta.TYPE_BINARY : ValueMeta.TYPE_STRING);
 		
-		// setting trim type to "both"
-		v.setTrimType(ValueMeta.TRIM_TYPE_BOTH);
+		// setting trim type to "both", raw bytes are passed on untouched
+		v.setTrimType(binaryContent ? ValueMeta.TRIM_TYPE_NONE : ValueMeta.TRIM_TYPE_BOTH);
 
 		// the name of the step that adds this field
 		v.setOrigin(name);
 		
 		// modify the row structure and add the field this step generates  
 		inputRowMeta.addValueMeta(v);
+
+		// bodies above the spill threshold are passed on as a reference to
+		// their temporary file, the content field is null for those rows
+		if (hasSpillFields(space)) {
+			addField(inputRowMeta, outputField + SPILL_FILE_SUFFIX, ValueMeta.TYPE_STRING, name);
+			addField(inputRowMeta, outputField + SPILL_LENGTH_SUFFIX, ValueMeta.TYPE_INTEGER, name);
+			addField(inputRowMeta, outputField + SPILL_HASH_SUFFIX, ValueMeta.TYPE_STRING, name);
+		}
+
+		// rows whose body was cut at the size cap are flagged
+		if (hasTruncatedField(space)) {
+			addField(inputRowMeta, outputField + TRUNCATED_SUFFIX, ValueMeta.TYPE_BOOLEAN, name);
+		}
+
+		// the status is also set for rows whose download failed with an
+		// error status, the other fields only for rows with a response
+		if (responseFields) {
+			addField(inputRowMeta, outputField + STATUS_SUFFIX, ValueMeta.TYPE_INTEGER, name);
+			addField(inputRowMeta, outputField + FINAL_URL_SUFFIX, ValueMeta.TYPE_STRING, name);
+			addField(inputRowMeta, outputField + CONTENT_TYPE_SUFFIX, ValueMeta.TYPE_STRING, name);
+			addField(inputRowMeta, outputField + BYTES_SUFFIX, ValueMeta.TYPE_INTEGER, name);
+			addField(inputRowMeta, outputField + SOURCE_SUFFIX, ValueMeta.TYPE_STRING, name);
+		}
+		if (timingFields) {
+			addField(inputRowMeta, outputField + DNS_TIME_SUFFIX, ValueMeta.TYPE_INTEGER, name);
+			addField(inputRowMeta, outputField + CONNECT_TIME_SUFFIX, ValueMeta.TYPE_INTEGER, name);
+			addField(inputRowMeta, outputField + TLS_TIME_SUFFIX, ValueMeta.TYPE_INTEGER, name);
+			addField(inputRowMeta, outputField + FIRST_BYTE_TIME_SUFFIX, ValueMeta.TYPE_INTEGER, name);
+			addField(inputRowMeta, outputField + DOWNLOAD_TIME_SUFFIX, ValueMeta.TYPE_INTEGER, name);
+		}
+
+		// crawled rows repeat the fields of their seed row
+		if (crawl) {
+			addField(inputRowMeta, outputField + DEPTH_SUFFIX, ValueMeta.TYPE_INTEGER, name);
+			addField(inputRowMeta, outputField + REFERRER_SUFFIX, ValueMeta.TYPE_STRING, name);
+		}
 		
 	}
 
+	private static void addField(RowMetaInterface rowMeta, String fieldName, int type, String origin) {
+		ValueMetaInterface v = new ValueMeta(fieldName, type);
+		v.setOrigin(origin);
+		rowMeta.addValueMeta(v);
+	}
+
+	private static String substitute(VariableSpace space, String value) {
+		return space == null ? value : space.environmentSubstitute(value);
+	}
+
 	/**
 	 * This method is called when the user selects the "Verify Transformation" option in Spoon. 
 	 * A list of remarks is passed in that this method should add to. Each remark is a comment, warning, error, or ok.
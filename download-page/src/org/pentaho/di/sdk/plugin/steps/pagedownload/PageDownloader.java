@@ -0,0 +1,608 @@
+package org.pentaho.di.sdk.plugin.steps.pagedownload;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UnsupportedEncodingException;
+import java.net.MalformedURLException;
+import java.net.UnknownHostException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+import javax.net.ssl.SSLPeerUnverifiedException;
+
+/**
+ * Everything a step copy needs to download a page: the shared HTTP engine and
+ * the optional caches in front of it. One instance is created per step copy
+ * in init() and used from all of its download threads.
+ *
+ * Failed downloads are retried with exponential backoff and full jitter, and
+ * a circuit breaker per host, shared by the step copies, stops requests to a
+ * host most of whose recent requests failed.
+ *
+ * All requests go through {@link #newCall(String, Map)}, so
+ * {@link #abort()} can close every socket of the step copy at once.
+ */
+public class PageDownloader {
+
+	// upper bound of a single backoff delay, Retry-After included
+	private static final long MAX_BACKOFF_MILLIS = 60000;
+
+	private final HttpEngine engine;
+	private final String method;
+	private final DiskCache diskCache;
+	private final MemoryCache memoryCache;
+	private final SpillFiles spillFiles;
+	private final boolean binaryContent;
+	private final ConcurrentMap<String, Future<UrlData>> downloads;
+	private final ConcurrentMap<String, CircuitBreaker> circuitBreakers;
+	private final AtomicLong coalesced = new AtomicLong();
+	private final AtomicLong retries = new AtomicLong();
+	private final AtomicLong rejected = new AtomicLong();
+
+	private final Set<HttpEngineCall> calls = Collections.newSetFromMap(new ConcurrentHashMap<HttpEngineCall, Boolean>());
+	private final CountDownLatch aborted = new CountDownLatch(1);
+
+	private int maxRetries;
+	private long retryBackoffMillis;
+	private int breakerErrorRate;
+	private long breakerOpenNanos;
+	private Semaphore requestPermits;
+	private ConcurrencyLimit concurrencyLimit;
+	private long maxBodySize;
+	private final TransferStatistics transferStatistics = new TransferStatistics();
+	private final DownloadMetrics metrics = new DownloadMetrics();
+
+	PageDownloader(HttpClientPool pool, String method, DiskCache diskCache, MemoryCache memoryCache, SpillFiles spillFiles,
+			boolean binaryContent) {
+		this.engine = pool.getEngine();
+		this.method = method;
+		this.downloads = pool.getDownloads();
+		this.circuitBreakers = pool.getCircuitBreakers();
+		this.diskCache = diskCache;
+		this.memoryCache = memoryCache;
+		this.spillFiles = spillFiles;
+		this.binaryContent = binaryContent;
+	}
+
+	/**
+	 * Retries failed downloads of idempotent requests.
+	 *
+	 * @param maxRetries
+	 *            retries after the first attempt, 0 to disable
+	 * @param backoffMillis
+	 *            upper bound of the delay before the first retry, doubled for
+	 *            each further one
+	 */
+	void setRetries(int maxRetries, long backoffMillis) {
+		this.maxRetries = maxRetries;
+		this.retryBackoffMillis = backoffMillis;
+	}
+
+	/**
+	 * Fails requests to a host at once while most requests to it fail.
+	 *
+	 * @param errorRatePercent
+	 *            error rate opening the breaker, 0 to disable
+	 * @param openSeconds
+	 *            time before a trial request is let through
+	 */
+	void setCircuitBreaker(int errorRatePercent, long openSeconds) {
+		this.breakerErrorRate = errorRatePercent;
+		this.breakerOpenNanos = TimeUnit.SECONDS.toNanos(openSeconds);
+	}
+
+	/**
+	 * Caps the requests running at the same time, together with the other
+	 * step copies sharing the permits. Each attempt holds a permit while it
+	 * talks to the server, not while it waits to be retried.
+	 */
+	void setRequestPermits(Semaphore requestPermits) {
+		this.requestPermits = requestPermits;
+	}
+
+	/**
+	 * Reports the latency and outcome of every request to the given limit.
+	 */
+	void setConcurrencyLimit(ConcurrencyLimit concurrencyLimit) {
+		this.concurrencyLimit = concurrencyLimit;
+	}
+
+	/**
+	 * Keeps only the start of every body.
+	 *
+	 * @param maxBodySize
+	 *            bytes kept of a body, 0 to keep whole bodies
+	 */
+	void setMaxBodySize(long maxBodySize) {
+		this.maxBodySize = maxBodySize;
+	}
+
+	public HttpEngine getEngine() {
+		return engine;
+	}
+
+	/**
+	 * @return the HTTP method sent for every URL
+	 */
+	public String getMethod() {
+		return method;
+	}
+
+	/**
+	 * @return the persistent response cache, or null if disabled
+	 */
+	public DiskCache getDiskCache() {
+		return diskCache;
+	}
+
+	/**
+	 * @return the in-memory cache for repeated URLs, or null if disabled
+	 */
+	public MemoryCache getMemoryCache() {
+		return memoryCache;
+	}
+
+	/**
+	 * @return where bodies above the spill threshold are written, or null if
+	 *         every body is kept in memory
+	 */
+	public SpillFiles getSpillFiles() {
+		return spillFiles;
+	}
+
+	/**
+	 * @return the bytes kept of a body, 0 if whole bodies are kept
+	 */
+	public long getMaxBodySize() {
+		return maxBodySize;
+	}
+
+	/**
+	 * @return true if bodies are kept as raw bytes instead of being decoded
+	 */
+	public boolean getBinaryContent() {
+		return binaryContent;
+	}
+
+	/**
+	 * @return the number of downloads that waited for an identical one already
+	 *         running instead of going to the network
+	 */
+	public long getCoalesced() {
+		return coalesced.get();
+	}
+
+	/**
+	 * Prepares a request that is aborted together with the others of this
+	 * step copy. {@link #finished(HttpEngineCall)} must be called once its
+	 * response is closed.
+	 */
+	HttpEngineCall newCall(String url, Map<String, String> headers) throws IOException {
+		checkAborted(url);
+		HttpEngineCall call = engine.newCall(method, url, headers);
+		if (call instanceof NioHttpEngine.Call) {
+			// the event driven engine collects the body before it is read
+			((NioHttpEngine.Call) call).limitBody(maxBodySize, spillFiles);
+		}
+		calls.add(call);
+		metrics.requestStarted();
+		if (isAborted()) {
+			// abort() ran between the check and the registration
+			call.abort();
+		}
+		return call;
+	}
+
+	void finished(HttpEngineCall call) {
+		if (calls.remove(call)) {
+			metrics.requestFinished();
+		}
+	}
+
+	/**
+	 * Aborts the running requests and fails every later download at once.
+	 * May be called from any thread.
+	 */
+	public void abort() {
+		aborted.countDown();
+		for (HttpEngineCall call : calls) {
+			call.abort();
+		}
+	}
+
+	public boolean isAborted() {
+		return aborted.getCount() == 0;
+	}
+
+	private void checkAborted(String url) throws InterruptedIOException {
+		if (isAborted()) {
+			throw new InterruptedIOException("Download of " + url + " was aborted");
+		}
+	}
+
+	/**
+	 * @return the number of attempts repeated after a failure
+	 */
+	public long getRetries() {
+		return retries.get();
+	}
+
+	/**
+	 * @return the number of requests not sent because the circuit breaker of
+	 *         their host was open
+	 */
+	public long getRejected() {
+		return rejected.get();
+	}
+
+	/**
+	 * @return bytes received and decoded per host
+	 */
+	public TransferStatistics getTransferStatistics() {
+		return transferStatistics;
+	}
+
+	/**
+	 * @return the live figures of the downloads, published over JMX by the
+	 *         step
+	 */
+	public DownloadMetrics getMetrics() {
+		return metrics;
+	}
+
+	public UrlData download(final String url) throws IOException {
+		metrics.downloadRequested();
+		if (memoryCache != null) {
+			UrlData cached = memoryCache.get(url);
+			if (cached != null) {
+				metrics.cacheHit();
+				return cached.reuse(UrlData.SOURCE_CACHE);
+			}
+		}
+
+		// only the first of several concurrent requests for a URL goes to the
+		// network, the others wait for it and share its result
+		FutureTask<UrlData> task = new FutureTask<UrlData>(new Callable<UrlData>() {
+			public UrlData call() throws IOException {
+				UrlData urlData = fetch(url);
+				if (memoryCache != null) {
+					memoryCache.put(url, urlData);
+				}
+				return urlData;
+			}
+		});
+		Future<UrlData> running = downloads.putIfAbsent(url, task);
+		boolean waiting = running != null;
+		if (running == null) {
+			try {
+				task.run();
+			} finally {
+				downloads.remove(url, task);
+			}
+			running = task;
+		} else {
+			coalesced.incrementAndGet();
+		}
+
+		try {
+			UrlData urlData = running.get();
+			return waiting ? urlData.reuse(UrlData.SOURCE_COALESCED) : urlData;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for " + url);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IOException(e.getCause());
+		}
+	}
+
+	/**
+	 * Starts a download without blocking the calling thread, on an engine that
+	 * supports it (see {@link #isAsync()}). Caches, coalescing, retries and
+	 * circuit breakers work as with {@link #download(String)}; the returned
+	 * future completes on one of the engine's callback threads.
+	 */
+	@SuppressWarnings("unchecked")
+	public CompletableFuture<UrlData> downloadAsync(final String url) {
+		metrics.downloadRequested();
+		if (memoryCache != null) {
+			UrlData cached = memoryCache.get(url);
+			if (cached != null) {
+				metrics.cacheHit();
+				return CompletableFuture.completedFuture(cached.reuse(UrlData.SOURCE_CACHE));
+			}
+		}
+
+		final CompletableFuture<UrlData> result = new CompletableFuture<UrlData>();
+		Future<UrlData> running = downloads.putIfAbsent(url, result);
+		if (running instanceof CompletableFuture) {
+			coalesced.incrementAndGet();
+			return ((CompletableFuture<UrlData>) running).thenApply(new Function<UrlData, UrlData>() {
+				public UrlData apply(UrlData urlData) {
+					return urlData.reuse(UrlData.SOURCE_COALESCED);
+				}
+			});
+		}
+		if (running == null) {
+			result.whenComplete(new BiConsumer<UrlData, Throwable>() {
+				public void accept(UrlData urlData, Throwable error) {
+					downloads.remove(url, result);
+				}
+			});
+		}
+		fetchAsync(url, 0, result);
+		return result;
+	}
+
+	/**
+	 * @return true if the engine can run downloads without a thread each
+	 */
+	public boolean isAsync() {
+		return engine instanceof NioHttpEngine;
+	}
+
+	// One download with its retries. Every attempt that reaches the network
+	// is reported to the circuit breaker of the host.
+	private UrlData fetch(String url) throws IOException {
+		CircuitBreaker breaker = breakerErrorRate > 0 ? circuitBreakerFor(HostScheduler.getHost(url)) : null;
+
+		for (int attempt = 0;; attempt++) {
+			checkCircuitBreaker(breaker, url);
+
+			UrlData urlData = null;
+			IOException error = null;
+			long delay;
+			boolean reported = false;
+			try {
+				acquirePermit(url);
+				long startedAt = System.nanoTime();
+				try {
+					urlData = new UrlData(url, this);
+				} catch (IOException e) {
+					if (Thread.currentThread().isInterrupted() || isAborted()) {
+						// the step is stopping, timeouts are retried like other errors
+						checkAborted(url);
+						throw e;
+					}
+					error = e;
+				} finally {
+					if (requestPermits != null) {
+						requestPermits.release();
+					}
+				}
+
+				delay = nextAttempt(url, breaker, attempt, urlData, error, System.nanoTime() - startedAt);
+				reported = true;
+			} finally {
+				if (!reported) {
+					// aborted or failed unexpectedly, the breaker must not wait
+					// for an outcome
+					cancelTrial(breaker);
+				}
+			}
+			if (delay < 0) {
+				if (error != null) {
+					throw error;
+				}
+				return urlData;
+			}
+			retries.incrementAndGet();
+			waitBeforeRetry(delay, url);
+		}
+	}
+
+	// The same as fetch(String), with the response handled on a callback
+	// thread of the engine and the backoff waited out on its timer.
+	private void fetchAsync(final String url, final int attempt, final CompletableFuture<UrlData> result) {
+		final CircuitBreaker breaker = breakerErrorRate > 0 ? circuitBreakerFor(HostScheduler.getHost(url)) : null;
+		final UrlData urlData = new UrlData(url);
+		final NioHttpEngine.Call call;
+		try {
+			checkCircuitBreaker(breaker, url);
+		} catch (IOException e) {
+			result.completeExceptionally(e);
+			return;
+		}
+		try {
+			call = (NioHttpEngine.Call) newCall(url, urlData.request(this));
+		} catch (IOException e) {
+			cancelTrial(breaker);
+			result.completeExceptionally(e);
+			return;
+		} catch (RuntimeException e) {
+			cancelTrial(breaker);
+			result.completeExceptionally(e);
+			return;
+		}
+
+		final long startedAt = System.nanoTime();
+		call.enqueue(new NioHttpEngine.Callback() {
+
+			public void completed(HttpEngineResponse response) {
+				IOException error = null;
+				try {
+					urlData.read(PageDownloader.this, response);
+				} catch (IOException e) {
+					error = e;
+				} catch (RuntimeException e) {
+					close(response);
+					finished(call);
+					cancelTrial(breaker);
+					result.completeExceptionally(e);
+					return;
+				}
+				close(response);
+				finished(call);
+				attempted(error == null ? urlData : null, error);
+			}
+
+			public void failed(IOException e) {
+				finished(call);
+				attempted(null, e);
+			}
+
+			// deletes the file a large body was collected in
+			private void close(HttpEngineResponse response) {
+				try {
+					response.close();
+				} catch (IOException e) {
+					// nothing is left to release
+				}
+			}
+
+			private void attempted(UrlData urlData, IOException error) {
+				if (error != null && isAborted()) {
+					cancelTrial(breaker);
+					result.completeExceptionally(new InterruptedIOException("Download of " + url + " was aborted"));
+					return;
+				}
+				long delay = nextAttempt(url, breaker, attempt, urlData, error, System.nanoTime() - startedAt);
+				if (delay >= 0) {
+					retries.incrementAndGet();
+					((NioHttpEngine) engine).schedule(new Runnable() {
+						public void run() {
+							fetchAsync(url, attempt + 1, result);
+						}
+					}, delay);
+				} else if (error != null) {
+					result.completeExceptionally(error);
+				} else {
+					if (memoryCache != null) {
+						memoryCache.put(url, urlData);
+					}
+					result.complete(urlData);
+				}
+			}
+		});
+	}
+
+	private void acquirePermit(String url) throws InterruptedIOException {
+		if (requestPermits != null) {
+			try {
+				requestPermits.acquire();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while waiting to download " + url);
+			}
+		}
+	}
+
+	private void checkCircuitBreaker(CircuitBreaker breaker, String url) throws IOException {
+		if (breaker != null && !breaker.allowRequest(System.nanoTime())) {
+			rejected.incrementAndGet();
+			throw new CircuitOpenException(url, HostScheduler.getHost(url));
+		}
+	}
+
+	// Reports the outcome of an attempt to the circuit breaker, the
+	// concurrency limit and the metrics, and decides whether to try again.
+	// Returns the delay before the next attempt, or -1 if the result or the
+	// error is final. A permanent error is neither retried nor held against
+	// the host.
+	private long nextAttempt(String url, CircuitBreaker breaker, int attempt, UrlData urlData, IOException error,
+			long nanos) {
+		metrics.requestCompleted(url, nanos, urlData);
+		boolean retryable;
+		long retryAfterMillis = 0;
+		if (error == null) {
+			// a HEAD request reports error statuses instead of failing
+			retryable = isRetryable(urlData.getStatus());
+		} else if (error instanceof HttpStatusException) {
+			// an error status other than the retryable ones is the URL's
+			// fault, not the host's
+			retryable = isRetryable(((HttpStatusException) error).getStatus());
+			retryAfterMillis = ((HttpStatusException) error).getRetryAfterMillis();
+		} else if (isPermanent(error)) {
+			cancelTrial(breaker);
+			return -1;
+		} else {
+			retryable = true;
+		}
+		if (breaker != null) {
+			breaker.record(!retryable, System.nanoTime());
+		}
+		if (concurrencyLimit != null) {
+			concurrencyLimit.record(nanos, !retryable);
+		}
+		if (!retryable || PageDownloadStepMeta.METHOD_POST.equals(method) || attempt >= maxRetries) {
+			return -1;
+		}
+		return Math.min(MAX_BACKOFF_MILLIS, Math.max(retryAfterMillis, backoff(attempt)));
+	}
+
+	// Full jitter: a random delay up to the exponentially growing bound.
+	private long backoff(int attempt) {
+		long bound = Math.min(MAX_BACKOFF_MILLIS, retryBackoffMillis << Math.min(attempt, 20));
+		return bound <= 0 ? 0 : ThreadLocalRandom.current().nextLong(bound + 1);
+	}
+
+	// Sleeps before the next attempt, waking up early when aborted.
+	private void waitBeforeRetry(long millis, String url) throws InterruptedIOException {
+		try {
+			if (aborted.await(millis, TimeUnit.MILLISECONDS)) {
+				checkAborted(url);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting to retry " + url);
+		}
+	}
+
+	private static void cancelTrial(CircuitBreaker breaker) {
+		if (breaker != null) {
+			breaker.cancelTrial();
+		}
+	}
+
+	// Errors every attempt ends with again that say nothing about the health
+	// of the host: a URL that cannot be requested, a host name that does not
+	// resolve, a certificate that does not match the host, a body that cannot
+	// be decoded and a request the circuit breaker did not let through.
+	static boolean isPermanent(IOException error) {
+		for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+			if (cause instanceof MalformedURLException || cause instanceof UnknownHostException
+					|| cause instanceof SSLPeerUnverifiedException || cause instanceof UnsupportedEncodingException
+					|| cause instanceof CircuitOpenException) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	static boolean isRetryable(int status) {
+		return status == 408 || status == 429 || status == 500 || status == 502 || status == 503 || status == 504;
+	}
+
+	private CircuitBreaker circuitBreakerFor(String host) {
+		CircuitBreaker breaker = circuitBreakers.get(host);
+		if (breaker == null) {
+			CircuitBreaker created = new CircuitBreaker(breakerErrorRate, breakerOpenNanos);
+			breaker = circuitBreakers.putIfAbsent(host, created);
+			if (breaker == null) {
+				breaker = created;
+			}
+		}
+		return breaker;
+	}
+
+}
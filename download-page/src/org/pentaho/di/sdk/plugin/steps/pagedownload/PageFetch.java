@@ -0,0 +1,130 @@
+package org.pentaho.di.sdk.plugin.steps.pagedownload;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.BiFunction;
+
+/**
+ * One input row together with the download of its URL. Instances are handed
+ * to the step's worker pool and come back once the page has been fetched (or
+ * the fetch has failed), so the step thread can emit the row.
+ */
+public class PageFetch implements Callable<PageFetch> {
+
+	Object[] row;
+	String url;
+	UrlData result;
+	Exception error;
+	PageDownloader downloader;
+	boolean resumed;
+	int depth;
+	String referrer;
+	String site;
+
+	PageFetch(Object[] row, String url, PageDownloader downloader) {
+		this.row = row;
+		this.url = url;
+		this.downloader = downloader;
+	}
+
+	// Sets where a crawl found the URL, a seed has depth 0 and no referrer.
+	void crawled(int depth, String referrer, String site) {
+		this.depth = depth;
+		this.referrer = referrer;
+		this.site = site;
+	}
+
+	public Object[] getRow() {
+		return row;
+	}
+
+	public String getUrl() {
+		return url;
+	}
+
+	public UrlData getResult() {
+		return result;
+	}
+
+	/**
+	 * @return the number of links followed from the seed to reach the URL
+	 */
+	public int getDepth() {
+		return depth;
+	}
+
+	/**
+	 * @return the page the URL was found on, or null for a seed
+	 */
+	public String getReferrer() {
+		return referrer;
+	}
+
+	String getSite() {
+		return site;
+	}
+
+	public Exception getError() {
+		return error;
+	}
+
+	/**
+	 * @return whether the result was taken from the journal of an earlier run
+	 *         instead of being downloaded
+	 */
+	public boolean isResumed() {
+		return resumed;
+	}
+
+	// Passes on what an earlier run recorded, the download is then skipped.
+	void resume(UrlData recorded) {
+		result = recorded;
+		resumed = true;
+	}
+
+	public String getData() {
+		return result == null ? "" : result.getData();
+	}
+
+	public byte[] getBytes() {
+		return result == null ? null : result.getBytes();
+	}
+
+	public PageFetch call() {
+		if (resumed) {
+			return this;
+		}
+		try {
+			result = downloader.download(url);
+		} catch (Exception e) {
+			error = e;
+		}
+		return this;
+	}
+
+	/**
+	 * Starts the download on an engine that does not need a thread per
+	 * download, see {@link PageDownloader#downloadAsync(String)}. The returned
+	 * future always completes normally, with the error kept like in
+	 * {@link #call()}.
+	 */
+	public CompletableFuture<PageFetch> start() {
+		if (resumed) {
+			return CompletableFuture.completedFuture(this);
+		}
+		return downloader.downloadAsync(url).handle(new BiFunction<UrlData, Throwable, PageFetch>() {
+			public PageFetch apply(UrlData urlData, Throwable t) {
+				if (t instanceof CompletionException && t.getCause() != null) {
+					t = t.getCause();
+				}
+				result = urlData;
+				if (t != null) {
+					error = t instanceof Exception ? (Exception) t : new RuntimeException(t);
+				}
+				return PageFetch.this;
+			}
+		});
+	}
+
+}
@@ -0,0 +1,44 @@
+package org.pentaho.di.sdk.plugin.steps.pagedownload;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Events per second over about the last minute, counted in one second
+ * buckets. Until a minute has passed the rate is over the time since the
+ * meter was created.
+ */
+public class RateMeter {
+
+	private static final int SECONDS = 60;
+
+	private final long startedAt = System.nanoTime();
+	private final long[] counts = new long[SECONDS];
+	private final long[] seconds = new long[SECONDS];
+
+	public synchronized void add(long n) {
+		long second = second();
+		int i = (int) (second % SECONDS);
+		if (seconds[i] != second) {
+			seconds[i] = second;
+			counts[i] = 0;
+		}
+		counts[i] += n;
+	}
+
+	public synchronized double getRate() {
+		long second = second();
+		long sum = 0;
+		for (int i = 0; i < SECONDS; i++) {
+			if (second - seconds[i] < SECONDS) {
+				sum += counts[i];
+			}
+		}
+		double elapsed = Math.min(SECONDS, (System.nanoTime() - startedAt) / (double) TimeUnit.SECONDS.toNanos(1));
+		return elapsed <= 0 ? 0 : sum / elapsed;
+	}
+
+	private long second() {
+		return TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - startedAt);
+	}
+
+}
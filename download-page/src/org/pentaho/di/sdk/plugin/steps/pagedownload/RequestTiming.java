@@ -0,0 +1,107 @@
+package org.pentaho.di.sdk.plugin.steps.pagedownload;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Where the time of one request went. Each phase is measured by the engine
+ * that sent the request, a phase the engine cannot see stays unknown. A
+ * request on a reused connection spends no time on the lookup, the connect
+ * or the TLS handshake. The phases of redirected requests add up.
+ */
+public class RequestTiming {
+
+	private static final long UNKNOWN = -1;
+
+	long dnsNanos;
+	long connectNanos;
+	long tlsNanos;
+	long firstByteNanos = UNKNOWN;
+	long downloadNanos;
+
+	/**
+	 * @param connectionPhases
+	 *            true if the engine measures the lookup, connect and TLS
+	 *            handshake of new connections
+	 */
+	RequestTiming(boolean connectionPhases) {
+		if (!connectionPhases) {
+			dnsNanos = UNKNOWN;
+			connectNanos = UNKNOWN;
+			tlsNanos = UNKNOWN;
+		}
+	}
+
+	void addDns(long nanos) {
+		dnsNanos += nanos;
+	}
+
+	void addConnect(long nanos) {
+		connectNanos += nanos;
+	}
+
+	void addTls(long nanos) {
+		tlsNanos += nanos;
+	}
+
+	void addDownload(long nanos) {
+		downloadNanos += nanos;
+	}
+
+	/**
+	 * Sets the wait for the response headers from the time the request was
+	 * started, leaving out the time spent setting up connections.
+	 */
+	void setFirstByte(long sinceStartNanos) {
+		firstByteNanos = Math.max(0, sinceStartNanos - Math.max(0, dnsNanos) - Math.max(0, connectNanos)
+				- Math.max(0, tlsNanos));
+	}
+
+	/**
+	 * @return the time spent looking up host names in milliseconds, or null
+	 *         if unknown
+	 */
+	public Long getDnsMillis() {
+		return toMillis(dnsNanos);
+	}
+
+	/**
+	 * @return the time spent opening TCP connections in milliseconds, or null
+	 *         if unknown
+	 */
+	public Long getConnectMillis() {
+		return toMillis(connectNanos);
+	}
+
+	/**
+	 * @return the time spent in TLS handshakes in milliseconds, or null if
+	 *         unknown
+	 */
+	public Long getTlsMillis() {
+		return toMillis(tlsNanos);
+	}
+
+	/**
+	 * @return the time from sending the request to the response headers in
+	 *         milliseconds, or null if unknown
+	 */
+	public Long getFirstByteMillis() {
+		return toMillis(firstByteNanos);
+	}
+
+	/**
+	 * @return the time spent receiving the body in milliseconds
+	 */
+	public Long getDownloadMillis() {
+		return toMillis(downloadNanos);
+	}
+
+	private static Long toMillis(long nanos) {
+		return nanos < 0 ? null : Long.valueOf(TimeUnit.NANOSECONDS.toMillis(nanos));
+	}
+
+	public String toString() {
+		return "dns " + getDnsMillis() + " ms, connect " + getConnectMillis() + " ms, tls " + getTlsMillis()
+				+ " ms, first byte " + getFirstByteMillis() + " ms, download " + getDownloadMillis() + " ms";
+	}
+
+}
@@ -0,0 +1,281 @@
+package org.pentaho.di.sdk.plugin.steps.pagedownload;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only record of the URLs a run has downloaded and passed on, so a
+ * run restarted after a failure can leave them out. A URL whose body was
+ * spilled is recorded with its file, which a restarted run can pass on
+ * instead of downloading the URL again.
+ *
+ * Only the URLs read in when the journal is opened are looked up, the URLs
+ * recorded by the running transformation are just written out. A URL that
+ * comes again within the same run is downloaded again, as it would be
+ * without a journal.
+ *
+ * Records are buffered and written out and synced to disk by a background
+ * thread at a fixed interval, so the downloads never wait for the disk. A
+ * crash loses at most the last interval, whose URLs are then downloaded
+ * again. Every line carries a checksum and a line torn by the crash is
+ * ignored.
+ */
+public class ResumeJournal {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	// milliseconds between writing the buffered records out and syncing them
+	private static final long SYNC_INTERVAL = 1000;
+
+	private static final Map<String, ResumeJournal> journals = new HashMap<String, ResumeJournal>();
+
+	private final File file;
+	private final Map<String, Entry> completed = new HashMap<String, Entry>();
+	private final Set<String> recorded = ConcurrentHashMap.newKeySet();
+	private final FileOutputStream out;
+	private final ScheduledExecutorService syncer;
+	private StringBuilder pending = new StringBuilder();
+	private IOException failure;
+	private int references;
+
+	private ResumeJournal(File file) throws IOException {
+		this.file = file;
+		load();
+		File parent = file.getAbsoluteFile().getParentFile();
+		if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+			throw new IOException("Unable to create journal directory " + parent);
+		}
+		out = new FileOutputStream(file, true);
+		syncer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "PageDownload journal " + ResumeJournal.this.file.getName());
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		syncer.scheduleWithFixedDelay(new Runnable() {
+			public void run() {
+				try {
+					sync();
+				} catch (IOException e) {
+					// reported to the next caller of record() or close()
+				}
+			}
+		}, SYNC_INTERVAL, SYNC_INTERVAL, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Opens the journal in the given file, sharing it with the step copies
+	 * that already use it. The URLs recorded by earlier runs are read in.
+	 */
+	public static synchronized ResumeJournal open(File file) throws IOException {
+		String key = file.getCanonicalPath();
+		ResumeJournal journal = journals.get(key);
+		if (journal == null) {
+			journal = new ResumeJournal(file);
+			journals.put(key, journal);
+		}
+		journal.references++;
+		return journal;
+	}
+
+	/**
+	 * Writes out and syncs what was recorded, closing the file once the last
+	 * step copy is done with it.
+	 */
+	public static void close(ResumeJournal journal) throws IOException {
+		synchronized (ResumeJournal.class) {
+			if (--journal.references > 0) {
+				journal.sync();
+				return;
+			}
+			journals.remove(journal.file.getCanonicalPath());
+		}
+		journal.syncer.shutdownNow();
+		try {
+			journal.sync();
+		} finally {
+			journal.out.close();
+		}
+	}
+
+	/**
+	 * @return what an earlier run recorded for the URL, or null if it was not
+	 *         completed. The map is only written to while the journal is
+	 *         opened, so it is read without locking.
+	 */
+	public Entry get(String url) {
+		return completed.get(url);
+	}
+
+	/**
+	 * @return the number of URLs completed by earlier runs
+	 */
+	public int size() {
+		return completed.size();
+	}
+
+	/**
+	 * Records a URL as completed for the next run, a URL already recorded by
+	 * this run is not written again. The record reaches the disk with the
+	 * next sync.
+	 *
+	 * @throws IOException
+	 *             if an earlier sync failed
+	 */
+	public void record(String url, UrlData result) throws IOException {
+		Entry entry = new Entry(result.getStatus(), result.getFile() == null ? null : result.getFile().getPath(),
+				result.getLength(), result.getHash());
+		if (!recorded.add(url)) {
+			return;
+		}
+
+		StringBuilder line = new StringBuilder(url.length() + 64);
+		line.append(entry.status).append('\t').append(entry.length).append('\t').append(nullToEmpty(entry.hash))
+				.append('\t').append(nullToEmpty(entry.file)).append('\t').append(url);
+		synchronized (this) {
+			if (failure != null) {
+				throw failure;
+			}
+			pending.append(checksum(line)).append('\t').append(line).append('\n');
+		}
+	}
+
+	// Writes the buffered records out and forces them to the disk. The file
+	// is only written to by this method, one caller at a time.
+	private void sync() throws IOException {
+		synchronized (out) {
+			String lines;
+			synchronized (this) {
+				if (pending.length() == 0) {
+					return;
+				}
+				lines = pending.toString();
+				pending = new StringBuilder();
+			}
+			try {
+				Writer writer = new OutputStreamWriter(out, UTF8);
+				writer.write(lines);
+				writer.flush();
+				out.getFD().sync();
+			} catch (IOException e) {
+				synchronized (this) {
+					failure = e;
+				}
+				throw e;
+			}
+		}
+	}
+
+	private void load() throws IOException {
+		BufferedReader in;
+		try {
+			in = new BufferedReader(new InputStreamReader(new FileInputStream(file), UTF8));
+		} catch (FileNotFoundException e) {
+			return;
+		}
+		try {
+			String line;
+			while ((line = in.readLine()) != null) {
+				// checksum, status, length, hash, file and the URL last, which
+				// may hold tabs of its own
+				String[] fields = line.split("\t", 6);
+				if (fields.length < 6 || !fields[0].equals(checksum(line.substring(fields[0].length() + 1)))) {
+					continue;
+				}
+				try {
+					completed.put(fields[5], new Entry(Integer.parseInt(fields[1]), emptyToNull(fields[4]),
+							Long.parseLong(fields[2]), emptyToNull(fields[3])));
+				} catch (NumberFormatException e) {
+					// not a line written by this class
+				}
+			}
+		} finally {
+			in.close();
+		}
+	}
+
+	private static String checksum(CharSequence line) {
+		CRC32 crc = new CRC32();
+		crc.update(line.toString().getBytes(UTF8));
+		return Long.toHexString(crc.getValue());
+	}
+
+	private static String nullToEmpty(String value) {
+		return value == null ? "" : value;
+	}
+
+	private static String emptyToNull(String value) {
+		return value.length() == 0 ? null : value;
+	}
+
+	public String toString() {
+		return "Journal " + file + ": " + completed.size() + " URLs completed before, " + recorded.size()
+				+ " recorded by this run";
+	}
+
+	/**
+	 * A URL completed by a run.
+	 */
+	public static class Entry {
+
+		private final int status;
+		private final String file;
+		private final long length;
+		private final String hash;
+
+		Entry(int status, String file, long length, String hash) {
+			this.status = status;
+			this.file = file;
+			this.length = length;
+			this.hash = hash;
+		}
+
+		public int getStatus() {
+			return status;
+		}
+
+		/**
+		 * @return the path of the spilled body, or null if the body was
+		 *         passed on in the row
+		 */
+		public String getFile() {
+			return file;
+		}
+
+		/**
+		 * @return the result to pass on instead of downloading the URL, or
+		 *         null if the body was not kept or its file is gone
+		 */
+		UrlData toResult(String url) {
+			if (file == null || !new File(file).isFile()) {
+				return null;
+			}
+			UrlData result = new UrlData(url);
+			result.status = status;
+			result.file = new File(file);
+			result.length = length;
+			result.hash = hash;
+			result.source = UrlData.SOURCE_JOURNAL;
+			return result;
+		}
+	}
+
+}
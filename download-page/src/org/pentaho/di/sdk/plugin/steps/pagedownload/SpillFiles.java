@@ -0,0 +1,87 @@
+package org.pentaho.di.sdk.plugin.steps.pagedownload;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+
+/**
+ * Temporary files holding response bodies too large to be passed on in a
+ * row. Each step copy gets its own directory, which is deleted with all its
+ * files once the transformation has finished and no later step can still be
+ * reading them.
+ */
+public class SpillFiles {
+
+	private final File parent;
+	private final long threshold;
+	private File directory;
+
+	/**
+	 * @param parent
+	 *            directory to create the step copy's directory in, null for
+	 *            the system temporary directory
+	 * @param threshold
+	 *            size in bytes above which a body is written to a file
+	 */
+	SpillFiles(File parent, long threshold) {
+		this.parent = parent;
+		this.threshold = threshold;
+	}
+
+	public long getThreshold() {
+		return threshold;
+	}
+
+	/**
+	 * Creates a new empty file, creating the directory on first use.
+	 */
+	public synchronized File newFile() throws IOException {
+		if (directory == null) {
+			if (parent != null && !parent.isDirectory() && !parent.mkdirs() && !parent.isDirectory()) {
+				throw new IOException("Unable to create spill directory " + parent);
+			}
+			directory = parent == null ? Files.createTempDirectory("pagedownload").toFile()
+					: Files.createTempDirectory(parent.toPath(), "pagedownload").toFile();
+		}
+		return File.createTempFile("body", ".tmp", directory);
+	}
+
+	/**
+	 * Deletes the directory and every file in it.
+	 */
+	public synchronized void delete() {
+		if (directory == null) {
+			return;
+		}
+		File[] files = directory.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				file.delete();
+			}
+		}
+		directory.delete();
+		directory = null;
+	}
+
+	/**
+	 * Maps a spilled body into memory for reading, so a later step can work on
+	 * it without copying it onto the heap.
+	 *
+	 * @param path
+	 *            the value of the file field written by the step
+	 */
+	public static MappedByteBuffer map(String path) throws IOException {
+		RandomAccessFile file = new RandomAccessFile(path, "r");
+		try {
+			FileChannel channel = file.getChannel();
+			// the mapping stays valid after the channel is closed
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		} finally {
+			file.close();
+		}
+	}
+
+}
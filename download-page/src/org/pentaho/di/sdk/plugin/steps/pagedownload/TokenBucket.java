@@ -0,0 +1,55 @@
+package org.pentaho.di.sdk.plugin.steps.pagedownload;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rate limiter handing out a fixed number of permits per second. Unused
+ * permits are saved up to the bucket capacity, which allows short bursts.
+ * Not thread-safe, callers synchronize.
+ */
+public class TokenBucket {
+
+	private final double permitsPerNano;
+	private final double capacity;
+	private double tokens;
+	private long refilledAt;
+
+	TokenBucket(double permitsPerSecond, double capacity, long now) {
+		this.permitsPerNano = permitsPerSecond / TimeUnit.SECONDS.toNanos(1);
+		this.capacity = capacity;
+		this.tokens = capacity;
+		this.refilledAt = now;
+	}
+
+	/**
+	 * Takes a permit if one is available at the given time.
+	 * 
+	 * @param now
+	 *            the current {@link System#nanoTime()}
+	 * @return 0 if a permit was taken, otherwise the nanoseconds until the
+	 *         next permit becomes available
+	 */
+	public long tryAcquire(long now) {
+		if (now > refilledAt) {
+			tokens = Math.min(capacity, tokens + (now - refilledAt) * permitsPerNano);
+			refilledAt = now;
+		}
+		if (tokens >= 1) {
+			tokens -= 1;
+			return 0;
+		}
+		return Math.max(1, (long) Math.ceil((1 - tokens) / permitsPerNano));
+	}
+
+	/**
+	 * @param now
+	 *            the current {@link System#nanoTime()}
+	 * @return 0 if the bucket is at its capacity, otherwise the nanoseconds
+	 *         until it is
+	 */
+	public long untilFull(long now) {
+		double available = Math.min(capacity, tokens + Math.max(0, now - refilledAt) * permitsPerNano);
+		return available >= capacity ? 0 : Math.max(1, (long) Math.ceil((capacity - available) / permitsPerNano));
+	}
+
+}
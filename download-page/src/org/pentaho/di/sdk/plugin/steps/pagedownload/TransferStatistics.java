@@ -0,0 +1,94 @@
+package org.pentaho.di.sdk.plugin.steps.pagedownload;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bytes received per host, both as they came over the wire and after the
+ * content encoding was undone, showing what compression saves.
+ */
+public class TransferStatistics {
+
+	private final ConcurrentMap<String, Counters> hosts = new ConcurrentHashMap<String, Counters>();
+
+	/**
+	 * @param wireBytes
+	 *            body bytes as received, possibly compressed
+	 * @param bodyBytes
+	 *            body bytes after decoding
+	 */
+	public void add(String url, long wireBytes, long bodyBytes) {
+		String host = HostScheduler.getHost(url);
+		Counters counters = hosts.get(host);
+		if (counters == null) {
+			Counters created = new Counters();
+			counters = hosts.putIfAbsent(host, created);
+			if (counters == null) {
+				counters = created;
+			}
+		}
+		counters.responses.incrementAndGet();
+		counters.wireBytes.addAndGet(wireBytes);
+		counters.bodyBytes.addAndGet(bodyBytes);
+	}
+
+	public List<HostTransfer> getStatistics() {
+		List<HostTransfer> statistics = new ArrayList<HostTransfer>(hosts.size());
+		for (Map.Entry<String, Counters> host : hosts.entrySet()) {
+			statistics.add(new HostTransfer(host.getKey(), host.getValue()));
+		}
+		return statistics;
+	}
+
+	private static class Counters {
+
+		final AtomicLong responses = new AtomicLong();
+		final AtomicLong wireBytes = new AtomicLong();
+		final AtomicLong bodyBytes = new AtomicLong();
+	}
+
+	/**
+	 * A snapshot of the bytes received from one host.
+	 */
+	public static class HostTransfer {
+
+		private final String host;
+		private final long responses;
+		private final long wireBytes;
+		private final long bodyBytes;
+
+		HostTransfer(String host, Counters counters) {
+			this.host = host;
+			this.responses = counters.responses.get();
+			this.wireBytes = counters.wireBytes.get();
+			this.bodyBytes = counters.bodyBytes.get();
+		}
+
+		public String getHost() {
+			return host;
+		}
+
+		public long getResponses() {
+			return responses;
+		}
+
+		public long getWireBytes() {
+			return wireBytes;
+		}
+
+		public long getBodyBytes() {
+			return bodyBytes;
+		}
+
+		public String toString() {
+			long saved = bodyBytes == 0 ? 0 : 100 - wireBytes * 100 / bodyBytes;
+			return host + ": " + responses + " responses, " + wireBytes + " bytes received, " + bodyBytes
+					+ " bytes decoded (" + saved + "% saved by compression)";
+		}
+	}
+
+}
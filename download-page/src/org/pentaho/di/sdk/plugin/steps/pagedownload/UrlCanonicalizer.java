@@ -0,0 +1,157 @@
+package org.pentaho.di.sdk.plugin.steps.pagedownload;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Brings the variants of a URL to one form before it is downloaded, so the
+ * caches, the journal, the crawl and the host limits all see the same key.
+ * The scheme and host are lower cased, the default port and the fragment are
+ * dropped, an empty path becomes "/", query parameters whose name matches a
+ * pattern are removed and the others are optionally sorted by name.
+ *
+ * The URL is scanned once and returned as is when it is already in that
+ * form, which is the usual case. The path and the values of the parameters
+ * are never decoded or changed.
+ */
+public class UrlCanonicalizer {
+
+	private static final Comparator<String> BY_NAME = new Comparator<String>() {
+		public int compare(String a, String b) {
+			return name(a).compareTo(name(b));
+		}
+	};
+
+	private final Pattern stripParameters;
+	private final boolean sortParameters;
+
+	/**
+	 * @param stripParameters
+	 *            names of the query parameters to remove, such as tracking
+	 *            parameters, null to keep all
+	 * @param sortParameters
+	 *            whether to sort the query parameters by name, parameters of
+	 *            the same name keep their order
+	 */
+	public UrlCanonicalizer(Pattern stripParameters, boolean sortParameters) {
+		this.stripParameters = stripParameters;
+		this.sortParameters = sortParameters;
+	}
+
+	public String canonicalize(String url) {
+		int schemeEnd = url.indexOf("://");
+		if (schemeEnd <= 0) {
+			return url;
+		}
+		int length = url.length();
+		int authorityStart = schemeEnd + 3;
+		int authorityEnd = authorityStart;
+		while (authorityEnd < length) {
+			char c = url.charAt(authorityEnd);
+			if (c == '/' || c == '?' || c == '#') {
+				break;
+			}
+			authorityEnd++;
+		}
+		int fragment = url.indexOf('#', authorityEnd);
+		int end = fragment < 0 ? length : fragment;
+		int query = url.indexOf('?', authorityEnd);
+		if (query >= end) {
+			query = -1;
+		}
+		int pathEnd = query < 0 ? end : query;
+
+		// lower casing returns the same string if nothing changes
+		String rawScheme = url.substring(0, schemeEnd);
+		String scheme = rawScheme.toLowerCase(Locale.ROOT);
+
+		// user info and host, the port only if it is not the scheme's default
+		int hostStart = url.lastIndexOf('@', authorityEnd - 1) + 1;
+		if (hostStart <= authorityStart) {
+			hostStart = authorityStart;
+		}
+		int portStart = url.lastIndexOf(':', authorityEnd - 1);
+		if (portStart < hostStart || url.lastIndexOf(']', authorityEnd - 1) > portStart) {
+			// no port, or the colon is part of an IPv6 address
+			portStart = authorityEnd;
+		}
+		String port = url.substring(Math.min(portStart + 1, authorityEnd), authorityEnd);
+		boolean dropPort = portStart < authorityEnd
+				&& (port.length() == 0 || "http".equals(scheme) && "80".equals(port) || "https".equals(scheme) && "443".equals(port));
+		String rawHost = url.substring(hostStart, portStart);
+		String host = rawHost.toLowerCase(Locale.ROOT);
+
+		String parameters = query < 0 ? null : canonicalQuery(url.substring(query + 1, end));
+
+		boolean changed = scheme != rawScheme || host != rawHost || dropPort || fragment >= 0
+				|| pathEnd == authorityEnd || query >= 0 && (parameters == null || parameters.length() != end - query - 1
+						|| !url.regionMatches(query + 1, parameters, 0, parameters.length()));
+		if (!changed) {
+			return url;
+		}
+
+		StringBuilder canonical = new StringBuilder(end + 1);
+		canonical.append(scheme).append(url, schemeEnd, hostStart).append(host);
+		if (!dropPort) {
+			canonical.append(url, portStart, authorityEnd);
+		}
+		if (pathEnd == authorityEnd) {
+			canonical.append('/');
+		} else {
+			canonical.append(url, authorityEnd, pathEnd);
+		}
+		if (parameters != null) {
+			canonical.append('?').append(parameters);
+		}
+		return canonical.toString();
+	}
+
+	// The query without the stripped parameters and in order, null if none
+	// is left.
+	private String canonicalQuery(String query) {
+		if (query.length() == 0) {
+			return null;
+		}
+		if (stripParameters == null && (!sortParameters || query.indexOf('&') < 0)) {
+			return query;
+		}
+		List<String> parameters = new ArrayList<String>();
+		int start = 0;
+		while (start <= query.length()) {
+			int next = query.indexOf('&', start);
+			if (next < 0) {
+				next = query.length();
+			}
+			String parameter = query.substring(start, next);
+			if (parameter.length() > 0
+					&& (stripParameters == null || !stripParameters.matcher(name(parameter)).matches())) {
+				parameters.add(parameter);
+			}
+			start = next + 1;
+		}
+		if (parameters.isEmpty()) {
+			return null;
+		}
+		if (sortParameters) {
+			Collections.sort(parameters, BY_NAME);
+		}
+		StringBuilder canonical = new StringBuilder(query.length());
+		for (String parameter : parameters) {
+			if (canonical.length() > 0) {
+				canonical.append('&');
+			}
+			canonical.append(parameter);
+		}
+		return canonical.toString();
+	}
+
+	private static String name(String parameter) {
+		int equals = parameter.indexOf('=');
+		return equals < 0 ? parameter : parameter.substring(0, equals);
+	}
+
+}
@@ -1,27 +1,77 @@
 
 package org.pentaho.di.sdk.plugin.steps.pagedownload;
 
-import java.io.BufferedReader;
-import java.io.DataOutputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
-import java.net.MalformedURLException;
-import java.net.URL;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 public class UrlData {
 
+	// largest body that fits in a Java array
+	private static final int MAX_BODY_LENGTH = Integer.MAX_VALUE - 8;
+
+	// largest array allocated for a body before its bytes arrive
+	static final int MAX_INITIAL_BUFFER = 1 << 20;
+
+	/**
+	 * Where a result came from, see {@link #getSource()}.
+	 */
+	public static final String SOURCE_NETWORK = "network";
+	public static final String SOURCE_CACHE = "cache";
+	public static final String SOURCE_COALESCED = "coalesced";
+	public static final String SOURCE_JOURNAL = "journal";
+
 	String url;
 	String data;
+	int status;
+
+	// set instead of data when the step passes the content on as raw bytes
+	byte[] bytes;
+
+	// set instead of data when the body was written to a temporary file
+	File file;
+	long length;
+	String hash;
+
+	// set when only the start of the body was kept
+	boolean truncated;
+
+	// what the response said about itself and how long it took
+	String finalUrl;
+	String contentType;
+	long received;
+	RequestTiming timing;
+	String source = SOURCE_NETWORK;
+
+	// conditional request state, set by request() for read()
+	private boolean head;
+	private DiskCache cache;
+	private String cacheKey;
+	private DiskCache.Entry cached;
+	private long range;
 
 	UrlData() {
 
 	}
 
-	UrlData(String url) throws MalformedURLException, IOException {
+	UrlData(String url) {
+		this.url = url;
+	}
+
+	UrlData(String url, PageDownloader downloader) throws IOException {
 		this.url = url;
-		scrap();
+		scrap(downloader);
 	}
 
 	public String getUrl() {
@@ -36,41 +86,441 @@ public class UrlData {
 		return data;
 	}
 
-	public void scrap() throws MalformedURLException, IOException {
-		
-		URL conn = new URL(url);
-		HttpURLConnection connection = (HttpURLConnection)conn.openConnection();
-
-        connection.setRequestMethod("POST");
-        connection.setRequestProperty("Content-Type", 
-                   "application/x-www-form-urlencoded");
-        connection.setRequestProperty("Content-Language", "en-US"); 
-        connection.setRequestProperty("User-Agent",
-                "Mozilla/5.0 (Windows NT 5.1) AppleWebKit/535.11 (KHTML, like Gecko) Chrome/17.0.963.56 Safari/535.11");
-
-        connection.setUseCaches(false);
-        connection.setDoInput(true);
-        connection.setDoOutput(true);
-
-        //send Request 
-        DataOutputStream dataout = new DataOutputStream(connection.getOutputStream());
-        dataout.writeBytes("");
-        dataout.flush();
-        dataout.close();
-		
-		StringBuffer sb = new StringBuffer();
+	/**
+	 * @return the HTTP status of the response
+	 */
+	public int getStatus() {
+		return status;
+	}
+
+	/**
+	 * @return the undecoded body, or null if the body was decoded into
+	 *         {@link #getData()}
+	 */
+	public byte[] getBytes() {
+		return bytes;
+	}
+
+	/**
+	 * @return the temporary file holding the body, or null if the body is
+	 *         in {@link #getData()}
+	 */
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * @return the size in bytes of the spilled body
+	 */
+	public long getLength() {
+		return length;
+	}
+
+	/**
+	 * @return the hex encoded SHA-256 hash of the spilled body
+	 */
+	public String getHash() {
+		return hash;
+	}
+
+	/**
+	 * @return true if the body was cut at the downloader's size cap
+	 */
+	public boolean isTruncated() {
+		return truncated;
+	}
+
+	/**
+	 * @return the URL the response came from after following redirects
+	 */
+	public String getFinalUrl() {
+		return finalUrl;
+	}
+
+	/**
+	 * @return the content type of the body, or null if the server sent none
+	 */
+	public String getContentType() {
+		return contentType;
+	}
+
+	/**
+	 * @return the number of bytes of the body received, before decompression
+	 */
+	public long getReceived() {
+		return received;
+	}
+
+	/**
+	 * @return {@link #SOURCE_NETWORK} for a result of its own request,
+	 *         otherwise where it was taken from: the memory cache, a download
+	 *         of the same URL running at the time, or the journal of an
+	 *         earlier run
+	 */
+	public String getSource() {
+		return source;
+	}
+
+	/**
+	 * @return a copy of this result for a row that did not send a request of
+	 *         its own, without the request's timing and bytes received
+	 */
+	UrlData reuse(String source) {
+		UrlData copy = new UrlData(url);
+		copy.data = data;
+		copy.status = status;
+		copy.bytes = bytes;
+		copy.file = file;
+		copy.length = length;
+		copy.hash = hash;
+		copy.truncated = truncated;
+		copy.finalUrl = finalUrl;
+		copy.contentType = contentType;
+		copy.source = source;
+		return copy;
+	}
+
+	/**
+	 * @return where the time of the request went
+	 */
+	public RequestTiming getTiming() {
+		return timing;
+	}
+
+	public void scrap(PageDownloader downloader) throws IOException {
 		
-		//get response
-        InputStream is = connection.getInputStream();
-        BufferedReader br = new BufferedReader(new InputStreamReader(is));
-        String line;
+		//send Request 
+		HttpEngineCall call = downloader.newCall(url, request(downloader));
+		HttpEngineResponse response;
+		try {
+			response = call.execute();
+		} catch (IOException e) {
+			downloader.finished(call);
+			throw e;
+		}
+		try {
+			read(downloader, response);
+		} finally {
+			// a fully read body hands the connection back to the pool
+			try {
+				response.close();
+			} finally {
+				downloader.finished(call);
+			}
+		}
+	}
+
+	/**
+	 * Builds the request headers, made conditional when the disk cache holds
+	 * the page from an earlier run.
+	 */
+	Map<String, String> request(PageDownloader downloader) throws IOException {
+		Map<String, String> headers = new LinkedHashMap<String, String>();
+		headers.put("Content-Language", "en-US");
+		headers.put("Accept-Encoding", ContentDecoder.ACCEPT_ENCODING);
+		headers.put("User-Agent",
+				"Mozilla/5.0 (Windows NT 5.1) AppleWebKit/535.11 (KHTML, like Gecko) Chrome/17.0.963.56 Safari/535.11");
+
+		// a HEAD request has no body to cache
+		head = PageDownloadStepMeta.METHOD_HEAD.equals(downloader.getMethod());
 
-		// read each line and write to System.out
-		while ((line = br.readLine()) != null) {
-			sb.append(line + "\n");
+		// only the start of the body is asked for when the rest is dropped
+		// anyway. A range of a compressed body could not be decoded to its
+		// end, so the body is asked for as it is.
+		range = PageDownloadStepMeta.METHOD_GET.equals(downloader.getMethod()) ? downloader.getMaxBodySize() : 0;
+		if (range > 0) {
+			headers.put("Accept-Encoding", "identity");
+			headers.put("Range", "bytes=0-" + (range - 1));
 		}
 
-		this.data = sb.toString();
+		// a page cached by an earlier run is only downloaded again if it changed
+		cache = head ? null : downloader.getDiskCache();
+		cacheKey = cache == null ? null : DiskCache.key(url);
+		cached = cache == null ? null : cache.get(cacheKey);
+		if (cached != null) {
+			if (cached.getEtag() != null) {
+				headers.put("If-None-Match", cached.getEtag());
+			}
+			if (cached.getLastModified() != null) {
+				headers.put("If-Modified-Since", cached.getLastModified());
+			}
+		}
+		return headers;
+	}
+
+	/**
+	 * Reads the response to the request built by
+	 * {@link #request(PageDownloader)}. The caller closes the response.
+	 */
+	void read(PageDownloader downloader, HttpEngineResponse response) throws IOException {
+		ContentDecoder.CountingInputStream is = new ContentDecoder.CountingInputStream(response.getBody());
+		status = response.getStatus();
+		finalUrl = response.getUrl();
+		contentType = response.getHeader("Content-Type");
+		timing = response.getTiming();
+		long start = System.nanoTime();
+		try {
+			read(downloader, response, is);
+		} finally {
+			timing.addDownload(System.nanoTime() - start);
+			received = is.getCount();
+		}
+	}
+
+	private void read(PageDownloader downloader, HttpEngineResponse response, ContentDecoder.CountingInputStream is)
+			throws IOException {
+		// the result may end up in the memory cache, the cached body must not
+		DiskCache.Entry cached = this.cached;
+		this.cached = null;
+
+		if (status == 304 && cached != null) {
+			drain(is);
+			cache.touch(cacheKey);
+			contentType = cached.getContentType();
+			setBody(downloader, contentType, truncate(downloader, cached.getBody()));
+			return;
+		}
+		if (status == 416 && range > 0) {
+			// not even the first byte exists, the body is empty
+			drain(is);
+			setBody(downloader, contentType, new byte[0]);
+			return;
+		}
+		if (head) {
+			// the status and headers are the result, an error status included
+			drain(is);
+			String description = describe(status, response.getHeaders());
+			setBody(downloader, "text/plain; charset=UTF-8", description.getBytes(CharsetSniffer.UTF8));
+			return;
+		}
+		if (status >= 400) {
+			drain(is);
+			throw new HttpStatusException(url, status, parseRetryAfter(response.getHeader("Retry-After")));
+		}
+
+		//get response, decompressed while it is read and decoded once the whole body is in
+		String contentEncoding = response.getHeader("Content-Encoding");
+		long contentLength = contentEncoding == null ? parseNumber(response.getHeader("Content-Length")) : -1;
+		InputStream in = ContentDecoder.decode(contentEncoding, is);
+
+		try {
+			// bodies above the spill threshold go to a temporary file instead
+			// of the heap, a declared length that large skips the buffer. Reading
+			// stops at the size cap and closing the response drops the rest.
+			long maxBodySize = downloader.getMaxBodySize();
+			SpillFiles spillFiles = downloader.getSpillFiles();
+			int limit = spillFiles == null ? MAX_BODY_LENGTH - 1 : (int) Math.min(MAX_BODY_LENGTH - 1, spillFiles.getThreshold());
+			boolean capped = maxBodySize > 0 && maxBodySize <= limit;
+			if (capped) {
+				limit = (int) maxBodySize;
+				spillFiles = null;
+			}
+			NioHttpEngine.SpilledBody spilled = spillFiles != null && response instanceof NioHttpEngine.Response
+					? ((NioHttpEngine.Response) response).takeSpilledBody() : null;
+			if (spilled != null) {
+				// the engine already wrote the body to a spill file, which is
+				// kept rather than copied into another one
+				is.addCount(spilled.getReceived());
+				file = spilled.getFile();
+				length = spilled.getLength();
+				hash = toHex(spilled.getDigest());
+				truncated = spilled.isTruncated();
+				if (status == 206) {
+					truncated = isPartial(response.getHeader("Content-Range"), length);
+				}
+				downloader.getTransferStatistics().add(url, is.getCount(), length);
+				return;
+			}
+			byte[] body = spillFiles != null && contentLength > limit ? new byte[0] : readBody(in, contentLength, limit);
+			if (spillFiles != null && (contentLength > limit || body.length > limit)) {
+				spill(spillFiles, body, in, maxBodySize > 0 ? maxBodySize : Long.MAX_VALUE);
+				if (status == 206) {
+					truncated = isPartial(response.getHeader("Content-Range"), length);
+				}
+				downloader.getTransferStatistics().add(url, is.getCount(), length);
+				return;
+			}
+			if (body.length > limit) {
+				if (!capped) {
+					throw new IOException("Response body of " + url + " is larger than " + limit + " bytes");
+				}
+				body = Arrays.copyOf(body, limit);
+				truncated = true;
+			} else if (status == 206) {
+				truncated = isPartial(response.getHeader("Content-Range"), body.length);
+			}
+			downloader.getTransferStatistics().add(url, is.getCount(), body.length);
+			setBody(downloader, contentType, body);
+
+			// a partial body is never cached, it would be served in full later,
+			// nor one the server asked not to be stored
+			String etag = response.getHeader("ETag");
+			String lastModified = response.getHeader("Last-Modified");
+			if (cache != null && status == 200 && !truncated && (etag != null || lastModified != null)
+					&& mayStore(response.getHeaders())) {
+				cache.put(cacheKey, new DiskCache.Entry(etag, lastModified, contentType, body));
+			}
+		} finally {
+			// ends the decoders and frees their native memory, the body is
+			// left to the caller closing the response
+			if (in != is) {
+				in.close();
+			}
+		}
+	}
+
+	// Keeps the body as it is when the step emits bytes, otherwise decodes it
+	private void setBody(PageDownloader downloader, String contentType, byte[] body) {
+		if (downloader.getBinaryContent()) {
+			this.bytes = body;
+		} else {
+			this.data = decode(contentType, body);
+		}
+	}
+
+	// Cuts a body kept from an earlier download at the size cap
+	private byte[] truncate(PageDownloader downloader, byte[] body) {
+		long maxBodySize = downloader.getMaxBodySize();
+		if (maxBodySize <= 0 || body.length <= maxBodySize) {
+			return body;
+		}
+		truncated = true;
+		return Arrays.copyOf(body, (int) maxBodySize);
+	}
+
+	// Status code on the first line, then the headers as they were received
+	private static String describe(int status, Map<String, List<String>> headers) {
+		StringBuilder sb = new StringBuilder();
+		sb.append(status).append("\r\n");
+		for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+			for (String value : header.getValue()) {
+				sb.append(header.getKey()).append(": ").append(value).append("\r\n");
+			}
+		}
+		return sb.toString();
+	}
+
+	private static String decode(String contentType, byte[] body) {
+		Charset charset = CharsetSniffer.detect(contentType, body, CharsetSniffer.UTF8);
+		int offset = CharsetSniffer.byteOrderMarkLength(body);
+		return new String(body, offset, body.length - offset, charset);
+	}
+
+	// Reads the body into a single array, stopping once it is longer than
+	// limit. With a Content-Length up to 1 MB the array is allocated once at
+	// its final size, otherwise it grows by doubling and is trimmed at the
+	// end. A larger declared length is not trusted with the first array, a
+	// wrong or hostile header would take memory before any byte arrived.
+	static byte[] readBody(InputStream is, long contentLength, int limit) throws IOException {
+		int max = limit + 1;
+		byte[] buffer = new byte[contentLength >= 0 ? (int) Math.min(Math.min(contentLength, MAX_INITIAL_BUFFER), max)
+				: Math.min(8192, max)];
+		int length = 0;
+		while (length < max) {
+			if (length == buffer.length) {
+				// the array is full, only grow if the server sends more
+				int next = is.read();
+				if (next < 0) {
+					break;
+				}
+				buffer = Arrays.copyOf(buffer, (int) Math.min(max, Math.max(8192, 2L * buffer.length)));
+				buffer[length++] = (byte) next;
+				continue;
+			}
+			int n = is.read(buffer, length, buffer.length - length);
+			if (n < 0) {
+				break;
+			}
+			length += n;
+		}
+		return length == buffer.length ? buffer : Arrays.copyOf(buffer, length);
+	}
+
+	// Writes what was read so far and the rest of the body, up to max bytes,
+	// to a new file, hashing it on the way.
+	private void spill(SpillFiles spillFiles, byte[] head, InputStream rest, long max) throws IOException {
+		File target = spillFiles.newFile();
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+		long written = head.length;
+		OutputStream out = new DigestOutputStream(new BufferedOutputStream(new FileOutputStream(target)), digest);
+		try {
+			out.write(head);
+			byte[] buffer = new byte[65536];
+			int n;
+			while (written < max && (n = rest.read(buffer, 0, (int) Math.min(buffer.length, max - written))) != -1) {
+				out.write(buffer, 0, n);
+				written += n;
+			}
+			out.close();
+			truncated = written >= max && rest.read() != -1;
+		} catch (IOException e) {
+			out.close();
+			target.delete();
+			throw e;
+		}
+
+		this.file = target;
+		this.length = written;
+		this.hash = toHex(digest.digest());
+	}
+
+	private static String toHex(byte[] digest) {
+		StringBuilder sb = new StringBuilder(2 * digest.length);
+		for (byte b : digest) {
+			sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+		}
+		return sb.toString();
+	}
+
+	// The directives may be spread over several Cache-Control headers
+	private static boolean mayStore(Map<String, List<String>> headers) {
+		for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+			if ("Cache-Control".equalsIgnoreCase(header.getKey())) {
+				for (String value : header.getValue()) {
+					if (!DiskCache.mayStore(value)) {
+						return false;
+					}
+				}
+			}
+		}
+		return true;
+	}
+
+	private static long parseNumber(String value) {
+		if (value == null) {
+			return -1;
+		}
+		try {
+			return Long.parseLong(value.trim());
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	// True if a 206 response holds less than the whole body. Without a
+	// known total a body as long as the requested range is taken as cut.
+	private boolean isPartial(String contentRange, long received) {
+		int slash = contentRange == null ? -1 : contentRange.lastIndexOf('/');
+		long total = slash < 0 ? -1 : parseNumber(contentRange.substring(slash + 1));
+		return total < 0 ? received >= range : total > received;
+	}
+
+	// Retry-After in seconds, the HTTP date form is not worth parsing here
+	private static long parseRetryAfter(String retryAfter) {
+		long seconds = parseNumber(retryAfter);
+		return seconds > 0 ? seconds * 1000 : 0;
+	}
+
+	private static void drain(InputStream is) throws IOException {
+		byte[] buffer = new byte[8192];
+		while (is.read(buffer) != -1) {
+			// discard
+		}
 	}
 
 }
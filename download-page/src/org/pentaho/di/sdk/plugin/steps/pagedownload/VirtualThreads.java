@@ -0,0 +1,36 @@
+package org.pentaho.di.sdk.plugin.steps.pagedownload;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Virtual threads of Java 21, looked up by reflection so the step still runs
+ * on the Java 8 it is built for.
+ */
+final class VirtualThreads {
+
+	private VirtualThreads() {
+	}
+
+	/**
+	 * @param prefix
+	 *            name of the threads, followed by a counter
+	 * @return an executor starting a new virtual thread for every task, or
+	 *         null if the JVM has no virtual threads
+	 */
+	static ExecutorService newExecutor(String prefix) {
+		try {
+			Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+			Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+			builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, prefix, 1L);
+			ThreadFactory factory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+			return (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class)
+					.invoke(null, factory);
+		} catch (Exception e) {
+			// an older JVM, or a preview JVM without --enable-preview
+			return null;
+		}
+	}
+
+}
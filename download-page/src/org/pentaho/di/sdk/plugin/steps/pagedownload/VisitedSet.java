@@ -0,0 +1,109 @@
+package org.pentaho.di.sdk.plugin.steps.pagedownload;
+
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+
+/**
+ * The URLs a crawl has already queued, kept as a Bloom filter in direct
+ * memory so a crawl of hundreds of millions of URLs costs a fixed number of
+ * bytes outside the heap, about 1.2 bytes per expected URL at the default 1%
+ * false positives, and nothing for the garbage collector to trace.
+ *
+ * A false positive makes the crawl miss a URL it has not seen, a URL is
+ * never queued twice. The filter is used by the step thread only and is not
+ * thread-safe.
+ */
+public class VisitedSet {
+
+	// largest direct buffer, in bytes
+	private static final long MAX_BYTES = Integer.MAX_VALUE & ~7L;
+
+	// maximum number of bits set per URL
+	private static final int MAX_HASHES = 16;
+
+	private final LongBuffer words;
+	private final long bits;
+	private final int hashes;
+	private long size;
+
+	/**
+	 * @param expected
+	 *            number of URLs the filter is sized for, more are taken with
+	 *            a rising rate of false positives
+	 * @param falsePositives
+	 *            rate of false positives once the expected number of URLs is
+	 *            added, between 0 and 1
+	 */
+	public VisitedSet(long expected, double falsePositives) {
+		expected = Math.max(1, expected);
+		double optimal = Math.ceil(-expected * Math.log(falsePositives) / (Math.log(2) * Math.log(2)));
+		long bits = Math.min(MAX_BYTES * 8, Math.max(64, (long) optimal));
+		this.bits = (bits + 63) & ~63L;
+		this.hashes = (int) Math.max(1, Math.min(MAX_HASHES, Math.round((double) this.bits / expected * Math.log(2))));
+		this.words = ByteBuffer.allocateDirect((int) (this.bits / 8)).asLongBuffer();
+	}
+
+	/**
+	 * Adds a URL.
+	 *
+	 * @return true if the URL was not in the set, false if it was or is a
+	 *         false positive
+	 */
+	public boolean add(CharSequence url) {
+		long h1 = 0xcbf29ce484222325L;
+		long h2 = 0x9e3779b97f4a7c15L;
+		for (int i = 0; i < url.length(); i++) {
+			char c = url.charAt(i);
+			h1 = (h1 ^ c) * 0x100000001b3L;
+			h2 = Long.rotateLeft(h2 ^ c, 31) * 0xc2b2ae3d27d4eb4fL;
+		}
+		h1 = mix(h1);
+		h2 = mix(h2) | 1;
+
+		boolean added = false;
+		long hash = h1;
+		for (int i = 0; i < hashes; i++, hash += h2) {
+			long bit = (hash & Long.MAX_VALUE) % bits;
+			int index = (int) (bit >>> 6);
+			long word = words.get(index);
+			long mask = 1L << bit;
+			if ((word & mask) == 0) {
+				words.put(index, word | mask);
+				added = true;
+			}
+		}
+		if (added) {
+			size++;
+		}
+		return added;
+	}
+
+	/**
+	 * @return the number of URLs added
+	 */
+	public long size() {
+		return size;
+	}
+
+	/**
+	 * @return the bytes of direct memory taken by the filter
+	 */
+	public long getBytes() {
+		return bits / 8;
+	}
+
+	// Spreads the bits of a hash, the finalizer of MurmurHash3.
+	private static long mix(long h) {
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+
+	public String toString() {
+		return size + " URLs visited in " + (getBytes() >> 20) + " MB";
+	}
+
+}
@@ -0,0 +1,40 @@
+package org.pentaho.di.sdk.plugin.steps.pagedownload;
+
+import java.nio.charset.Charset;
+
+import junit.framework.TestCase;
+
+public class CharsetSnifferTest extends TestCase {
+
+	private static final Charset LATIN1 = Charset.forName("ISO-8859-1");
+
+	public void testContentTypeHeader() throws Exception {
+		assertEquals(LATIN1, detect("text/html; charset=\"ISO-8859-1\"", "<html></html>"));
+	}
+
+	public void testMetaCharset() throws Exception {
+		assertEquals(Charset.forName("windows-1252"),
+				detect("text/html", "<html><head><meta charset='windows-1252'/></head></html>"));
+	}
+
+	public void testMetaHttpEquiv() throws Exception {
+		assertEquals(LATIN1, detect(null,
+				"<html><head><meta name=\"x\"><META HTTP-EQUIV=\"Content-Type\" CONTENT=\"text/html; charset=iso-8859-1\"></head>"));
+	}
+
+	public void testByteOrderMarkWins() throws Exception {
+		byte[] body = { (byte) 0xef, (byte) 0xbb, (byte) 0xbf, 'a' };
+		assertEquals(CharsetSniffer.UTF8, CharsetSniffer.detect("text/html; charset=iso-8859-1", body, LATIN1));
+		assertEquals(3, CharsetSniffer.byteOrderMarkLength(body));
+	}
+
+	public void testFallback() throws Exception {
+		assertEquals(LATIN1, detect("application/json", "{\"charset\": 1}"));
+		assertEquals(LATIN1, detect("text/html; charset=no-such-charset", "<html></html>"));
+	}
+
+	private static Charset detect(String contentType, String body) throws Exception {
+		return CharsetSniffer.detect(contentType, body.getBytes("US-ASCII"), LATIN1);
+	}
+
+}
@@ -0,0 +1,61 @@
+package org.pentaho.di.sdk.plugin.steps.pagedownload;
+
+import junit.framework.TestCase;
+
+public class CircuitBreakerTest extends TestCase {
+
+	public void testOpensAtErrorRate() {
+		CircuitBreaker breaker = new CircuitBreaker(50, 1000);
+		for (int i = 0; i < 9; i++) {
+			assertTrue(breaker.allowRequest(0));
+			breaker.record(false, 0);
+		}
+		// not enough requests yet to judge the host
+		assertFalse(breaker.isOpen());
+
+		breaker.record(false, 0);
+		assertTrue(breaker.isOpen());
+		assertFalse(breaker.allowRequest(999));
+	}
+
+	public void testStaysClosedBelowErrorRate() {
+		CircuitBreaker breaker = new CircuitBreaker(50, 1000);
+		for (int i = 0; i < 40; i++) {
+			breaker.record(i % 3 != 0, 0);
+		}
+		assertFalse(breaker.isOpen());
+	}
+
+	public void testSingleTrialAfterOpenTime() {
+		CircuitBreaker breaker = new CircuitBreaker(100, 1000);
+		for (int i = 0; i < 10; i++) {
+			breaker.record(false, 0);
+		}
+		assertTrue(breaker.allowRequest(1000));
+		assertFalse(breaker.allowRequest(1000));
+
+		// a failed trial keeps the breaker open for another period
+		breaker.record(false, 1000);
+		assertFalse(breaker.allowRequest(1999));
+		assertTrue(breaker.allowRequest(2000));
+
+		breaker.record(true, 2000);
+		assertFalse(breaker.isOpen());
+		assertTrue(breaker.allowRequest(2000));
+	}
+
+	public void testCancelledTrialLetsNextOneThrough() {
+		CircuitBreaker breaker = new CircuitBreaker(100, 1000);
+		for (int i = 0; i < 10; i++) {
+			breaker.record(false, 0);
+		}
+		assertTrue(breaker.allowRequest(1000));
+
+		// the trial ended with an error that says nothing about the host
+		breaker.cancelTrial();
+		assertTrue(breaker.isOpen());
+		assertTrue(breaker.allowRequest(1000));
+		assertFalse(breaker.allowRequest(1000));
+	}
+
+}
@@ -0,0 +1,67 @@
+package org.pentaho.di.sdk.plugin.steps.pagedownload;
+
+import junit.framework.TestCase;
+
+public class ConcurrencyLimitTest extends TestCase {
+
+	public void testGrowsToMaxWhileLatencyIsSteady() {
+		ConcurrencyLimit limit = new ConcurrencyLimit(2, 50);
+		assertEquals(2, limit.get());
+		for (int i = 0; i < 10; i++) {
+			limit.record(100, true);
+		}
+		// slow start adds one per request
+		assertEquals(12, limit.get());
+		for (int i = 0; i < 100; i++) {
+			limit.record(100, true);
+		}
+		assertEquals(50, limit.get());
+	}
+
+	public void testBacksOffOnceAndThenGrowsSlowly() {
+		ConcurrencyLimit limit = new ConcurrencyLimit(1, 100);
+		for (int i = 0; i < 19; i++) {
+			limit.record(100, true);
+		}
+		assertEquals(20, limit.get());
+
+		limit.record(100, false);
+		assertEquals(18, limit.get());
+		// the other failures of the same round do not cut it again
+		for (int i = 0; i < 5; i++) {
+			limit.record(100, false);
+		}
+		assertEquals(18, limit.get());
+
+		// after the first cut the limit grows by one per round
+		for (int i = 0; i < 18; i++) {
+			limit.record(100, true);
+		}
+		assertEquals(18, limit.get());
+		for (int i = 0; i < 3; i++) {
+			limit.record(100, true);
+		}
+		assertEquals(19, limit.get());
+	}
+
+	public void testRisingLatencyLowersUntilItIsTheNewBaseline() {
+		ConcurrencyLimit limit = new ConcurrencyLimit(4, 40);
+		for (int i = 0; i < 36; i++) {
+			limit.record(100, true);
+		}
+		assertEquals(40, limit.get());
+
+		for (int i = 0; i < 100; i++) {
+			limit.record(10000, true);
+		}
+		assertTrue(limit.get() < 30);
+		assertTrue(limit.get() >= 4);
+
+		// a host that stays slow is eventually taken as it is
+		for (int i = 0; i < 5000; i++) {
+			limit.record(10000, true);
+		}
+		assertEquals(40, limit.get());
+	}
+
+}
@@ -0,0 +1,70 @@
+package org.pentaho.di.sdk.plugin.steps.pagedownload;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import junit.framework.TestCase;
+
+public class ContentDecoderTest extends TestCase {
+
+	private static final byte[] PAGE = "<html><body>hello hello hello hello</body></html>".getBytes();
+
+	public void testGzip() throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		GZIPOutputStream gzip = new GZIPOutputStream(out);
+		gzip.write(PAGE);
+		gzip.close();
+		assertEquals(new String(PAGE), read(ContentDecoder.decode("gzip", new ByteArrayInputStream(out.toByteArray()))));
+	}
+
+	public void testZlibAndRawDeflate() throws Exception {
+		assertEquals(new String(PAGE), read(ContentDecoder.decode("deflate", new ByteArrayInputStream(deflate(false)))));
+		assertEquals(new String(PAGE), read(ContentDecoder.decode("Deflate", new ByteArrayInputStream(deflate(true)))));
+	}
+
+	public void testEmptyBodyIsEmptyPage() throws Exception {
+		assertEquals("", read(ContentDecoder.decode("gzip", new ByteArrayInputStream(new byte[0]))));
+		assertEquals("", read(ContentDecoder.decode("deflate", new ByteArrayInputStream(new byte[0]))));
+	}
+
+	public void testIdentityAndUnknown() throws Exception {
+		assertEquals(new String(PAGE), read(ContentDecoder.decode("identity", new ByteArrayInputStream(PAGE))));
+		try {
+			ContentDecoder.decode("compress", new ByteArrayInputStream(PAGE));
+			fail("unsupported coding accepted");
+		} catch (IOException e) {
+			// expected
+		}
+	}
+
+	public void testCountingInputStream() throws Exception {
+		ContentDecoder.CountingInputStream in = new ContentDecoder.CountingInputStream(new ByteArrayInputStream(PAGE));
+		read(in);
+		assertEquals(PAGE.length, in.getCount());
+	}
+
+	private static byte[] deflate(boolean raw) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		DeflaterOutputStream deflater = new DeflaterOutputStream(out, new Deflater(Deflater.DEFAULT_COMPRESSION, raw));
+		deflater.write(PAGE);
+		deflater.close();
+		return out.toByteArray();
+	}
+
+	private static String read(InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[16];
+		int n;
+		while ((n = in.read(buffer)) != -1) {
+			out.write(buffer, 0, n);
+		}
+		in.close();
+		return new String(out.toByteArray());
+	}
+
+}
@@ -0,0 +1,88 @@
+package org.pentaho.di.sdk.plugin.steps.pagedownload;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import junit.framework.TestCase;
+
+public class CrawlFrontierTest extends TestCase {
+
+	public void testQueuesNewLinksOfTheSiteByDepth() {
+		CrawlFrontier frontier = new CrawlFrontier(2, 1000, null, new VisitedSet(1000, 0.01));
+		PageFetch seed = seed(frontier, "http://www.example.com/");
+
+		Object[] input = { "seed" };
+		frontier.addLinks(seed, input, Arrays.asList("http://www.example.com/a", "http://www.example.com/",
+				"http://blog.example.com/b", "http://other.org/c", "http://notexample.com/d", "http://www.example.com/a"));
+
+		CrawlFrontier.Link a = frontier.poll();
+		PageFetch page = a.toFetch(null);
+		assertEquals("http://www.example.com/a", page.getUrl());
+		assertEquals(1, page.getDepth());
+		assertEquals("http://www.example.com/", page.getReferrer());
+		assertNotSame(input, page.getRow());
+		assertEquals("seed", page.getRow()[0]);
+
+		// the links of a deeper page come after the queued ones
+		frontier.addLinks(page, input, Arrays.asList("http://www.example.com/e"));
+		assertEquals("http://blog.example.com/b", frontier.poll().toFetch(null).getUrl());
+		PageFetch e = frontier.poll().toFetch(null);
+		assertEquals("http://www.example.com/e", e.getUrl());
+		assertEquals(2, e.getDepth());
+
+		// the maximum depth is reached
+		assertFalse(frontier.followsLinksOf(e));
+		frontier.addLinks(e, input, Arrays.asList("http://www.example.com/f"));
+		assertTrue(frontier.isEmpty());
+	}
+
+	public void testFollowsAllowedSitesUpToPageLimit() {
+		CrawlFrontier frontier = new CrawlFrontier(5, 3, Pattern.compile("^https?://other\\.org/"),
+				new VisitedSet(1000, 0.01));
+		PageFetch seed = seed(frontier, "http://example.com/");
+
+		frontier.addLinks(seed, new Object[] { "seed" }, Arrays.asList("http://elsewhere.net/", "http://other.org/a",
+				"http://example.com/b", "http://example.com/c"));
+
+		assertEquals("http://other.org/a", frontier.poll().toFetch(null).getUrl());
+		assertEquals("http://example.com/b", frontier.poll().toFetch(null).getUrl());
+		assertNull(frontier.poll());
+	}
+
+	public void testDropsLinksWhileQueueIsFull() {
+		CrawlFrontier frontier = new CrawlFrontier(1, 1000000, null, new VisitedSet(1000000, 0.01));
+		PageFetch seed = seed(frontier, "http://example.com/");
+		List<String> links = new ArrayList<String>();
+		for (int i = 0; i <= CrawlFrontier.MAX_QUEUED; i++) {
+			links.add("http://example.com/" + i);
+		}
+
+		frontier.addLinks(seed, new Object[0], links);
+
+		int queued = 0;
+		while (frontier.poll() != null) {
+			queued++;
+		}
+		assertEquals(CrawlFrontier.MAX_QUEUED, queued);
+
+		// the dropped link was not marked as visited
+		frontier.addLinks(seed, new Object[0], links.subList(CrawlFrontier.MAX_QUEUED, links.size()));
+		assertNotNull(frontier.poll());
+	}
+
+	public void testSite() {
+		assertEquals("example.com", CrawlFrontier.getSite("https://WWW.Example.com:8443/a"));
+		assertTrue(CrawlFrontier.isInSite("http://a.b.example.com/", "example.com"));
+		assertFalse(CrawlFrontier.isInSite("http://badexample.com/", "example.com"));
+	}
+
+	private static PageFetch seed(CrawlFrontier frontier, String url) {
+		PageFetch seed = new PageFetch(new Object[] { "seed", null }, url, null);
+		seed.crawled(0, null, CrawlFrontier.getSite(url));
+		frontier.seed(url);
+		return seed;
+	}
+
+}
@@ -0,0 +1,122 @@
+package org.pentaho.di.sdk.plugin.steps.pagedownload;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+
+import junit.framework.TestCase;
+
+public class DiskCacheTest extends TestCase {
+
+	private File directory;
+
+	protected void setUp() throws IOException {
+		directory = Files.createTempDirectory("pagedownload-cache").toFile();
+	}
+
+	protected void tearDown() {
+		delete(directory);
+	}
+
+	public void testStoresBodyAndValidators() throws IOException {
+		DiskCache cache = DiskCache.open(directory, 1024 * 1024);
+		try {
+			assertNull(cache.get("http://example.com/a"));
+
+			cache.put("http://example.com/a", new DiskCache.Entry("\"v1\"", null, "text/plain", "hello".getBytes("UTF-8")));
+
+			DiskCache.Entry entry = cache.get("http://example.com/a");
+			assertEquals("\"v1\"", entry.getEtag());
+			assertNull(entry.getLastModified());
+			assertEquals("text/plain", entry.getContentType());
+			assertEquals("hello", new String(entry.getBody(), "UTF-8"));
+		} finally {
+			DiskCache.close(cache);
+		}
+	}
+
+	public void testDamagedEntryIsDeletedMiss() throws IOException {
+		DiskCache cache = DiskCache.open(directory, 1024 * 1024);
+		try {
+			cache.put("http://example.com/a", new DiskCache.Entry("e", null, null, "hello".getBytes("UTF-8")));
+			File file = cache.fileFor("http://example.com/a");
+			byte[] bytes = Files.readAllBytes(file.toPath());
+
+			// a body length larger than the file
+			bytes[bytes.length - 9] = 0x7f;
+			Files.write(file.toPath(), bytes);
+			assertNull(cache.get("http://example.com/a"));
+			assertFalse(file.exists());
+
+			// bytes after the body
+			cache.put("http://example.com/a", new DiskCache.Entry("e", null, null, "hello".getBytes("UTF-8")));
+			Files.write(file.toPath(), new byte[] { 1 }, StandardOpenOption.APPEND);
+			assertNull(cache.get("http://example.com/a"));
+			assertFalse(file.exists());
+		} finally {
+			DiskCache.close(cache);
+		}
+	}
+
+	public void testStoresUrlLongerThanWriteUtfTakes() throws IOException {
+		DiskCache cache = DiskCache.open(directory, 1024 * 1024);
+		try {
+			StringBuilder url = new StringBuilder("http://example.com/?q=");
+			while (url.length() < 70000) {
+				url.append("\u00e9");
+			}
+			cache.put(url.toString(), new DiskCache.Entry("e", null, null, "hello".getBytes("UTF-8")));
+
+			DiskCache.Entry entry = cache.get(url.toString());
+			assertEquals("e", entry.getEtag());
+			assertEquals("hello", new String(entry.getBody(), "UTF-8"));
+		} finally {
+			DiskCache.close(cache);
+		}
+	}
+
+	public void testNoStoreIsNotStored() {
+		assertTrue(DiskCache.mayStore(null));
+		assertTrue(DiskCache.mayStore("max-age=60, private"));
+		assertFalse(DiskCache.mayStore("no-store"));
+		assertFalse(DiskCache.mayStore("max-age=0, No-Store"));
+	}
+
+	public void testKeyIgnoresFragment() {
+		assertEquals("http://example.com/a?b=1", DiskCache.key("http://example.com/a?b=1#top"));
+	}
+
+	public void testEvictsLeastRecentlyUsed() throws IOException {
+		DiskCache cache = DiskCache.open(directory, 3000);
+		try {
+			byte[] body = new byte[900];
+			long now = System.currentTimeMillis();
+			for (int i = 0; i < 3; i++) {
+				cache.put("http://example.com/" + i, new DiskCache.Entry("e", null, null, body));
+				cache.fileFor("http://example.com/" + i).setLastModified(now - (10 - i) * 1000);
+			}
+
+			// using the oldest entry moves it to the end of the eviction order
+			cache.touch("http://example.com/0");
+			cache.put("http://example.com/3", new DiskCache.Entry("e", null, null, body));
+
+			assertNotNull(cache.get("http://example.com/0"));
+			assertNull(cache.get("http://example.com/1"));
+			assertNotNull(cache.get("http://example.com/3"));
+		} finally {
+			DiskCache.close(cache);
+		}
+	}
+
+	private static void delete(File file) {
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+
+}
@@ -0,0 +1,68 @@
+package org.pentaho.di.sdk.plugin.steps.pagedownload;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+public class HostSchedulerTest extends TestCase {
+
+	private ExecutorService executor;
+
+	protected void setUp() {
+		executor = Executors.newFixedThreadPool(4);
+	}
+
+	protected void tearDown() {
+		executor.shutdownNow();
+	}
+
+	public void testForgetsIdleHosts() throws InterruptedException {
+		HostScheduler scheduler = new HostScheduler(executor, 0, 1);
+		try {
+			CountDownLatch done = run(scheduler, "http://a.example.com/", 3);
+			run(scheduler, "http://b.example.com/", 2).await(5, TimeUnit.SECONDS);
+			assertTrue(done.await(5, TimeUnit.SECONDS));
+
+			assertTrue(awaitForgotten(scheduler));
+		} finally {
+			scheduler.shutdown();
+		}
+	}
+
+	public void testRateLimitedHostIsForgottenWhenItsBucketIsFull() throws InterruptedException {
+		// a burst of 4, then one permit every 250 ms
+		HostScheduler scheduler = new HostScheduler(executor, 4, 0);
+		try {
+			long start = System.nanoTime();
+			assertTrue(run(scheduler, "http://example.com/", 6).await(5, TimeUnit.SECONDS));
+			assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(450));
+
+			assertTrue(awaitForgotten(scheduler));
+		} finally {
+			scheduler.shutdown();
+		}
+	}
+
+	private static CountDownLatch run(HostScheduler scheduler, String url, int count) {
+		final CountDownLatch done = new CountDownLatch(count);
+		for (int i = 0; i < count; i++) {
+			scheduler.execute(url + i, new Runnable() {
+				public void run() {
+					done.countDown();
+				}
+			});
+		}
+		return done;
+	}
+
+	private static boolean awaitForgotten(HostScheduler scheduler) throws InterruptedException {
+		for (int i = 0; i < 200 && !scheduler.getStatistics().isEmpty(); i++) {
+			Thread.sleep(20);
+		}
+		return scheduler.getStatistics().isEmpty();
+	}
+
+}
@@ -0,0 +1,53 @@
+package org.pentaho.di.sdk.plugin.steps.pagedownload;
+
+import junit.framework.TestCase;
+
+public class LatencyHistogramTest extends TestCase {
+
+	public void testSmallValuesAreExact() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (int i = 1; i <= 10; i++) {
+			histogram.record(i);
+		}
+		assertEquals(10, histogram.getCount());
+		assertEquals(5, histogram.getPercentile(50));
+		assertEquals(10, histogram.getPercentile(99));
+	}
+
+	public void testBucketsHoldTheirValues() {
+		for (long millis = 0; millis < 100000; millis += 7) {
+			int index = LatencyHistogram.index(millis);
+			assertTrue(millis <= LatencyHistogram.upperBound(index));
+			assertTrue(index == 0 || millis > LatencyHistogram.upperBound(index - 1));
+			// within an eighth of the value
+			assertTrue(LatencyHistogram.upperBound(index) - millis <= millis / 8);
+		}
+	}
+
+	public void testPercentilesOfASlowTail() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (int i = 0; i < 940; i++) {
+			histogram.record(100);
+		}
+		for (int i = 0; i < 50; i++) {
+			histogram.record(1000);
+		}
+		for (int i = 0; i < 10; i++) {
+			histogram.record(30000);
+		}
+		assertTrue(Math.abs(histogram.getPercentile(50) - 100) <= 100 / 8);
+		assertTrue(Math.abs(histogram.getPercentile(95) - 1000) <= 1000 / 8);
+		assertTrue(Math.abs(histogram.getPercentile(99) - 1000) <= 1000 / 8);
+		assertTrue(histogram.getPercentile(100) >= 30000);
+	}
+
+	public void testEmptyAndHugeValues() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		assertEquals(0, histogram.getPercentile(99));
+		histogram.record(Long.MAX_VALUE);
+		histogram.record(-5);
+		assertEquals(0, histogram.getPercentile(50));
+		assertTrue(histogram.getPercentile(100) > 4 * 3600 * 1000L);
+	}
+
+}
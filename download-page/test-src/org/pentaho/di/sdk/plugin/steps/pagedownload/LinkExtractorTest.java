@@ -0,0 +1,40 @@
+package org.pentaho.di.sdk.plugin.steps.pagedownload;
+
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+public class LinkExtractorTest extends TestCase {
+
+	public void testResolvesAgainstPage() {
+		String html = "<p><a href=\"b.html#top\">b</a> <A HREF='/c?x=1&amp;y=2'>c</A>"
+				+ " <a class=x href=http://other.org/d>d</a><iframe src=\"frame.html\"></iframe></p>";
+
+		assertEquals(Arrays.asList("http://example.com/dir/b.html", "http://example.com/c?x=1&y=2",
+				"http://other.org/d", "http://example.com/dir/frame.html"),
+				LinkExtractor.extract(html, "http://example.com/dir/a.html"));
+	}
+
+	public void testUsesBaseElement() {
+		String html = "<head><base href=\"http://cdn.example.com/root/\"></head><a href=\"x\">x</a>";
+
+		assertEquals(Arrays.asList("http://cdn.example.com/root/x"),
+				LinkExtractor.extract(html, "http://example.com/"));
+	}
+
+	public void testSkipsScriptsCommentsAndOtherSchemes() {
+		String html = "<script>var s = '<a href=\"/script\">';</script><!-- <a href=\"/comment\"> -->"
+				+ "<a href=\"javascript:void(0)\">j</a><a href=\"mailto:a@example.com\">m</a><a href=\"#top\">t</a>"
+				+ "<img src=\"/image.png\"><a name=\"anchor\">a</a><a href=\"/kept\">k</a>";
+
+		assertEquals(Arrays.asList("http://example.com/kept"), LinkExtractor.extract(html, "http://example.com/"));
+	}
+
+	public void testToleratesBrokenMarkup() {
+		assertTrue(LinkExtractor.extract("<a href=\"/open", "http://example.com/").size() <= 1);
+		assertTrue(LinkExtractor.extract("<a href=", "http://example.com/").isEmpty());
+		assertTrue(LinkExtractor.extract("<script>", "http://example.com/").isEmpty());
+		assertTrue(LinkExtractor.extract("<a href=\"/x\">", "not a url").isEmpty());
+	}
+
+}
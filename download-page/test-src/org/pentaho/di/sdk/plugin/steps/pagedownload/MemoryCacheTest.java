@@ -0,0 +1,60 @@
+package org.pentaho.di.sdk.plugin.steps.pagedownload;
+
+import junit.framework.TestCase;
+
+public class MemoryCacheTest extends TestCase {
+
+	public void testCountsHitsAndMisses() {
+		MemoryCache cache = new MemoryCache("test", 1024 * 1024, 0);
+
+		assertNull(cache.get("http://example.com/"));
+		cache.put("http://example.com/", page("http://example.com/", "content"));
+		assertEquals("content", cache.get("http://example.com/").getData());
+
+		assertEquals(1, cache.getHits());
+		assertEquals(1, cache.getMisses());
+	}
+
+	public void testEvictsByWeight() {
+		// a 300 character page weighs about 700 bytes, 23 fit in 16 KB
+		MemoryCache cache = new MemoryCache("test", 16 * 1024, 0);
+		String content = new String(new char[300]);
+
+		for (int i = 0; i < 100; i++) {
+			cache.put("http://example.com/" + i, page("http://example.com/" + i, content));
+		}
+
+		assertTrue(cache.getEvictions() >= 100 - 23);
+		assertNotNull(cache.get("http://example.com/99"));
+	}
+
+	public void testCachesPagesLargerThanAStripesShare() {
+		MemoryCache cache = new MemoryCache("test", 16 * 1024, 0);
+		for (int i = 0; i < 20; i++) {
+			cache.put("http://example.com/" + i, page("http://example.com/" + i, new String(new char[300])));
+		}
+
+		// half of the budget, the smaller pages make room for it
+		cache.put("http://example.com/", page("http://example.com/", new String(new char[4096])));
+
+		assertNotNull(cache.get("http://example.com/"));
+		assertTrue(cache.getEvictions() > 0);
+	}
+
+	public void testSkipsPagesLargerThanBudget() {
+		MemoryCache cache = new MemoryCache("test", 16 * 1024, 0);
+
+		cache.put("http://example.com/", page("http://example.com/", new String(new char[10000])));
+
+		assertNull(cache.get("http://example.com/"));
+		assertEquals(1, cache.getSkipped());
+	}
+
+	private static UrlData page(String url, String content) {
+		UrlData page = new UrlData();
+		page.url = url;
+		page.data = content;
+		return page;
+	}
+
+}
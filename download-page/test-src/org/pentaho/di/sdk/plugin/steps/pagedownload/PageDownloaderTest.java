@@ -0,0 +1,65 @@
+package org.pentaho.di.sdk.plugin.steps.pagedownload;
+
+import java.io.IOException;
+import java.net.UnknownHostException;
+
+import junit.framework.TestCase;
+
+public class PageDownloaderTest extends TestCase {
+
+	private HttpClientPool pool;
+
+	protected void setUp() throws IOException {
+		pool = HttpClientPool.acquire("PageDownloaderTest", "http1", 1, 1, 30, new HttpClientPool.Timeouts(1000, 1000, 0), 0);
+	}
+
+	protected void tearDown() throws IOException {
+		HttpClientPool.release(pool);
+	}
+
+	public void testPermanentErrorOfTrialReleasesBreaker() throws IOException {
+		PageDownloader downloader = new PageDownloader(pool, PageDownloadStepMeta.METHOD_GET, null, null, null, false);
+		downloader.setCircuitBreaker(50, 0);
+
+		// the breaker of the host is open, the next request is its trial
+		CircuitBreaker breaker = new CircuitBreaker(50, 0);
+		for (int i = 0; i < 10; i++) {
+			breaker.record(false, System.nanoTime());
+		}
+		pool.getCircuitBreakers().put("no-such-host.invalid", breaker);
+
+		for (int i = 0; i < 2; i++) {
+			try {
+				downloader.download("http://no-such-host.invalid/" + i);
+				fail();
+			} catch (UnknownHostException e) {
+				// the trial failed without a verdict on the host
+			}
+		}
+		assertEquals(0, downloader.getRejected());
+		assertEquals(0, downloader.getRetries());
+	}
+
+	public void testCacheHitHasNoRequestOfItsOwn() throws IOException {
+		MemoryCache cache = new MemoryCache("PageDownloaderTest", 1024 * 1024, 0);
+		PageDownloader downloader = new PageDownloader(pool, PageDownloadStepMeta.METHOD_GET, null, cache, null, false);
+		UrlData page = new UrlData("http://example.com/");
+		page.status = 200;
+		page.data = "content";
+		page.received = 100;
+		page.timing = new RequestTiming(true);
+		cache.put(page.getUrl(), page);
+
+		UrlData hit = downloader.download(page.getUrl());
+		assertEquals("content", hit.getData());
+		assertEquals(200, hit.getStatus());
+		assertEquals(UrlData.SOURCE_CACHE, hit.getSource());
+		assertEquals(0, hit.getReceived());
+		assertNull(hit.getTiming());
+
+		// the cached page keeps its own figures
+		assertEquals(UrlData.SOURCE_NETWORK, page.getSource());
+		assertEquals(100, page.getReceived());
+	}
+
+}
@@ -0,0 +1,104 @@
+package org.pentaho.di.sdk.plugin.steps.pagedownload;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import junit.framework.TestCase;
+
+public class ResumeJournalTest extends TestCase {
+
+	private File directory;
+
+	protected void setUp() throws IOException {
+		directory = Files.createTempDirectory("pagedownload-journal").toFile();
+	}
+
+	protected void tearDown() {
+		delete(directory);
+	}
+
+	public void testReopenedJournalHoldsRecordedUrls() throws IOException {
+		File body = new File(directory, "body");
+		Files.write(body.toPath(), "hello".getBytes("UTF-8"));
+		File file = new File(directory, "journal");
+
+		ResumeJournal journal = ResumeJournal.open(file);
+		try {
+			journal.record("http://example.com/a", result("http://example.com/a", null));
+			journal.record("http://example.com/b\tc", result("http://example.com/b\tc", body));
+
+			// only the next run leaves them out
+			assertNull(journal.get("http://example.com/a"));
+			assertEquals(0, journal.size());
+		} finally {
+			ResumeJournal.close(journal);
+		}
+
+		journal = ResumeJournal.open(file);
+		try {
+			assertEquals(2, journal.size());
+			assertNull(journal.get("http://example.com/c"));
+
+			ResumeJournal.Entry entry = journal.get("http://example.com/a");
+			assertEquals(200, entry.getStatus());
+			assertNull(entry.getFile());
+			assertNull(entry.toResult("http://example.com/a"));
+
+			UrlData resumed = journal.get("http://example.com/b\tc").toResult("http://example.com/b\tc");
+			assertEquals(body, resumed.getFile());
+			assertEquals(5, resumed.getLength());
+			assertEquals("abc", resumed.getHash());
+		} finally {
+			ResumeJournal.close(journal);
+		}
+	}
+
+	public void testTornLineIsIgnored() throws IOException {
+		File file = new File(directory, "journal");
+		ResumeJournal journal = ResumeJournal.open(file);
+		try {
+			journal.record("http://example.com/a", result("http://example.com/a", null));
+		} finally {
+			ResumeJournal.close(journal);
+		}
+
+		// the line cut short by a crash while it was written
+		FileOutputStream out = new FileOutputStream(file, true);
+		try {
+			out.write("1234abcd\t200\t0\t\t\thttp://exam".getBytes("UTF-8"));
+		} finally {
+			out.close();
+		}
+
+		journal = ResumeJournal.open(file);
+		try {
+			assertEquals(1, journal.size());
+			assertNotNull(journal.get("http://example.com/a"));
+			assertNull(journal.get("http://exam"));
+		} finally {
+			ResumeJournal.close(journal);
+		}
+	}
+
+	private static UrlData result(String url, File file) {
+		UrlData result = new UrlData(url);
+		result.status = 200;
+		result.file = file;
+		result.length = file == null ? 0 : 5;
+		result.hash = file == null ? null : "abc";
+		return result;
+	}
+
+	private static void delete(File file) {
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+
+}
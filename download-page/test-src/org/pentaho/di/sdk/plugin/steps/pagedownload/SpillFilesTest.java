@@ -0,0 +1,44 @@
+package org.pentaho.di.sdk.plugin.steps.pagedownload;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.file.Files;
+
+import junit.framework.TestCase;
+
+public class SpillFilesTest extends TestCase {
+
+	private File directory;
+
+	protected void setUp() throws IOException {
+		directory = Files.createTempDirectory("pagedownload-spill").toFile();
+	}
+
+	protected void tearDown() {
+		directory.delete();
+	}
+
+	public void testMapAndDelete() throws IOException {
+		SpillFiles spillFiles = new SpillFiles(directory, 10);
+		File file = spillFiles.newFile();
+		FileOutputStream out = new FileOutputStream(file);
+		out.write("hello".getBytes("UTF-8"));
+		out.close();
+
+		MappedByteBuffer buffer = SpillFiles.map(file.getPath());
+		assertEquals(5, buffer.capacity());
+		assertEquals('h', buffer.get(0));
+
+		spillFiles.delete();
+		assertFalse(file.exists());
+		assertEquals(0, directory.list().length);
+	}
+
+	public void testDeleteWithoutFiles() {
+		new SpillFiles(directory, 10).delete();
+		assertTrue(directory.isDirectory());
+	}
+
+}
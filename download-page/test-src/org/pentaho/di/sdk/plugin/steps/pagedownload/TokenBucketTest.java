@@ -0,0 +1,44 @@
+package org.pentaho.di.sdk.plugin.steps.pagedownload;
+
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+public class TokenBucketTest extends TestCase {
+
+	private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+	public void testBurstUpToCapacity() {
+		TokenBucket bucket = new TokenBucket(2, 2, 0);
+
+		assertEquals(0, bucket.tryAcquire(0));
+		assertEquals(0, bucket.tryAcquire(0));
+
+		// the third request has to wait half a second for the next permit
+		assertEquals(SECOND / 2, bucket.tryAcquire(0));
+	}
+
+	public void testRefillsOverTime() {
+		TokenBucket bucket = new TokenBucket(1, 1, 0);
+
+		assertEquals(0, bucket.tryAcquire(0));
+		assertTrue(bucket.tryAcquire(SECOND / 2) > 0);
+		assertEquals(0, bucket.tryAcquire(SECOND));
+
+		// idle time does not save up more permits than the capacity
+		assertEquals(0, bucket.tryAcquire(10 * SECOND));
+		assertTrue(bucket.tryAcquire(10 * SECOND) > 0);
+	}
+
+	public void testTimeUntilFull() {
+		TokenBucket bucket = new TokenBucket(2, 2, 0);
+		assertEquals(0, bucket.untilFull(0));
+
+		bucket.tryAcquire(0);
+		bucket.tryAcquire(0);
+		assertEquals(SECOND, bucket.untilFull(0));
+		assertEquals(SECOND / 2, bucket.untilFull(SECOND / 2));
+		assertEquals(0, bucket.untilFull(SECOND));
+	}
+
+}
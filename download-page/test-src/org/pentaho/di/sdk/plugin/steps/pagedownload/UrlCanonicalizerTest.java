@@ -0,0 +1,49 @@
+package org.pentaho.di.sdk.plugin.steps.pagedownload;
+
+import java.util.regex.Pattern;
+
+import junit.framework.TestCase;
+
+public class UrlCanonicalizerTest extends TestCase {
+
+	private final UrlCanonicalizer canonicalizer = new UrlCanonicalizer(
+			Pattern.compile(PageDownloadStepMeta.DEFAULT_STRIP_PARAMETERS), true);
+
+	public void testKeepsCanonicalUrl() {
+		String url = "https://example.com/a/B?x=1&y=%20";
+		assertSame(url, canonicalizer.canonicalize(url));
+	}
+
+	public void testLowerCasesSchemeAndHost() {
+		assertEquals("http://example.com/Path", canonicalizer.canonicalize("HTTP://Example.COM/Path"));
+	}
+
+	public void testDropsDefaultPortAndFragment() {
+		assertEquals("http://example.com/", canonicalizer.canonicalize("http://example.com:80#top"));
+		assertEquals("https://example.com/a", canonicalizer.canonicalize("https://example.com:443/a#b"));
+		assertEquals("https://example.com:80/a", canonicalizer.canonicalize("https://example.com:80/a"));
+		assertEquals("http://user:pw@example.com:8080/", canonicalizer.canonicalize("http://user:pw@Example.com:8080"));
+		assertEquals("http://[::1]:8080/", canonicalizer.canonicalize("http://[::1]:8080"));
+		assertEquals("http://[::1]/a:b]", canonicalizer.canonicalize("http://[::1]/a:b]"));
+	}
+
+	public void testStripsAndSortsParameters() {
+		assertEquals("http://example.com/?a=2&b=1&b=0",
+				canonicalizer.canonicalize("http://example.com/?utm_source=x&b=1&a=2&fbclid=y&b=0"));
+		assertEquals("http://example.com/a", canonicalizer.canonicalize("http://example.com/a?utm_medium=x&gclid=y"));
+		assertEquals("http://example.com/a", canonicalizer.canonicalize("http://example.com/a?"));
+		assertEquals("http://example.com/a?utm=1", canonicalizer.canonicalize("http://example.com/a?utm=1"));
+	}
+
+	public void testKeepsParameterOrderUnlessSorting() {
+		UrlCanonicalizer keeping = new UrlCanonicalizer(null, false);
+		String url = "http://example.com/?b=1&utm_source=x&a=2";
+		assertSame(url, keeping.canonicalize(url));
+	}
+
+	public void testLeavesOtherStringsAlone() {
+		assertEquals("not a url", canonicalizer.canonicalize("not a url"));
+		assertEquals("mailto:a@example.com", canonicalizer.canonicalize("mailto:a@example.com"));
+	}
+
+}
@@ -0,0 +1,38 @@
+package org.pentaho.di.sdk.plugin.steps.pagedownload;
+
+import junit.framework.TestCase;
+
+public class VisitedSetTest extends TestCase {
+
+	public void testAddsOnce() {
+		VisitedSet visited = new VisitedSet(1000, 0.01);
+
+		assertTrue(visited.add("http://example.com/a"));
+		assertTrue(visited.add("http://example.com/b"));
+		assertFalse(visited.add("http://example.com/a"));
+		assertEquals(2, visited.size());
+	}
+
+	public void testFalsePositivesStayNearTheRate() {
+		VisitedSet visited = new VisitedSet(100000, 0.01);
+		for (int i = 0; i < 100000; i++) {
+			visited.add("http://example.com/page/" + i);
+		}
+
+		// the probes fill the filter a little further as they are added
+		int falsePositives = 0;
+		for (int i = 0; i < 10000; i++) {
+			if (!visited.add("http://example.org/other/" + i)) {
+				falsePositives++;
+			}
+		}
+		assertTrue("false positives " + falsePositives, falsePositives < 200);
+	}
+
+	public void testSizing() {
+		// about 1.2 bytes per URL at 1% false positives
+		VisitedSet visited = new VisitedSet(1000000, 0.01);
+		assertTrue(visited.getBytes() > 1100000 && visited.getBytes() < 1300000);
+	}
+
+}
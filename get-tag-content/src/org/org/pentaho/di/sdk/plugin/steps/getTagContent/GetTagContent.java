@@ -22,6 +22,8 @@
 
 package org.pentaho.di.sdk.plugin.steps.getTagContent;
 
+import javax.management.JMException;
+
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.pentaho.di.core.exception.KettleException;
@@ -109,7 +111,19 @@ public class GetTagContent extends BaseStep implements StepInterface {
 		GetTagContentMeta meta = (GetTagContentMeta) smi;
 		GetTagContentData data = (GetTagContentData) sdi;
 
-		return super.init(meta, data);
+		if (!super.init(meta, data)) {
+			return false;
+		}
+
+		// live figures of this copy for JMX consoles, the step runs without
+		// them if they cannot be published
+		data.metrics = new ParseMetrics();
+		try {
+			data.metricsName = data.metrics.register(getTransMeta().getName(), getStepname(), getCopy());
+		} catch (JMException e) {
+			logBasic("Unable to publish the step metrics over JMX: " + e.getMessage());
+		}
+		return true;
 	}
 
 	/**
@@ -168,8 +182,13 @@ public class GetTagContent extends BaseStep implements StepInterface {
 			initFieldIndexes();
 		}
 
-		String content = new UrlParser().getTagData(r[pageContentFieldId].toString(), meta.getXpath(), meta.getTextOnly());
-		logBasic("Content :" + content);
+		String page = r[pageContentFieldId].toString();
+		long start = System.nanoTime();
+		String content = new UrlParser().getTagData(page, meta.getXpath(), meta.getTextOnly());
+		data.metrics.parsed(page.length(), System.nanoTime() - start);
+		if (isRowLevel()) {
+			logRowlevel("Content :" + content);
+		}
 		Object[] outputRow = RowDataUtil.addValueData(r, data.outputRowMeta.size() - 1, content);
 
 		// put the row to the output row stream
@@ -234,6 +253,18 @@ public class GetTagContent extends BaseStep implements StepInterface {
 		GetTagContentMeta meta = (GetTagContentMeta) smi;
 		GetTagContentData data = (GetTagContentData) sdi;
 
+		if (data.metrics != null && data.metrics.getDocuments() > 0) {
+			logBasic(data.metrics.toString());
+		}
+		if (data.metricsName != null) {
+			try {
+				ParseMetrics.unregister(data.metricsName);
+			} catch (JMException e) {
+				logError("Unable to remove the step metrics from JMX", e);
+			}
+			data.metricsName = null;
+		}
+
 		super.dispose(meta, data);
 	}
 
@@ -22,6 +22,8 @@
 
 package org.pentaho.di.sdk.plugin.steps.getTagContent;
 
+import javax.management.ObjectName;
+
 import org.pentaho.di.core.row.RowMetaInterface;
 import org.pentaho.di.trans.step.BaseStepData;
 import org.pentaho.di.trans.step.StepDataInterface;
@@ -49,6 +51,11 @@ import org.pentaho.di.trans.step.StepDataInterface;
 public class GetTagContentData extends BaseStepData implements StepDataInterface {
 
 	public RowMetaInterface outputRowMeta;
+
+	// parse figures of this copy and the name they are published under,
+	// null if they are not
+	public ParseMetrics metrics;
+	public ObjectName metricsName;
 	
     public GetTagContentData()
 	{
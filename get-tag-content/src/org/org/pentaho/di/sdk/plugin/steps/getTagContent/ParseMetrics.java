@@ -0,0 +1,95 @@
+package org.pentaho.di.sdk.plugin.steps.getTagContent;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Parse throughput and time per document of one copy of the tag content
+ * step. Only the step thread records, JMX reads from any thread. Rates are
+ * over the time since the first document.
+ */
+public class ParseMetrics implements ParseMetricsMBean {
+
+	private final AtomicLong documents = new AtomicLong();
+	private final AtomicLong characters = new AtomicLong();
+	private final AtomicLong totalNanos = new AtomicLong();
+	private volatile long maxNanos;
+	private volatile long lastNanos;
+	private volatile long startedAt;
+
+	void parsed(int length, long nanos) {
+		if (documents.getAndIncrement() == 0) {
+			startedAt = System.nanoTime() - nanos;
+		}
+		characters.addAndGet(length);
+		totalNanos.addAndGet(nanos);
+		lastNanos = nanos;
+		if (nanos > maxNanos) {
+			maxNanos = nanos;
+		}
+	}
+
+	public long getDocuments() {
+		return documents.get();
+	}
+
+	public double getDocumentsPerSecond() {
+		return perSecond(documents.get());
+	}
+
+	public long getCharactersParsed() {
+		return characters.get();
+	}
+
+	public double getCharactersPerSecond() {
+		return perSecond(characters.get());
+	}
+
+	public double getMeanParseMillis() {
+		long count = documents.get();
+		return count == 0 ? 0 : toMillis(totalNanos.get()) / count;
+	}
+
+	public double getMaxParseMillis() {
+		return toMillis(maxNanos);
+	}
+
+	public double getLastParseMillis() {
+		return toMillis(lastNanos);
+	}
+
+	private double perSecond(long count) {
+		long elapsed = System.nanoTime() - startedAt;
+		return count == 0 || elapsed <= 0 ? 0 : count * (double) TimeUnit.SECONDS.toNanos(1) / elapsed;
+	}
+
+	private static double toMillis(long nanos) {
+		return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+	}
+
+	/**
+	 * Publishes the metrics in the platform MBean server.
+	 *
+	 * @return the name to unregister them with
+	 */
+	ObjectName register(String transformation, String step, int copy) throws JMException {
+		ObjectName name = new ObjectName("org.pentaho.di.sdk.plugin:type=GetTagContent,transformation="
+				+ ObjectName.quote(String.valueOf(transformation)) + ",step=" + ObjectName.quote(step) + ",copy=" + copy);
+		ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+		return name;
+	}
+
+	static void unregister(ObjectName name) throws JMException {
+		ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+	}
+
+	public String toString() {
+		return "Parsed " + getDocuments() + " documents, " + String.format("%.1f", getMeanParseMillis())
+				+ " ms on average, " + String.format("%.1f", getMaxParseMillis()) + " ms at most";
+	}
+
+}
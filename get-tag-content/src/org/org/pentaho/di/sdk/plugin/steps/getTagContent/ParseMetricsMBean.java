@@ -0,0 +1,22 @@
+package org.pentaho.di.sdk.plugin.steps.getTagContent;
+
+/**
+ * Live figures of one copy of the tag content step, published over JMX.
+ */
+public interface ParseMetricsMBean {
+
+	long getDocuments();
+
+	double getDocumentsPerSecond();
+
+	long getCharactersParsed();
+
+	double getCharactersPerSecond();
+
+	double getMeanParseMillis();
+
+	double getMaxParseMillis();
+
+	double getLastParseMillis();
+
+}